@@ -1,13 +1,84 @@
 package com.example.demo.config;
+import com.example.demo.util.SqliteWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.data.relational.core.dialect.Dialect;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * SQLite 连接配置：
+ * 主连接池（Spring Data JDBC 和建表脚本使用）、只读连接池（查询、导出等长时间读取）、
+ * 单写线程（备份过程中 backup_log 的插入、状态和断点更新，以及批量更新），
+ * 三者都使用 WAL 模式，读取不阻塞写入，写入也不阻塞读取；busy_timeout 让偶发的写锁冲突排队等待而不是直接报 SQLITE_BUSY
+ */
 @Configuration
 public class SqliteJdbcConfig {
 
+    private static final int READ_POOL_SIZE = 8;
+
     @Bean
     public Dialect jdbcDialect() {
         return SqliteDialect.INSTANCE;
     }
-}
\ No newline at end of file
+
+    // spring.datasource.hikari.* 的配置仍然生效
+    @Bean
+    @Primary
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("sqlite-main");
+        pragmas().forEach((key, value) -> dataSource.addDataSourceProperty((String) key, value));
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource readOnlyDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("sqlite-read");
+        dataSource.setMaximumPoolSize(READ_POOL_SIZE);
+        // sqlite-jdbc 不支持在已打开的连接上切换只读标志，用 query_only 拒绝写操作
+        dataSource.setConnectionInitSql("PRAGMA query_only = 1");
+        pragmas().forEach((key, value) -> dataSource.addDataSourceProperty((String) key, value));
+        return dataSource;
+    }
+
+    @Bean
+    public JdbcTemplate readJdbcTemplate(@Qualifier("readOnlyDataSource") DataSource readOnlyDataSource) {
+        return new JdbcTemplate(readOnlyDataSource);
+    }
+
+    @Primary
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean(destroyMethod = "close")
+    public SqliteWriter sqliteWriter(DataSourceProperties properties) throws SQLException {
+        return new SqliteWriter(properties.determineUrl(), pragmas());
+    }
+
+    /**
+     * 每个连接打开时设置的 PRAGMA（sqlite-jdbc 的连接属性）
+     */
+    public static Properties pragmas() {
+        Properties pragmas = new Properties();
+        pragmas.setProperty("journal_mode", "WAL");
+        pragmas.setProperty("synchronous", "NORMAL");         // WAL 下只在检查点时 fsync，断电最多丢失最后的事务，不会损坏
+        pragmas.setProperty("busy_timeout", "10000");
+        pragmas.setProperty("cache_size", "-32768");          // 每个连接 32MB 页缓存
+        pragmas.setProperty("mmap_size", "268435456");        // 256MB 内存映射读取
+        pragmas.setProperty("temp_store", "MEMORY");
+        return pragmas;
+    }
+}
@@ -1,32 +1,53 @@
 package com.example.demo.controller;
 
 import com.example.demo.dto.FileInfoDTO;
+import com.example.demo.dto.FileListPage;
 import com.example.demo.dto.PathDTO;
+import com.example.demo.dto.SearchQuery;
 import com.example.demo.entity.BackupLog;
 import com.example.demo.entity.BackupTask;
 import com.example.demo.entity.HardDisk;
 import com.example.demo.entity.ResponseResult;
+import com.example.demo.handler.BackupSseHandler;
+import com.example.demo.model.CatalogHit;
+import com.example.demo.model.DiskCapacity;
+import com.example.demo.model.DiskDedupStats;
+import com.example.demo.model.DuplicateContent;
+import com.example.demo.model.RetentionReport;
+import com.example.demo.model.TaskProgress;
+import com.example.demo.repository.BackupLogCatalog;
 import com.example.demo.service.BackupService;
+import com.example.demo.service.CapacityLedger;
 import com.example.demo.service.DataClassificationService;
+import com.example.demo.service.DedupService;
+import com.example.demo.service.DirectoryListingService;
 import com.example.demo.service.DiskManagementService;
+import com.example.demo.service.IndexService;
+import com.example.demo.service.RetentionService;
 import com.example.demo.service.SearchService;
+import com.example.demo.service.TelemetryService;
 import com.example.demo.util.CryptoUtil;
 import jcifs.smb.SmbException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @CrossOrigin(origins = "http://localhost:5173")
 @RestController
@@ -40,6 +61,22 @@ public class BackupController {
     private DiskManagementService diskManagementService;
     @Autowired
     private SearchService searchService;
+    @Autowired
+    private DirectoryListingService listingService;
+    @Autowired
+    private BackupLogCatalog logCatalog;
+    @Autowired
+    private IndexService indexService;
+    @Autowired
+    private DedupService dedupService;
+    @Autowired
+    private RetentionService retentionService;
+    @Autowired
+    private TelemetryService telemetryService;
+    @Autowired
+    private BackupSseHandler sseHandler;
+    @Autowired
+    private CapacityLedger capacityLedger;
 
     private static final Logger log = LoggerFactory.getLogger(BackupController.class);
 
@@ -116,11 +153,15 @@ public class BackupController {
             return ResponseResult.fail("目标路径处理失败: " + e.getMessage());
         }
 
-        BackupTask task = new BackupTask();
+        // 先调用过 /api/classify 时传入其任务ID，复用分类阶段保存的备份计划
+        BackupTask task = findClassifiedTask(request.get("taskId"), sourcePath);
+        if (task == null) {
+            task = new BackupTask();
+            task.setSensitive(false);
+            task.setBackupCount(1);
+        }
         task.setSourcePath(sourcePath);
         task.setBackupMode(backupMode != null ? backupMode : "COPY");
-        task.setSensitive(false);
-        task.setBackupCount(1);
         task.setStatus("PENDING");
         task.setSchedule("");
         task.setTargetDiskId(targetDiskId);
@@ -142,15 +183,38 @@ public class BackupController {
         return ResponseResult.success(savedTask.getId(), "备份任务已启动（taskId=" + savedTask.getId() + "）");
     }
 
+    private BackupTask findClassifiedTask(String taskId, String sourcePath) {
+        if (taskId == null || taskId.isEmpty()) {
+            return null;
+        }
+        try {
+            BackupTask task = backupService.getTaskRepository().findById(Long.valueOf(taskId))
+                    .filter(t -> "PENDING".equals(t.getStatus()) && sourcePath.equals(normalizePath(t.getSourcePath())))
+                    .orElse(null);
+            if (task == null) {
+                log.warn("分类任务不可复用，将重新分类: taskId={}, sourcePath={}", taskId, sourcePath);
+            }
+            return task;
+        } catch (NumberFormatException e) {
+            log.warn("分类任务ID格式错误: taskId={}", taskId);
+            return null;
+        }
+    }
+
+    // 运行中的任务从进度登记表读取，不访问数据库
     @GetMapping("/backup/progress")
     public ResponseResult<Map<String, Object>> getBackupProgress(@RequestParam Long taskId) {
         try {
-            float progress = backupService.getProgress(taskId);
-            BackupTask task = backupService.getTaskRepository().findById(taskId)
-                    .orElseThrow(() -> new IllegalArgumentException("任务不存在: " + taskId));
+            TaskProgress progress = backupService.getTaskProgress(taskId);
             Map<String, Object> result = new HashMap<>();
-            result.put("progress", Math.min(100.0, progress));
-            result.put("status", task.getStatus());
+            result.put("progress", progress.getProgress());
+            result.put("status", progress.getStatus());
+            if (progress.isLive()) {
+                result.put("transferredBytes", progress.getTransferredBytes());
+                result.put("bytesPerSecond", progress.getBytesPerSecond());
+                result.put("filesPerSecond", progress.getFilesPerSecond());
+                result.put("etaSeconds", progress.getEtaSeconds());
+            }
             return ResponseResult.success(result, "进度查询成功");
         } catch (Exception e) {
             log.error("获取备份进度失败: taskId={}", taskId, e);
@@ -158,6 +222,36 @@ public class BackupController {
         }
     }
 
+    // 一次查询多个任务的进度，如 taskIds=1,2,3；不存在的任务不出现在结果中
+    @GetMapping("/backup/progress/batch")
+    public ResponseResult<List<TaskProgress>> getBackupProgressBatch(@RequestParam List<Long> taskIds) {
+        try {
+            return ResponseResult.success(backupService.getTaskProgress(taskIds), "进度查询成功");
+        } catch (Exception e) {
+            log.error("批量获取备份进度失败: taskIds={}", taskIds, e);
+            return ResponseResult.fail("获取进度失败: " + e.getMessage());
+        }
+    }
+
+    // 运行中（以及最近结束）的任务、各源磁盘和目标磁盘的传输速率，只读内存
+    @GetMapping("/backup/telemetry")
+    public ResponseResult<Map<String, Object>> getTelemetry() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("tasks", telemetryService.getTasks());
+        result.put("sourceDisks", telemetryService.getSourceDisks());
+        result.put("targetDisks", telemetryService.getTargetDisks());
+        return ResponseResult.success(result, "查询成功");
+    }
+
+    // 进度事件流（SSE），可用 taskIds、diskIds 过滤；重连时浏览器自动带上 Last-Event-ID，从断开处继续
+    @GetMapping(value = "/backup/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBackupEvents(@RequestParam(required = false) List<Long> taskIds,
+                                         @RequestParam(required = false) List<Long> diskIds,
+                                         @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return sseHandler.connect(taskIds != null ? new HashSet<>(taskIds) : new HashSet<>(),
+                diskIds != null ? new HashSet<>(diskIds) : new HashSet<>(), lastEventId);
+    }
+
     @PostMapping("/backup/pause")
     public ResponseResult<String> pauseBackup(@RequestBody Map<String, Long> request) {
         try {
@@ -245,17 +339,118 @@ public class BackupController {
         }
     }
 
+    // 按id游标分页查询任务的备份记录：cursor 为上一页返回的 nextCursor，第一页不传
+    @GetMapping("/backup/logs")
+    public ResponseResult<Map<String, Object>> getTaskLogs(
+            @RequestParam Long taskId,
+            @RequestParam(defaultValue = "0") long cursor,
+            @RequestParam(defaultValue = "" + BackupLogCatalog.DEFAULT_PAGE_SIZE) int limit) {
+        try {
+            List<BackupLog> logs = logCatalog.pageByTask(taskId, cursor, limit);
+            Map<String, Object> result = new HashMap<>();
+            result.put("items", logs);
+            result.put("nextCursor", logs.isEmpty() ? null : logs.get(logs.size() - 1).getId());
+            return ResponseResult.success(result, "获取备份记录成功");
+        } catch (Exception e) {
+            log.error("获取备份记录失败: taskId={}", taskId, e);
+            return ResponseResult.fail("获取备份记录失败: " + e.getMessage());
+        }
+    }
+
+    // 直接下载任务索引（边读边写，不生成中间文件），format 为 xlsx 或 csv，默认使用配置的格式
+    @GetMapping("/backup/index/export")
+    public ResponseEntity<StreamingResponseBody> exportIndex(@RequestParam Long taskId,
+                                                             @RequestParam(required = false) String format) {
+        String exportFormat = format != null && !format.isEmpty() ? format.toLowerCase() : indexService.getFormat();
+        boolean csv = IndexService.FORMAT_CSV.equals(exportFormat);
+        StreamingResponseBody body = out -> indexService.export(taskId, exportFormat, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=index_" + taskId + (csv ? ".csv" : ".xlsx"))
+                .contentType(csv ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                        : MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+
+    // 可选参数：mode(substring/prefix)、diskId、taskId、status、from、to、limit、offset
     @GetMapping("/search")
-    public ResponseResult<List<BackupLog>> searchFiles(@RequestParam String keyword) {
+    public ResponseResult<List<BackupLog>> searchFiles(SearchQuery query) {
         try {
-            List<BackupLog> results = searchService.searchFiles(keyword);
+            List<BackupLog> results = searchService.search(query);
             return ResponseResult.success(results, "搜索完成");
         } catch (Exception e) {
-            log.error("搜索失败: keyword={}", keyword, e);
+            log.error("搜索失败: keyword={}", query.getKeyword(), e);
             return ResponseResult.fail("搜索失败: " + e.getMessage());
         }
     }
 
+    @GetMapping("/search/catalog")
+    public ResponseResult<List<CatalogHit>> searchCatalog(@RequestParam(required = false) String prefix,
+                                                          @RequestParam(required = false) String checksum,
+                                                          @RequestParam(required = false) String root,
+                                                          @RequestParam(defaultValue = "100") int limit) {
+        try {
+            List<CatalogHit> results = searchService.searchCatalogs(prefix, checksum, root, limit);
+            return ResponseResult.success(results, "搜索完成");
+        } catch (IllegalArgumentException e) {
+            return ResponseResult.fail(e.getMessage());
+        } catch (Exception e) {
+            log.error("磁盘目录搜索失败: prefix={}, checksum={}", prefix, checksum, e);
+            return ResponseResult.fail("磁盘目录搜索失败: " + e.getMessage());
+        }
+    }
+
+    // 重复内容：可回收字节数最多的内容
+    @GetMapping("/dedup/top")
+    public ResponseResult<List<DuplicateContent>> topDuplicates(@RequestParam(defaultValue = "50") int limit) {
+        try {
+            return ResponseResult.success(dedupService.topDuplicates(limit), "查询成功");
+        } catch (Exception e) {
+            log.error("查询重复内容失败", e);
+            return ResponseResult.fail("查询重复内容失败: " + e.getMessage());
+        }
+    }
+
+    // 重复内容：每块磁盘的可回收字节数
+    @GetMapping("/dedup/disks")
+    public ResponseResult<List<DiskDedupStats>> diskDedupStats() {
+        try {
+            return ResponseResult.success(dedupService.diskStats(), "查询成功");
+        } catch (Exception e) {
+            log.error("查询磁盘重复统计失败", e);
+            return ResponseResult.fail("查询磁盘重复统计失败: " + e.getMessage());
+        }
+    }
+
+    // 重复内容：同一内容的其他副本在哪里（按校验和或备份记录ID）
+    @GetMapping("/dedup/copies")
+    public ResponseResult<List<BackupLog>> findCopies(@RequestParam(required = false) String checksum,
+                                                      @RequestParam(required = false) Long logId,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        try {
+            return ResponseResult.success(dedupService.findCopies(checksum, logId, limit), "查询成功");
+        } catch (IllegalArgumentException e) {
+            return ResponseResult.fail(e.getMessage());
+        } catch (Exception e) {
+            log.error("查询副本失败: checksum={}, logId={}", checksum, logId, e);
+            return ResponseResult.fail("查询副本失败: " + e.getMessage());
+        }
+    }
+
+    // 立即在后台执行一次备份记录清理和归档（平时每6小时自动执行）
+    @PostMapping("/retention/run")
+    public ResponseResult<String> runRetention() {
+        if (!retentionService.trigger()) {
+            return ResponseResult.fail("备份记录清理正在进行中");
+        }
+        return ResponseResult.success("已开始清理备份记录");
+    }
+
+    @GetMapping("/retention/report")
+    public ResponseResult<RetentionReport> getRetentionReport() {
+        return ResponseResult.success(retentionService.getLastReport(), "查询成功");
+    }
+
     @PostMapping("/select-file")
     public ResponseResult<List<FileInfoDTO>> selectFile(@RequestBody Map<String, String> request) {
         try {
@@ -272,15 +467,14 @@ public class BackupController {
                 return ResponseResult.fail("路径不是目录: " + defaultPath);
             }
 
-            File[] fileArray = dir.listFiles();
-            if (fileArray == null) {
+            // 目录列表走元数据缓存，反复打开同一目录时不再访问磁盘
+            List<FileInfoDTO> fileList;
+            try {
+                fileList = listingService.listAll(dir.toPath());
+            } catch (IOException e) {
                 return ResponseResult.fail("没有权限读取该目录: " + defaultPath);
             }
 
-            List<FileInfoDTO> fileList = Arrays.stream(fileArray)
-                    .map(FileInfoDTO::new)
-                    .collect(Collectors.toList());
-
             return ResponseResult.success(fileList, "文件列表获取成功");
         } catch (Exception e) {
             log.error("文件列表获取失败: defaultPath={}", request.getOrDefault("defaultPath", ""), e);
@@ -288,6 +482,34 @@ public class BackupController {
         }
     }
 
+    // 分页版文件选择：服务端排序（sortBy=name/size/modified, order=asc/desc）、名称前缀过滤、游标翻页
+    @PostMapping("/select-file/page")
+    public ResponseResult<FileListPage> selectFilePage(@RequestBody Map<String, String> request) {
+        String defaultPath = request.getOrDefault("defaultPath", "");
+        try {
+            if (defaultPath.isEmpty()) {
+                return ResponseResult.fail("路径不能为空");
+            }
+            File dir = new File(defaultPath);
+            if (!dir.isDirectory()) {
+                return ResponseResult.fail("路径不存在或不是目录: " + defaultPath);
+            }
+
+            int limit = Integer.parseInt(request.getOrDefault("limit", "0"));
+            FileListPage page;
+            try {
+                page = listingService.listPage(dir.toPath(), request.get("sortBy"), request.get("order"),
+                        request.get("prefix"), request.get("cursor"), limit);
+            } catch (IOException e) {
+                return ResponseResult.fail("没有权限读取该目录: " + defaultPath);
+            }
+            return ResponseResult.success(page, "文件列表获取成功");
+        } catch (Exception e) {
+            log.error("文件列表获取失败: defaultPath={}", defaultPath, e);
+            return ResponseResult.fail("处理失败: " + e.getMessage());
+        }
+    }
+
     @GetMapping("/disk/scan")
     public ResponseResult<List<HardDisk>> scanDisks() {
         try {
@@ -299,6 +521,21 @@ public class BackupController {
         }
     }
 
+    // 磁盘可用容量、运行中任务的预留和实时可用空间
+    @GetMapping("/disk/capacity")
+    public ResponseResult<DiskCapacity> getDiskCapacity(@RequestParam String diskId) {
+        HardDisk disk = backupService.getDiskRepository().findByDiskId(diskId);
+        if (disk == null) {
+            return ResponseResult.fail("磁盘不存在: " + diskId);
+        }
+        try {
+            return ResponseResult.success(capacityLedger.getCapacity(disk), "查询成功");
+        } catch (Exception e) {
+            log.error("查询磁盘容量失败: diskId={}", diskId, e);
+            return ResponseResult.fail("查询失败: " + e.getMessage());
+        }
+    }
+
     @PostMapping("/disk/remote/smb")
     public ResponseResult<HardDisk> addSmbDisk(@RequestBody Map<String, String> request) {
         try {
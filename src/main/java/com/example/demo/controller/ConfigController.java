@@ -22,6 +22,12 @@ public class ConfigController {
     public static final String SENSITIVE_KEYWORDS = "sensitive_keywords";
     public static final String MIGRATION_THRESHOLD = "migration_threshold";
     public static final String LAST_FILE_ACCESS_TIME = "last_file_access_time";
+    public static final String CONTENT_SCAN_ENABLED = "content_scan_enabled";
+    public static final String CONTENT_SCAN_MAX_BYTES = "content_scan_max_bytes";
+    public static final String INDEX_FORMAT = "index_format";
+    public static final String LOG_ARCHIVE_DAYS = "log_archive_days";
+    public static final String RETENTION_IO_BUDGET = "retention_io_budget";
+    public static final String LOG_COMPACT_ENABLED = "log_compact_enabled";
 
 
     @GetMapping
@@ -87,6 +93,24 @@ public class ConfigController {
                 LocalDateTime oneYearAgo = LocalDateTime.now().minusYears(1);
                 config.setConfigValue(oneYearAgo.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
                 break;
+            case CONTENT_SCAN_ENABLED:
+                config.setConfigValue("false");
+                break;
+            case CONTENT_SCAN_MAX_BYTES:
+                config.setConfigValue("4194304");
+                break;
+            case INDEX_FORMAT:
+                config.setConfigValue("xlsx");
+                break;
+            case LOG_ARCHIVE_DAYS:
+                config.setConfigValue("0");
+                break;
+            case RETENTION_IO_BUDGET:
+                config.setConfigValue("4194304");
+                break;
+            case LOG_COMPACT_ENABLED:
+                config.setConfigValue("false");
+                break;
             default:
                 config.setConfigValue("");
         }
@@ -103,6 +127,18 @@ public class ConfigController {
                 return "硬盘迁移阈值（单位：字节）";
             case LAST_FILE_ACCESS_TIME:
                 return "文件访问时间阈值（早于此时间视为冷数据）";
+            case CONTENT_SCAN_ENABLED:
+                return "是否扫描文件内容中的敏感词（true/false）";
+            case CONTENT_SCAN_MAX_BYTES:
+                return "内容扫描时每个文件最多读取的字节数";
+            case INDEX_FORMAT:
+                return "备份索引文件格式（xlsx/csv）";
+            case LOG_ARCHIVE_DAYS:
+                return "备份记录保留在主库的天数，超过后归档到压缩分区（0表示不归档，默认不归档）";
+            case RETENTION_IO_BUDGET:
+                return "备份记录清理和归档每秒最多处理的字节数";
+            case LOG_COMPACT_ENABLED:
+                return "是否删除已被更新的成功备份取代的旧记录（true/false，默认不删除）";
             default:
                 return "系统配置项";
         }
@@ -2,15 +2,25 @@ package com.example.demo.controller;
 
 import com.example.demo.model.AnalyzeResponse;
 import com.example.demo.model.FileInfo;
+import com.example.demo.model.FolderPage;
+import com.example.demo.model.HotspotReport;
+import com.example.demo.model.Stats;
 import com.example.demo.service.FolderService;
+import com.example.demo.util.CompactTree;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 @CrossOrigin  // 允许跨域请求
 @RestController
 public class FolderController {
@@ -23,11 +33,88 @@ public class FolderController {
     }
 
     // 接口返回类型改为AnalyzeResponse（包含rootNode和stats）
+    // 仅适用于小目录：超过maxEntries时报错，超过maxDepth的目录不展开（children为null）
     @GetMapping("/api/analyze")
     public AnalyzeResponse analyzeFolder(
+            @RequestParam String path,
+            @RequestParam(required = false) String keywords,
+            @RequestParam(defaultValue = "2147483647") int maxDepth,
+            @RequestParam(defaultValue = "" + FolderService.DEFAULT_MAX_ENTRIES) int maxEntries
+    ) throws IOException {
+        return folderService.analyzeFolder(path, keywords, maxDepth, maxEntries);
+    }
+
+    // 流式返回完整文件树：边遍历边输出，格式与 /api/analyze 相同（stats 在最后），不受条目数限制
+    @GetMapping(value = "/api/analyze/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamFolder(
+            @RequestParam String path,
+            @RequestParam(required = false) String keywords,
+            @RequestParam(defaultValue = "2147483647") int maxDepth
+    ) {
+        // 开始输出前先检查路径，路径错误时仍能返回正常的错误响应
+        folderService.checkDirectory(path);
+        StreamingResponseBody body = out -> folderService.streamFolder(path, keywords, maxDepth, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // 热点分析：最大的N个文件和目录、大小和时间分布、扩展名汇总，一次遍历，不构建文件树
+    @GetMapping("/api/analyze/hotspots")
+    public HotspotReport analyzeHotspots(
+            @RequestParam String path,
+            @RequestParam(defaultValue = "100") int top
+    ) throws IOException {
+        return folderService.analyzeHotspots(path, top);
+    }
+
+    // 构建目录的紧凑文件树并常驻内存，之后该目录下的分页、统计和切片查询不再遍历磁盘
+    @PostMapping("/api/analyze/compact")
+    public Map<String, Object> buildCompactTree(
             @RequestParam String path,
             @RequestParam(required = false) String keywords
     ) throws IOException {
-        return folderService.analyzeFolder(path, keywords);
+        long start = System.currentTimeMillis();
+        CompactTree tree = folderService.buildCompactTree(path, keywords);
+        Map<String, Object> result = new HashMap<>();
+        result.put("rootPath", tree.getRootPath());
+        result.put("entries", tree.getCount());
+        result.put("directories", tree.getDirectoryCount());
+        result.put("estimatedBytes", tree.estimateBytes());
+        result.put("buildMillis", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    // 从常驻紧凑树取出目录的切片，格式与 /api/analyze 相同；目录未常驻时返回404
+    @GetMapping("/api/analyze/compact")
+    public ResponseEntity<AnalyzeResponse> getCompactSlice(
+            @RequestParam String path,
+            @RequestParam(required = false) String keywords,
+            @RequestParam(defaultValue = "1") int maxDepth
+    ) {
+        AnalyzeResponse slice = folderService.getCompactSlice(path, keywords, maxDepth);
+        return slice != null ? ResponseEntity.ok(slice) : ResponseEntity.notFound().build();
+    }
+
+    // 懒加载：分页返回某个目录的直接子项，目录附带子树统计（已缓存或summary=true时现场计算）
+    @GetMapping("/api/analyze/children")
+    public FolderPage listChildren(
+            @RequestParam String path,
+            @RequestParam(required = false) String keywords,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "name") String sortBy,
+            @RequestParam(defaultValue = "asc") String order,
+            @RequestParam(defaultValue = "false") boolean summary
+    ) throws IOException {
+        return folderService.listChildren(path, keywords, offset, limit, sortBy, order, summary);
+    }
+
+    // 目录的子树统计（大小、文件数、敏感数），优先使用缓存
+    @GetMapping("/api/analyze/summary")
+    public Stats getSummary(
+            @RequestParam String path,
+            @RequestParam(required = false) String keywords,
+            @RequestParam(defaultValue = "false") boolean refresh
+    ) throws IOException {
+        return folderService.getSummary(path, keywords, refresh);
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package com.example.demo.dto;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 
 public class FileInfoDTO {
@@ -19,6 +21,16 @@ public class FileInfoDTO {
         this.lastModified = file.lastModified();
     }
 
+    // 由一次属性读取的结果构造，避免逐个调用 isDirectory/length/lastModified；
+    // 与 FileInfoDTO(File) 一致，符号链接应传入链接目标的属性（DirectoryMetadataCache.Entry.getTargetAttrs）
+    public FileInfoDTO(Path path, BasicFileAttributes attrs) {
+        this.name = path.getFileName().toString();
+        this.path = path.toAbsolutePath().toString();
+        this.isDirectory = attrs.isDirectory();
+        this.size = attrs.isRegularFile() ? attrs.size() : 0;
+        this.lastModified = attrs.lastModifiedTime().toMillis();
+    }
+
 
     public String getName() { return name; }
     public String getPath() { return path; }
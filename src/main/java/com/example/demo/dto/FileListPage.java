@@ -0,0 +1,22 @@
+package com.example.demo.dto;
+
+import java.util.List;
+
+
+public class FileListPage {
+    private List<FileInfoDTO> items;
+    private int total;          // 过滤后的条目总数
+    private String nextCursor;  // 下一页的游标，已是最后一页时为null
+
+
+    public FileListPage(List<FileInfoDTO> items, int total, String nextCursor) {
+        this.items = items;
+        this.total = total;
+        this.nextCursor = nextCursor;
+    }
+
+
+    public List<FileInfoDTO> getItems() { return items; }
+    public int getTotal() { return total; }
+    public String getNextCursor() { return nextCursor; }
+}
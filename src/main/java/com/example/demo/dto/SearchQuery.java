@@ -0,0 +1,46 @@
+package com.example.demo.dto;
+
+
+public class SearchQuery {
+    private String keyword;
+    private String mode = "substring";   // substring：文件名或目标路径包含关键词；prefix：文件名以关键词开头
+    private Long diskId;
+    private Long taskId;
+    private String status;
+    private String from;                 // 备份时间下限（含），如 2024-01-01 或 2024-01-01T08:00
+    private String to;                   // 备份时间上限（不含）
+    private int limit = 100;
+    private int offset = 0;
+    private boolean archived = false;    // 是否同时搜索已归档磁盘的分片和冷数据归档分区（结果排在主库结果之后）
+
+
+    public String getKeyword() { return keyword; }
+    public void setKeyword(String keyword) { this.keyword = keyword; }
+
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+
+    public Long getDiskId() { return diskId; }
+    public void setDiskId(Long diskId) { this.diskId = diskId; }
+
+    public Long getTaskId() { return taskId; }
+    public void setTaskId(Long taskId) { this.taskId = taskId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getFrom() { return from; }
+    public void setFrom(String from) { this.from = from; }
+
+    public String getTo() { return to; }
+    public void setTo(String to) { this.to = to; }
+
+    public int getLimit() { return limit; }
+    public void setLimit(int limit) { this.limit = limit; }
+
+    public int getOffset() { return offset; }
+    public void setOffset(int offset) { this.offset = offset; }
+
+    public boolean isArchived() { return archived; }
+    public void setArchived(boolean archived) { this.archived = archived; }
+}
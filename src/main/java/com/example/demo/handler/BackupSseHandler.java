@@ -0,0 +1,227 @@
+package com.example.demo.handler;
+
+import com.example.demo.service.ProgressEventHub;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进度事件的 SSE 推送（用于无法使用 WebSocket 的环境），事件与 BackupWebSocketHandler 同样来自 ProgressEventHub：
+ * event 为 breakpoint / telemetry / progress，id 为事件编号，data 与 WebSocket 消息相同。
+ * <p>
+ * 连接使用 Servlet 异步请求，空闲时不占用线程；推送线程只把事件放进每个连接的待发送表（同一对象只保留最新一条），
+ * 由发送线程池写出。客户端接收慢、上一批还没写完时，新事件直接覆盖待发送表中的旧事件，中间状态被丢弃，
+ * 内存占用不超过对象数量。每15秒没有数据的连接发送一行注释作为心跳，写失败的连接随即移除。
+ * <p>
+ * 断线重连时浏览器会带上 Last-Event-ID，能从回放缓冲区补齐的补发之后的事件，否则先发送当前状态的快照
+ */
+@Slf4j
+@Component
+public class BackupSseHandler implements ProgressEventHub.Listener {
+
+    private static final long HEARTBEAT_INTERVAL_MS = 15_000;
+    private static final long STALLED_LIMIT_MS = 60_000;   // 一次写出超过该时间的连接视为已失效
+    private static final long RECONNECT_DELAY_MS = 3000;
+    private static final int SENDER_THREADS = 4;
+
+    private final ProgressEventHub eventHub;
+    private final Map<Long, Client> clients = new ConcurrentHashMap<>();
+    private final AtomicLong clientIds = new AtomicLong();
+    private final AtomicInteger senderIds = new AtomicInteger();
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, r -> {
+        Thread thread = new Thread(r, "sse-sender-" + senderIds.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "sse-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BackupSseHandler(ProgressEventHub eventHub) {
+        this.eventHub = eventHub;
+    }
+
+    @PostConstruct
+    public void start() {
+        eventHub.addListener(this);
+        heartbeat.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        eventHub.removeListener(this);
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+        clients.values().forEach(client -> client.emitter.complete());
+        clients.clear();
+    }
+
+    /**
+     * 新建推送连接；taskIds 和 diskIds 都为空时接收全部事件。
+     * lastEventId 为客户端最后收到的事件编号，为空时从当前状态的快照开始
+     */
+    public SseEmitter connect(Set<Long> taskIds, Set<Long> diskIds, Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(0L);   // 不超时，失效的连接由心跳发现
+        Client client = new Client(clientIds.incrementAndGet(), emitter, taskIds, diskIds);
+        emitter.onCompletion(() -> remove(client));
+        emitter.onTimeout(() -> remove(client));
+        emitter.onError(e -> remove(client));
+        clients.put(client.id, client);
+
+        List<ProgressEventHub.Event> initial = lastEventId != null ? eventHub.eventsSince(lastEventId) : null;
+        if (initial == null) {
+            initial = eventHub.snapshot(taskIds, diskIds);
+        }
+        // 连接已登记，推送线程可能已经放入了更新的事件，快照中较旧的不能覆盖它
+        for (ProgressEventHub.Event event : initial) {
+            if (client.accepts(event)) {
+                client.offer(event);
+            }
+        }
+        client.heartbeatDue = true;   // 第一条消息带上重连间隔，同时让代理尽早转发响应头
+        schedule(client);
+        log.info("SSE 客户端连接：{}，当前连接数: {}", client.id, clients.size());
+        return emitter;
+    }
+
+    /**
+     * 推送线程调用，只写入待发送表
+     */
+    @Override
+    public void onEvents(List<ProgressEventHub.Event> events) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        for (Client client : clients.values()) {
+            boolean queued = false;
+            for (ProgressEventHub.Event event : events) {
+                if (client.accepts(event)) {
+                    client.offer(event);
+                    queued = true;
+                }
+            }
+            if (queued) {
+                schedule(client);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (Client client : clients.values()) {
+            long sendingSince = client.sendingSince;
+            if (sendingSince > 0 && now - sendingSince > STALLED_LIMIT_MS) {
+                log.warn("SSE 客户端 {} 写出超时，断开连接", client.id);
+                remove(client);
+                continue;
+            }
+            if (now - client.lastSentAt >= HEARTBEAT_INTERVAL_MS) {
+                client.heartbeatDue = true;
+                schedule(client);
+            }
+        }
+    }
+
+    // 每个连接同一时间最多一个发送任务；任务结束前到达的事件留在待发送表中，由同一任务继续发送
+    private void schedule(Client client) {
+        if (client.scheduled.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(client));
+            } catch (RejectedExecutionException e) {
+                client.scheduled.set(false);
+            }
+        }
+    }
+
+    private void drain(Client client) {
+        try {
+            while (true) {
+                if (!clients.containsKey(client.id)) {
+                    return;
+                }
+                List<ProgressEventHub.Event> batch = new ArrayList<>(client.mailbox.values());
+                boolean heartbeatDue = client.heartbeatDue;
+                if (batch.isEmpty() && !heartbeatDue) {
+                    break;
+                }
+                batch.sort(Comparator.comparingLong(ProgressEventHub.Event::getId));
+                client.sendingSince = System.currentTimeMillis();
+                if (heartbeatDue) {
+                    client.heartbeatDue = false;
+                    client.emitter.send(SseEmitter.event().reconnectTime(RECONNECT_DELAY_MS).comment("heartbeat"));
+                }
+                for (ProgressEventHub.Event event : batch) {
+                    // 发送期间被更新的事件保留在表中，下一轮发送新的
+                    client.mailbox.remove(event.getKey(), event);
+                    client.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(event.getId()))
+                            .name(event.getType())
+                            .data(event.getJson()));
+                }
+                client.sendingSince = 0;
+                client.lastSentAt = System.currentTimeMillis();
+            }
+        } catch (Exception e) {
+            log.info("SSE 客户端 {} 发送失败，断开连接: {}", client.id, e.getMessage());
+            remove(client);
+            client.emitter.completeWithError(e);
+            return;
+        } finally {
+            client.sendingSince = 0;
+            client.scheduled.set(false);
+        }
+        // 释放标志后到达的事件需要重新调度
+        if (!client.mailbox.isEmpty() || client.heartbeatDue) {
+            schedule(client);
+        }
+    }
+
+    private void remove(Client client) {
+        if (clients.remove(client.id, client)) {
+            log.info("SSE 客户端断开连接：{}，剩余连接数: {}", client.id, clients.size());
+        }
+    }
+
+    private static class Client {
+        final long id;
+        final SseEmitter emitter;
+        final Set<Long> taskIds;
+        final Set<Long> diskIds;
+        final Map<String, ProgressEventHub.Event> mailbox = new ConcurrentHashMap<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean heartbeatDue;
+        volatile long sendingSince;
+        volatile long lastSentAt = System.currentTimeMillis();
+
+        Client(long id, SseEmitter emitter, Set<Long> taskIds, Set<Long> diskIds) {
+            this.id = id;
+            this.emitter = emitter;
+            this.taskIds = taskIds;
+            this.diskIds = diskIds;
+        }
+
+        boolean accepts(ProgressEventHub.Event event) {
+            return (taskIds.isEmpty() && diskIds.isEmpty()) || event.matches(taskIds, diskIds);
+        }
+
+        // 同一对象保留编号较大（较新）的事件
+        void offer(ProgressEventHub.Event event) {
+            mailbox.merge(event.getKey(), event, (old, cur) -> cur.getId() >= old.getId() ? cur : old);
+        }
+    }
+}
@@ -1,51 +1,241 @@
 package com.example.demo.handler;
 
-import com.example.demo.entity.BackupLog;
+import com.example.demo.service.ProgressEventHub;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+
 import java.io.IOException;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 备份断点推送：事件来自 ProgressEventHub（同一文件的多次更新已合并为一条，每轮只序列化一次），
+ * 事件推送线程按固定频率（4Hz）把事件放进每个连接的待发送表（同一对象只保留最新一条），由发送线程池写出，
+ * 与 BackupSseHandler 相同：推送线程和备份线程都不等待网络，接收慢的客户端只会丢失中间状态，不影响其他连接。
+ * 每个连接包装为 ConcurrentWebSocketSessionDecorator，写出超时的连接由装饰器关闭。
+ * <p>
+ * 客户端可以只订阅关心的任务或磁盘（未订阅过的连接接收全部断点）：
+ * <pre>
+ * {"action": "subscribe", "taskIds": [1, 2], "diskIds": [3]}
+ * {"action": "unsubscribe", "taskIds": [1]}
+ * </pre>
+ * 订阅后立即收到一次当前状态的快照（正在传输的文件，以及最近结束的文件），之后只收到匹配的断点。
+ * 运行中的任务每秒还会推送一次速率统计（type 为 telemetry，字段见 TransferRate），
+ * 任务状态或已完成大小变化时推送任务进度（type 为 progress，字段见 TaskProgress）
+ */
+@Slf4j
 @Component
-public class BackupWebSocketHandler extends TextWebSocketHandler {
+public class BackupWebSocketHandler extends TextWebSocketHandler implements ProgressEventHub.Listener {
+
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int BUFFER_SIZE_LIMIT = 512 * 1024;
+    private static final int SENDER_THREADS = 4;
 
-    private final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
+    private final ProgressEventHub eventHub;
+    private final AtomicInteger senderIds = new AtomicInteger();
+    private final ExecutorService senders = Executors.newFixedThreadPool(SENDER_THREADS, r -> {
+        Thread thread = new Thread(r, "ws-sender-" + senderIds.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public BackupWebSocketHandler(ObjectMapper objectMapper) {
+    public BackupWebSocketHandler(ObjectMapper objectMapper, ProgressEventHub eventHub) {
         this.objectMapper = objectMapper;
+        this.eventHub = eventHub;
+    }
+
+    @PostConstruct
+    public void start() {
+        eventHub.addListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        eventHub.removeListener(this);
+        senders.shutdownNow();
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
-        sessions.add(session);
-        System.out.println("新客户端连接：" + session.getId() + "，当前连接数: " + sessions.size());
+        clients.put(session.getId(), new Client(new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS,
+                BUFFER_SIZE_LIMIT, ConcurrentWebSocketSessionDecorator.OverflowStrategy.DROP)));
+        log.info("新客户端连接：{}，当前连接数: {}", session.getId(), clients.size());
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        sessions.remove(session);
-        System.out.println("客户端断开连接：" + session.getId() + "，剩余连接数: " + sessions.size());
+        clients.remove(session.getId());
+        log.info("客户端断开连接：{}，剩余连接数: {}", session.getId(), clients.size());
     }
 
-    public void sendBreakpoint(BackupLog log) throws IOException {
-        if (sessions.isEmpty()) {
-            System.out.println("无活跃客户端，跳过断点推送");
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        Client client = clients.get(session.getId());
+        if (client == null) {
+            return;
+        }
+        JsonNode request;
+        try {
+            request = objectMapper.readTree(message.getPayload());
+        } catch (IOException e) {
+            reply(client, Map.of("type", "error", "message", "消息格式错误"));
             return;
         }
+        String action = request.path("action").asText();
+        Set<Long> taskIds = readIds(request.path("taskIds"));
+        Set<Long> diskIds = readIds(request.path("diskIds"));
+        switch (action) {
+            case "subscribe":
+                List<ProgressEventHub.Event> snapshot;
+                synchronized (client) {
+                    client.filtered = true;
+                    client.taskIds.addAll(taskIds);
+                    client.diskIds.addAll(diskIds);
+                    snapshot = taskIds.isEmpty() && diskIds.isEmpty() ? List.of() : eventHub.snapshot(taskIds, diskIds);
+                }
+                reply(client, subscriptionReply("subscribed", client, snapshot.size()));
+                for (ProgressEventHub.Event event : snapshot) {
+                    client.offer(event);
+                }
+                schedule(client);
+                break;
+            case "unsubscribe":
+                synchronized (client) {
+                    client.taskIds.removeAll(taskIds);
+                    client.diskIds.removeAll(diskIds);
+                }
+                reply(client, subscriptionReply("unsubscribed", client, 0));
+                break;
+            default:
+                reply(client, Map.of("type", "error", "message", "不支持的操作: " + action));
+        }
+    }
 
-        String jsonMessage = objectMapper.writeValueAsString(log);
-        TextMessage message = new TextMessage(jsonMessage);
+    /**
+     * 推送线程调用，只写入订阅了对应任务或磁盘的连接的待发送表
+     */
+    @Override
+    public void onEvents(List<ProgressEventHub.Event> events) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        for (Client client : clients.values()) {
+            if (!client.session.isOpen()) {
+                continue;
+            }
+            boolean queued = false;
+            for (ProgressEventHub.Event event : events) {
+                if (client.accepts(event)) {
+                    client.offer(event);
+                    queued = true;
+                }
+            }
+            if (queued) {
+                schedule(client);
+            }
+        }
+    }
 
-        for (WebSocketSession session : sessions) {
-            if (session.isOpen()) {
-                session.sendMessage(message);
-                System.out.println("已推送断点信息到客户端 " + session.getId() + "：状态=" + log.getStatus() + "，文件=" + log.getFilename());
+    // 每个连接同一时间最多一个发送任务；任务结束前到达的事件留在待发送表中，由同一任务继续发送
+    private void schedule(Client client) {
+        if (client.scheduled.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> drain(client));
+            } catch (RejectedExecutionException e) {
+                client.scheduled.set(false);
             }
         }
     }
+
+    private void drain(Client client) {
+        try {
+            while (client.session.isOpen() && !client.mailbox.isEmpty()) {
+                List<ProgressEventHub.Event> batch = new ArrayList<>(client.mailbox.values());
+                batch.sort(Comparator.comparingLong(ProgressEventHub.Event::getId));
+                for (ProgressEventHub.Event event : batch) {
+                    // 发送期间被更新的事件保留在表中，下一轮发送新的
+                    client.mailbox.remove(event.getKey(), event);
+                    client.session.sendMessage(new TextMessage(event.getJson()));
+                }
+            }
+        } catch (Exception e) {
+            // 发送超时或连接已断开时装饰器会关闭连接，随后由 afterConnectionClosed 移除
+            log.warn("推送进度到客户端 {} 失败: {}", client.session.getId(), e.getMessage());
+            client.mailbox.clear();
+            return;
+        } finally {
+            client.scheduled.set(false);
+        }
+        // 释放标志后到达的事件需要重新调度
+        if (client.session.isOpen() && !client.mailbox.isEmpty()) {
+            schedule(client);
+        }
+    }
+
+    private Map<String, Object> subscriptionReply(String type, Client client, int snapshotSize) {
+        Map<String, Object> reply = new LinkedHashMap<>();
+        reply.put("type", type);
+        synchronized (client) {
+            reply.put("taskIds", new TreeSet<>(client.taskIds));
+            reply.put("diskIds", new TreeSet<>(client.diskIds));
+        }
+        reply.put("snapshot", snapshotSize);
+        return reply;
+    }
+
+    private void reply(Client client, Map<String, ?> body) throws IOException {
+        client.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(body)));
+    }
+
+    private static Set<Long> readIds(JsonNode node) {
+        Set<Long> ids = new HashSet<>();
+        if (node.isArray()) {
+            node.forEach(id -> {
+                if (id.canConvertToLong()) {
+                    ids.add(id.asLong());
+                }
+            });
+        } else if (node.canConvertToLong()) {
+            ids.add(node.asLong());
+        }
+        return ids;
+    }
+
+    private static class Client {
+        final WebSocketSession session;
+        final Set<Long> taskIds = ConcurrentHashMap.newKeySet();
+        final Set<Long> diskIds = ConcurrentHashMap.newKeySet();
+        final Map<String, ProgressEventHub.Event> mailbox = new ConcurrentHashMap<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile boolean filtered;   // 订阅过之后只接收匹配的断点
+
+        Client(WebSocketSession session) {
+            this.session = session;
+        }
+
+        boolean accepts(ProgressEventHub.Event event) {
+            return !filtered || event.matches(taskIds, diskIds);
+        }
+
+        // 快照和推送线程可能同时写入同一对象，保留编号较大（较新）的事件
+        void offer(ProgressEventHub.Event event) {
+            mailbox.merge(event.getKey(), event, (old, cur) -> cur.getId() >= old.getId() ? cur : old);
+        }
+    }
 }
@@ -0,0 +1,28 @@
+// com/example/demo/model/BackupLogRef.java
+package com.example.demo.model;
+
+// backup_log 的轻量投影：只包含定位目标文件和判断状态所需的列
+public class BackupLogRef {
+    private long id;
+    private long taskId;
+    private long diskId;
+    private String filename;
+    private String targetPath;
+    private String status;
+
+    public BackupLogRef(long id, long taskId, long diskId, String filename, String targetPath, String status) {
+        this.id = id;
+        this.taskId = taskId;
+        this.diskId = diskId;
+        this.filename = filename;
+        this.targetPath = targetPath;
+        this.status = status;
+    }
+
+    public long getId() { return id; }
+    public long getTaskId() { return taskId; }
+    public long getDiskId() { return diskId; }
+    public String getFilename() { return filename; }
+    public String getTargetPath() { return targetPath; }
+    public String getStatus() { return status; }
+}
@@ -0,0 +1,73 @@
+// com/example/demo/model/BackupPlan.java
+package com.example.demo.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 备份计划：分类阶段生成，按任务ID保存，executeBackup 复核后直接使用，
+ * 避免再次遍历目录、匹配敏感词和读取文件属性
+ */
+public class BackupPlan {
+    private Long taskId;
+    private String sourcePath;
+    private String sensitivePattern;  // 生成计划时的敏感词配置，配置变化后计划失效
+    private long contentScanLimit;    // 生成计划时的内容扫描上限（未开启为0），开关或上限变化后计划失效
+    private long createdAt;
+    private List<Entry> entries = new ArrayList<>();  // 按遍历顺序排列（父目录在前）
+
+    public Long getTaskId() { return taskId; }
+    public void setTaskId(Long taskId) { this.taskId = taskId; }
+
+    public String getSourcePath() { return sourcePath; }
+    public void setSourcePath(String sourcePath) { this.sourcePath = sourcePath; }
+
+    public String getSensitivePattern() { return sensitivePattern; }
+    public void setSensitivePattern(String sensitivePattern) { this.sensitivePattern = sensitivePattern; }
+
+    public long getContentScanLimit() { return contentScanLimit; }
+    public void setContentScanLimit(long contentScanLimit) { this.contentScanLimit = contentScanLimit; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public List<Entry> getEntries() { return entries; }
+    public void setEntries(List<Entry> entries) { this.entries = entries; }
+
+    public void addEntry(Entry entry) { entries.add(entry); }
+
+    // 计划中的单个条目（文件或目录）
+    public static class Entry {
+        private String path;          // 相对源路径的路径，源路径本身为空串
+        private boolean directory;
+        private long size;            // 文件大小（字节），目录为0
+        private long lastModified;    // 最后修改时间（毫秒）
+        private int backupCount;      // 备份次数：敏感2次，冷数据1次，其他0次
+
+        public Entry() {
+        }
+
+        public Entry(String path, boolean directory, long size, long lastModified, int backupCount) {
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.backupCount = backupCount;
+        }
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+
+        public boolean isDirectory() { return directory; }
+        public void setDirectory(boolean directory) { this.directory = directory; }
+
+        public long getSize() { return size; }
+        public void setSize(long size) { this.size = size; }
+
+        public long getLastModified() { return lastModified; }
+        public void setLastModified(long lastModified) { this.lastModified = lastModified; }
+
+        public int getBackupCount() { return backupCount; }
+        public void setBackupCount(int backupCount) { this.backupCount = backupCount; }
+    }
+}
@@ -0,0 +1,35 @@
+// com/example/demo/model/CatalogHit.java
+package com.example.demo.model;
+
+// 目标盘目录段中查到的一条备份记录
+public class CatalogHit {
+    private String diskId;          // 磁盘编号（hard_disk.disk_id），按目录搜索时为段文件所在目录
+    private String path;            // 文件在当前挂载点下的完整路径
+    private String relativePath;    // 相对挂载点的路径（盘换了挂载位置也不变）
+    private String checksum;
+    private long size;
+    private long backupTime;        // 毫秒
+    private long taskId;
+    private long logId;
+
+    public CatalogHit(String diskId, String path, String relativePath, String checksum, long size,
+                      long backupTime, long taskId, long logId) {
+        this.diskId = diskId;
+        this.path = path;
+        this.relativePath = relativePath;
+        this.checksum = checksum;
+        this.size = size;
+        this.backupTime = backupTime;
+        this.taskId = taskId;
+        this.logId = logId;
+    }
+
+    public String getDiskId() { return diskId; }
+    public String getPath() { return path; }
+    public String getRelativePath() { return relativePath; }
+    public String getChecksum() { return checksum; }
+    public long getSize() { return size; }
+    public long getBackupTime() { return backupTime; }
+    public long getTaskId() { return taskId; }
+    public long getLogId() { return logId; }
+}
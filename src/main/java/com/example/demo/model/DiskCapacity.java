@@ -0,0 +1,29 @@
+// com/example/demo/model/DiskCapacity.java
+package com.example.demo.model;
+
+public class DiskCapacity {
+    private Long diskId;                 // hard_disk.id
+    private long availableCapacity;      // hard_disk.available_capacity
+    private Long usableSpace;            // 挂载点文件系统当前的可用空间，远程磁盘或无法读取时为空
+    private long reservedBytes;          // 运行中任务预留的字节数
+    private int activeReservations;
+    private long freeCapacity;           // 可供新任务预留的字节数：min(availableCapacity, usableSpace) - reservedBytes
+
+    public Long getDiskId() { return diskId; }
+    public void setDiskId(Long diskId) { this.diskId = diskId; }
+
+    public long getAvailableCapacity() { return availableCapacity; }
+    public void setAvailableCapacity(long availableCapacity) { this.availableCapacity = availableCapacity; }
+
+    public Long getUsableSpace() { return usableSpace; }
+    public void setUsableSpace(Long usableSpace) { this.usableSpace = usableSpace; }
+
+    public long getReservedBytes() { return reservedBytes; }
+    public void setReservedBytes(long reservedBytes) { this.reservedBytes = reservedBytes; }
+
+    public int getActiveReservations() { return activeReservations; }
+    public void setActiveReservations(int activeReservations) { this.activeReservations = activeReservations; }
+
+    public long getFreeCapacity() { return freeCapacity; }
+    public void setFreeCapacity(long freeCapacity) { this.freeCapacity = freeCapacity; }
+}
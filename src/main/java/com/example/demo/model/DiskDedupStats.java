@@ -0,0 +1,32 @@
+// com/example/demo/model/DiskDedupStats.java
+package com.example.demo.model;
+
+// 单块磁盘上的重复内容统计
+public class DiskDedupStats {
+    private long id;                 // hard_disk.id
+    private String diskId;           // hard_disk.disk_id，磁盘已删除时为空
+    private String mountPoint;
+    private long copies;             // 磁盘上成功备份的文件数
+    private long bytes;
+    private long duplicateCopies;    // 同一磁盘上内容重复的多余副本数
+    private long reclaimableBytes;   // 删除这些多余副本可回收的字节数
+
+    public DiskDedupStats(long id, String diskId, String mountPoint, long copies, long bytes,
+                          long duplicateCopies, long reclaimableBytes) {
+        this.id = id;
+        this.diskId = diskId;
+        this.mountPoint = mountPoint;
+        this.copies = copies;
+        this.bytes = bytes;
+        this.duplicateCopies = duplicateCopies;
+        this.reclaimableBytes = reclaimableBytes;
+    }
+
+    public long getId() { return id; }
+    public String getDiskId() { return diskId; }
+    public String getMountPoint() { return mountPoint; }
+    public long getCopies() { return copies; }
+    public long getBytes() { return bytes; }
+    public long getDuplicateCopies() { return duplicateCopies; }
+    public long getReclaimableBytes() { return reclaimableBytes; }
+}
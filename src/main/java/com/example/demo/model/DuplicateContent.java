@@ -0,0 +1,25 @@
+// com/example/demo/model/DuplicateContent.java
+package com.example.demo.model;
+
+// 同一校验和（相同内容）的备份副本汇总
+public class DuplicateContent {
+    private String checksum;
+    private long size;           // 单个副本的字节数
+    private long copies;         // 成功备份的副本数（所有磁盘）
+    private long disks;          // 分布在几块磁盘上
+    private long wastedBytes;    // 只保留一份时可回收的字节数：(copies - 1) * size
+
+    public DuplicateContent(String checksum, long size, long copies, long disks) {
+        this.checksum = checksum;
+        this.size = size;
+        this.copies = copies;
+        this.disks = disks;
+        this.wastedBytes = Math.max(0, copies - 1) * size;
+    }
+
+    public String getChecksum() { return checksum; }
+    public long getSize() { return size; }
+    public long getCopies() { return copies; }
+    public long getDisks() { return disks; }
+    public long getWastedBytes() { return wastedBytes; }
+}
@@ -1,6 +1,8 @@
 // com/example/demo/model/FileInfo.java
 package com.example.demo.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.nio.file.attribute.FileTime;
 import java.util.List;
 
@@ -12,6 +14,8 @@ public class FileInfo {
     private String lastModifiedTime;  // 改为String类型，避免FileTime序列化异常
     private boolean isSensitive;
     private List<FileInfo> children;  // 新增：子节点（用于树形结构）
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Stats stats;              // 目录的子树统计（仅分页接口返回，未计算时为null）
 
     // Getter和Setter（重点关注以下几个）
     public boolean isDirectory() { return isDirectory; }
@@ -25,6 +29,9 @@ public class FileInfo {
     public List<FileInfo> getChildren() { return children; }
     public void setChildren(List<FileInfo> children) { this.children = children; }
 
+    public Stats getStats() { return stats; }
+    public void setStats(Stats stats) { this.stats = stats; }
+
     // 其他原有Getter/Setter保持不变
     public String getName() { return name; }
     public void setName(String name) { this.name = name; }
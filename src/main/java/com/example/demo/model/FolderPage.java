@@ -0,0 +1,26 @@
+// com/example/demo/model/FolderPage.java
+package com.example.demo.model;
+
+import java.util.List;
+
+public class FolderPage {
+    private String path;            // 当前目录
+    private int offset;             // 本页起始位置
+    private int limit;              // 每页条数
+    private int total;              // 目录下的子项总数
+    private List<FileInfo> items;   // 本页子项（不含下级children）
+
+    public FolderPage(String path, int offset, int limit, int total, List<FileInfo> items) {
+        this.path = path;
+        this.offset = offset;
+        this.limit = limit;
+        this.total = total;
+        this.items = items;
+    }
+
+    public String getPath() { return path; }
+    public int getOffset() { return offset; }
+    public int getLimit() { return limit; }
+    public int getTotal() { return total; }
+    public List<FileInfo> getItems() { return items; }
+}
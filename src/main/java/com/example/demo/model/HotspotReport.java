@@ -0,0 +1,99 @@
+// com/example/demo/model/HotspotReport.java
+package com.example.demo.model;
+
+import java.util.List;
+
+public class HotspotReport {
+    private String path;                        // 分析的目录
+    private long totalFiles;
+    private long totalDirectories;
+    private long totalSize;
+    private List<Item> topFiles;                // 最大的N个文件（按大小降序）
+    private List<Item> topDirectories;          // 子树最大的N个目录（按大小降序，不含根目录）
+    private List<Bucket> sizeHistogram;         // 文件大小分布（按2的幂分桶）
+    private List<Bucket> ageHistogram;          // 文件修改时间距今天数分布（按2的幂分桶）
+    private List<ExtensionTotal> extensions;    // 按扩展名汇总（按总大小降序）
+    private long elapsedMillis;
+
+    public String getPath() { return path; }
+    public void setPath(String path) { this.path = path; }
+
+    public long getTotalFiles() { return totalFiles; }
+    public void setTotalFiles(long totalFiles) { this.totalFiles = totalFiles; }
+
+    public long getTotalDirectories() { return totalDirectories; }
+    public void setTotalDirectories(long totalDirectories) { this.totalDirectories = totalDirectories; }
+
+    public long getTotalSize() { return totalSize; }
+    public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+
+    public List<Item> getTopFiles() { return topFiles; }
+    public void setTopFiles(List<Item> topFiles) { this.topFiles = topFiles; }
+
+    public List<Item> getTopDirectories() { return topDirectories; }
+    public void setTopDirectories(List<Item> topDirectories) { this.topDirectories = topDirectories; }
+
+    public List<Bucket> getSizeHistogram() { return sizeHistogram; }
+    public void setSizeHistogram(List<Bucket> sizeHistogram) { this.sizeHistogram = sizeHistogram; }
+
+    public List<Bucket> getAgeHistogram() { return ageHistogram; }
+    public void setAgeHistogram(List<Bucket> ageHistogram) { this.ageHistogram = ageHistogram; }
+
+    public List<ExtensionTotal> getExtensions() { return extensions; }
+    public void setExtensions(List<ExtensionTotal> extensions) { this.extensions = extensions; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    public static class Item {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        public Item(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+    }
+
+    // 区间 [from, to)，大小分布单位为字节，时间分布单位为天
+    public static class Bucket {
+        private final long from;
+        private final long to;
+        private final long count;
+        private final long bytes;
+
+        public Bucket(long from, long to, long count, long bytes) {
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        public long getFrom() { return from; }
+        public long getTo() { return to; }
+        public long getCount() { return count; }
+        public long getBytes() { return bytes; }
+    }
+
+    public static class ExtensionTotal {
+        private final String extension;   // 小写，无扩展名为空字符串，超出统计上限的归入 "*"
+        private final long count;
+        private final long bytes;
+
+        public ExtensionTotal(String extension, long count, long bytes) {
+            this.extension = extension;
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        public String getExtension() { return extension; }
+        public long getCount() { return count; }
+        public long getBytes() { return bytes; }
+    }
+}
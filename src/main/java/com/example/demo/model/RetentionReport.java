@@ -0,0 +1,57 @@
+// com/example/demo/model/RetentionReport.java
+package com.example.demo.model;
+
+public class RetentionReport {
+    private boolean running;
+    private String startTime;
+    private String endTime;
+    private long compactedRows;          // 被更新的备份取代而删除的记录数
+    private long compactedBytes;         // 删除记录的估算字节数
+    private long archivedRows;           // 移到归档分区的记录数
+    private long archivedBytes;          // 归档记录的原始字节数（JSON）
+    private long archiveFileBytes;       // 本次写入的归档分区文件大小（gzip）
+    private int partitionsWritten;
+    private long freeBytes;              // 主库中可复用的空闲页字节数
+    private long elapsedMillis;
+    private long throttledMillis;        // 因I/O预算限制而等待的时间
+    private String error;
+
+    public boolean isRunning() { return running; }
+    public void setRunning(boolean running) { this.running = running; }
+
+    public String getStartTime() { return startTime; }
+    public void setStartTime(String startTime) { this.startTime = startTime; }
+
+    public String getEndTime() { return endTime; }
+    public void setEndTime(String endTime) { this.endTime = endTime; }
+
+    public long getCompactedRows() { return compactedRows; }
+    public void setCompactedRows(long compactedRows) { this.compactedRows = compactedRows; }
+
+    public long getCompactedBytes() { return compactedBytes; }
+    public void setCompactedBytes(long compactedBytes) { this.compactedBytes = compactedBytes; }
+
+    public long getArchivedRows() { return archivedRows; }
+    public void setArchivedRows(long archivedRows) { this.archivedRows = archivedRows; }
+
+    public long getArchivedBytes() { return archivedBytes; }
+    public void setArchivedBytes(long archivedBytes) { this.archivedBytes = archivedBytes; }
+
+    public long getArchiveFileBytes() { return archiveFileBytes; }
+    public void setArchiveFileBytes(long archiveFileBytes) { this.archiveFileBytes = archiveFileBytes; }
+
+    public int getPartitionsWritten() { return partitionsWritten; }
+    public void setPartitionsWritten(int partitionsWritten) { this.partitionsWritten = partitionsWritten; }
+
+    public long getFreeBytes() { return freeBytes; }
+    public void setFreeBytes(long freeBytes) { this.freeBytes = freeBytes; }
+
+    public long getElapsedMillis() { return elapsedMillis; }
+    public void setElapsedMillis(long elapsedMillis) { this.elapsedMillis = elapsedMillis; }
+
+    public long getThrottledMillis() { return throttledMillis; }
+    public void setThrottledMillis(long throttledMillis) { this.throttledMillis = throttledMillis; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+}
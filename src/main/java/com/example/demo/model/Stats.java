@@ -2,21 +2,29 @@
 package com.example.demo.model;
 
 public class Stats {
-    private int totalFiles;         // 总文件数
-    private int totalDirectories;   // 总目录数
-    private int sensitiveFiles;     // 敏感文件数
+    private long totalFiles;        // 总文件数（long，避免超大共享目录溢出）
+    private long totalDirectories;  // 总目录数
+    private long sensitiveFiles;    // 敏感文件数
     private long totalSize;         // 总大小（字节）
 
     // Getter和Setter
-    public int getTotalFiles() { return totalFiles; }
-    public void setTotalFiles(int totalFiles) { this.totalFiles = totalFiles; }
+    public long getTotalFiles() { return totalFiles; }
+    public void setTotalFiles(long totalFiles) { this.totalFiles = totalFiles; }
 
-    public int getTotalDirectories() { return totalDirectories; }
-    public void setTotalDirectories(int totalDirectories) { this.totalDirectories = totalDirectories; }
+    public long getTotalDirectories() { return totalDirectories; }
+    public void setTotalDirectories(long totalDirectories) { this.totalDirectories = totalDirectories; }
 
-    public int getSensitiveFiles() { return sensitiveFiles; }
-    public void setSensitiveFiles(int sensitiveFiles) { this.sensitiveFiles = sensitiveFiles; }
+    public long getSensitiveFiles() { return sensitiveFiles; }
+    public void setSensitiveFiles(long sensitiveFiles) { this.sensitiveFiles = sensitiveFiles; }
 
     public long getTotalSize() { return totalSize; }
     public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+
+    // 把另一个统计累加到当前统计
+    public void add(Stats other) {
+        totalFiles += other.totalFiles;
+        totalDirectories += other.totalDirectories;
+        sensitiveFiles += other.sensitiveFiles;
+        totalSize += other.totalSize;
+    }
 }
\ No newline at end of file
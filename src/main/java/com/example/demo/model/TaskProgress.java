@@ -0,0 +1,49 @@
+// com/example/demo/model/TaskProgress.java
+package com.example.demo.model;
+
+public class TaskProgress {
+    private Long taskId;
+    private String status;
+    private boolean paused;
+    private double progress;             // 0-100
+    private long totalSize;
+    private long completedSize;          // 已完成文件的字节数（含多副本）
+    private long transferredBytes;       // 本次运行已写入的字节数（含未完成的文件）
+    private double bytesPerSecond;
+    private double filesPerSecond;
+    private Long etaSeconds;
+    private boolean live;                // true：来自运行中任务的内存状态；false：来自数据库
+
+    public Long getTaskId() { return taskId; }
+    public void setTaskId(Long taskId) { this.taskId = taskId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public boolean isPaused() { return paused; }
+    public void setPaused(boolean paused) { this.paused = paused; }
+
+    public double getProgress() { return progress; }
+    public void setProgress(double progress) { this.progress = progress; }
+
+    public long getTotalSize() { return totalSize; }
+    public void setTotalSize(long totalSize) { this.totalSize = totalSize; }
+
+    public long getCompletedSize() { return completedSize; }
+    public void setCompletedSize(long completedSize) { this.completedSize = completedSize; }
+
+    public long getTransferredBytes() { return transferredBytes; }
+    public void setTransferredBytes(long transferredBytes) { this.transferredBytes = transferredBytes; }
+
+    public double getBytesPerSecond() { return bytesPerSecond; }
+    public void setBytesPerSecond(double bytesPerSecond) { this.bytesPerSecond = bytesPerSecond; }
+
+    public double getFilesPerSecond() { return filesPerSecond; }
+    public void setFilesPerSecond(double filesPerSecond) { this.filesPerSecond = filesPerSecond; }
+
+    public Long getEtaSeconds() { return etaSeconds; }
+    public void setEtaSeconds(Long etaSeconds) { this.etaSeconds = etaSeconds; }
+
+    public boolean isLive() { return live; }
+    public void setLive(boolean live) { this.live = live; }
+}
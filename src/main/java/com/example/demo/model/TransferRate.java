@@ -0,0 +1,57 @@
+// com/example/demo/model/TransferRate.java
+package com.example.demo.model;
+
+public class TransferRate {
+    private String scope;                // task：备份任务；source：源磁盘；target：目标磁盘
+    private String id;                   // 任务ID、源路径所在的文件系统或目标磁盘编号
+    private Long taskId;                 // 仅任务
+    private Long diskId;                 // 仅任务：目标磁盘（hard_disk.id）
+    private String status;               // 仅任务
+    private long transferredBytes;       // 本次运行已写入的字节数
+    private long completedFiles;
+    private long totalBytes;             // 仅任务：需要写入的总字节数（含多副本）
+    private double bytesPerSecond;       // 滑动窗口内的平均速率
+    private double filesPerSecond;
+    private Long etaSeconds;             // 仅任务：按当前速率估算的剩余时间，速率为0时为空
+    private double progress;             // 仅任务：0-100
+    private long windowMillis;           // 速率统计窗口的实际长度
+
+    public String getScope() { return scope; }
+    public void setScope(String scope) { this.scope = scope; }
+
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public Long getTaskId() { return taskId; }
+    public void setTaskId(Long taskId) { this.taskId = taskId; }
+
+    public Long getDiskId() { return diskId; }
+    public void setDiskId(Long diskId) { this.diskId = diskId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public long getTransferredBytes() { return transferredBytes; }
+    public void setTransferredBytes(long transferredBytes) { this.transferredBytes = transferredBytes; }
+
+    public long getCompletedFiles() { return completedFiles; }
+    public void setCompletedFiles(long completedFiles) { this.completedFiles = completedFiles; }
+
+    public long getTotalBytes() { return totalBytes; }
+    public void setTotalBytes(long totalBytes) { this.totalBytes = totalBytes; }
+
+    public double getBytesPerSecond() { return bytesPerSecond; }
+    public void setBytesPerSecond(double bytesPerSecond) { this.bytesPerSecond = bytesPerSecond; }
+
+    public double getFilesPerSecond() { return filesPerSecond; }
+    public void setFilesPerSecond(double filesPerSecond) { this.filesPerSecond = filesPerSecond; }
+
+    public Long getEtaSeconds() { return etaSeconds; }
+    public void setEtaSeconds(Long etaSeconds) { this.etaSeconds = etaSeconds; }
+
+    public double getProgress() { return progress; }
+    public void setProgress(double progress) { this.progress = progress; }
+
+    public long getWindowMillis() { return windowMillis; }
+    public void setWindowMillis(long windowMillis) { this.windowMillis = windowMillis; }
+}
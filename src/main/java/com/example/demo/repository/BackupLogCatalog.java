@@ -0,0 +1,158 @@
+package com.example.demo.repository;
+
+import com.example.demo.entity.BackupLog;
+import com.example.demo.model.BackupLogRef;
+import com.example.demo.util.SqliteWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * backup_log 的目录查询：按 id 游标分页（id > :cursor LIMIT n）、轻量投影、流式遍历，
+ * 内存占用和单次查询耗时不随任务的文件数增长。
+ * 查询走只读连接池，插入和更新交给 SQLite 单写线程合并提交。
+ * 已归档磁盘的记录在分片库中（见 BackupLogShardRouter），按任务查询时与主库的结果按 id 归并
+ */
+@Repository
+public class BackupLogCatalog {
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private SqliteWriter writer;
+    @Autowired
+    private BackupLogShardRouter shardRouter;
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    private static final int MAX_PAGE_SIZE = 5000;
+    private static final int FETCH_SIZE = 1000;
+
+    private static final RowMapper<BackupLog> LOG_MAPPER = new BeanPropertyRowMapper<>(BackupLog.class);
+    private static final RowMapper<BackupLogRef> REF_MAPPER = (rs, rowNum) -> new BackupLogRef(
+            rs.getLong("id"), rs.getLong("task_id"), rs.getLong("disk_id"), rs.getString("filename"), rs.getString("target_path"),
+            rs.getString("status"));
+
+    /**
+     * 任务的一页完整记录，按 id 升序，afterId 为上一页最后一条的 id（第一页传0）
+     */
+    public List<BackupLog> pageByTask(long taskId, long afterId, int limit) {
+        String sql = "SELECT * FROM backup_log WHERE task_id = ? AND id > ? ORDER BY id LIMIT ?";
+        int size = pageSize(limit);
+        List<BackupLog> page = readJdbcTemplate.query(sql, LOG_MAPPER, taskId, afterId, size);
+        if (!shardRouter.hasShards()) {
+            return page;
+        }
+        return mergeById(page, shardRouter.queryShards(sql, LOG_MAPPER, taskId, afterId, size), BackupLog::getId, size);
+    }
+
+    /**
+     * 任务的一页轻量投影（id、磁盘、文件名、目标路径、状态）
+     */
+    public List<BackupLogRef> pageRefsByTask(long taskId, long afterId, int limit) {
+        String sql = "SELECT id, task_id, disk_id, filename, target_path, status FROM backup_log "
+                + "WHERE task_id = ? AND id > ? ORDER BY id LIMIT ?";
+        int size = pageSize(limit);
+        List<BackupLogRef> page = readJdbcTemplate.query(sql, REF_MAPPER, taskId, afterId, size);
+        if (!shardRouter.hasShards()) {
+            return page;
+        }
+        return mergeById(page, shardRouter.queryShards(sql, REF_MAPPER, taskId, afterId, size), BackupLogRef::getId, size);
+    }
+
+    /**
+     * 流式遍历任务的全部记录（用于导出），结果集逐行读取，不在内存中累积。
+     * 先主库后各分片，每部分内按 id 升序
+     */
+    public void forEachByTask(long taskId, Consumer<BackupLog> consumer) {
+        String sql = "SELECT * FROM backup_log WHERE task_id = ? ORDER BY id";
+        RowCallbackHandler handler = rs -> consumer.accept(LOG_MAPPER.mapRow(rs, 0));
+        readJdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setFetchSize(FETCH_SIZE);
+            ps.setLong(1, taskId);
+            return ps;
+        }, handler);
+        shardRouter.forEachInShards(sql, handler, taskId);
+    }
+
+    public String findFirstTargetPath(long taskId) {
+        String sql = "SELECT target_path FROM backup_log WHERE task_id = ? ORDER BY id LIMIT 1";
+        List<String> paths = readJdbcTemplate.queryForList(sql, String.class, taskId);
+        if (paths.isEmpty() && shardRouter.hasShards()) {
+            paths = shardRouter.queryShards(sql, (rs, rowNum) -> rs.getString(1), taskId);
+        }
+        return paths.isEmpty() ? null : paths.get(0);
+    }
+
+    /**
+     * 插入一条记录（由写线程合并提交），返回时 id 已回填到 backupLog
+     */
+    public void insert(BackupLog backupLog) {
+        Long id = writer.execute(jdbc -> {
+            jdbc.update("INSERT INTO backup_log (task_id, filename, disk_id, target_path, checksum, status, transfer_offset, "
+                            + "backup_time, index_path) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                    backupLog.getTaskId(), backupLog.getFilename(), backupLog.getDiskId(), backupLog.getTargetPath(),
+                    backupLog.getChecksum(), backupLog.getStatus(), backupLog.getTransferOffset(),
+                    backupLog.getBackupTime(), backupLog.getIndexPath());
+            // 写连接只由写线程使用，last_insert_rowid 就是本条记录的 id
+            return jdbc.queryForObject("SELECT last_insert_rowid()", Long.class);
+        });
+        backupLog.setId(id);
+    }
+
+    // 备份过程中只有状态、断点和时间会变化，只写回这几列，不整行保存
+    public void updateState(BackupLog backupLog) {
+        writer.execute(jdbc -> jdbc.update("UPDATE backup_log SET status = ?, transfer_offset = ?, backup_time = ? WHERE id = ?",
+                backupLog.getStatus(), backupLog.getTransferOffset(), backupLog.getBackupTime(), backupLog.getId()));
+    }
+
+    // 按 id 区间批量更新状态，配合分页使用，避免逐条 save
+    public int updateStatusInRange(long taskId, long fromIdExclusive, long toIdInclusive, String status) {
+        return writer.execute(jdbc -> jdbc.update("UPDATE backup_log SET status = ? WHERE task_id = ? AND id > ? AND id <= ?",
+                status, taskId, fromIdExclusive, toIdInclusive));
+    }
+
+    public void updateStatus(List<Long> ids, String status) {
+        writer.execute(jdbc -> jdbc.batchUpdate("UPDATE backup_log SET status = ? WHERE id = ?", ids, ids.size(),
+                (ps, id) -> {
+                    ps.setString(1, status);
+                    ps.setLong(2, id);
+                }));
+    }
+
+    public int updateIndexPath(long taskId, String indexPath) {
+        return writer.execute(jdbc -> jdbc.update("UPDATE backup_log SET index_path = ? WHERE task_id = ?", indexPath, taskId));
+    }
+
+    // 传输进度只更新断点列，不整行保存
+    public void updateTransferOffset(long id, long transferOffset) {
+        writer.execute(jdbc -> jdbc.update("UPDATE backup_log SET transfer_offset = ? WHERE id = ?", transferOffset, id));
+    }
+
+    // 主库和分片各自按 id 升序取了一页，合并后取前 size 条
+    private <T> List<T> mergeById(List<T> main, List<T> shards, ToLongFunction<T> id, int size) {
+        if (shards.isEmpty()) {
+            return main;
+        }
+        List<T> merged = new ArrayList<>(main.size() + shards.size());
+        merged.addAll(main);
+        merged.addAll(shards);
+        merged.sort(Comparator.comparingLong(id));
+        return merged.size() > size ? new ArrayList<>(merged.subList(0, size)) : merged;
+    }
+
+    private int pageSize(int limit) {
+        return limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+    }
+}
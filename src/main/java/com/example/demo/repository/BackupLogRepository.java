@@ -7,8 +7,10 @@ import org.springframework.data.repository.CrudRepository;
 import java.util.List;
 
 public interface BackupLogRepository extends CrudRepository<BackupLog, Long> {
-    @Query("SELECT * FROM backup_log WHERE checksum = :checksum")
-    BackupLog findByChecksum(String checksum);
+    // 判断是否已有相同内容的备份，包括已归档（移出主库）的记录（checksum 列有索引）
+    @Query("SELECT EXISTS (SELECT 1 FROM backup_log WHERE checksum = :checksum) "
+            + "OR EXISTS (SELECT 1 FROM archived_checksum WHERE checksum = :checksum)")
+    boolean existsByChecksum(String checksum);
 
     @Query("SELECT * FROM backup_log WHERE task_id = :taskId")
     List<BackupLog> findAllByTaskId(Long taskId);
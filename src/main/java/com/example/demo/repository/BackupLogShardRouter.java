@@ -0,0 +1,227 @@
+package com.example.demo.repository;
+
+import com.example.demo.config.SqliteJdbcConfig;
+import com.example.demo.util.SqliteWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * backup_log 的按磁盘分片：磁盘归档（migrateDisk）后，它的备份记录从主库移到独立的分片库
+ * （~/backup/shards/disk_&lt;hard_disk.id&gt;.db），主库的 backup_log 只保留在用磁盘的记录，
+ * 写入、全文索引和重复统计的触发器都只作用在较小的热数据上。
+ * 记录ID在主库中分配（AUTOINCREMENT 不会复用），移动到分片后保持不变，按任务分页时主库和分片按ID归并。
+ * 不同磁盘的分片是不同的文件，归档移动和分片查询可以并行进行
+ */
+@Slf4j
+@Repository
+public class BackupLogShardRouter {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private SqliteWriter writer;
+
+    private static final Pattern SHARD_FILE = Pattern.compile("disk_(\\d+)\\.db");
+    private static final int DELETE_BATCH = 5000;
+    private static final int SHARD_POOL_SIZE = 2;
+    private static final long QUERY_TIMEOUT_SECONDS = 60;
+
+    private final Path shardDir = Paths.get(System.getProperty("user.home"), "backup", "shards");
+    private final Map<Long, Shard> shards = new ConcurrentSkipListMap<>();
+    private final ExecutorService queryPool = Executors.newFixedThreadPool(4, r -> {
+        Thread thread = new Thread(r, "shard-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void loadShards() {
+        if (!Files.isDirectory(shardDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(shardDir, "disk_*.db")) {
+            for (Path file : stream) {
+                Matcher matcher = SHARD_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    shards.put(Long.parseLong(matcher.group(1)), new Shard(file));
+                }
+            }
+        } catch (IOException e) {
+            log.warn("读取分片目录失败: {}", shardDir, e);
+        }
+        if (!shards.isEmpty()) {
+            log.info("已加载备份记录分片: {}", shards.keySet());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queryPool.shutdownNow();
+        shards.values().forEach(Shard::close);
+    }
+
+    public boolean hasShards() {
+        return !shards.isEmpty();
+    }
+
+    public Set<Long> getArchivedDiskIds() {
+        return Collections.unmodifiableSet(shards.keySet());
+    }
+
+    /**
+     * 把磁盘的全部备份记录从主库移到它的分片库。先复制（按ID去重，可重复执行）再分批从主库删除，
+     * 中途失败时记录仍然完整地在主库或分片中，重新执行即可
+     *
+     * @return 移动的记录数
+     */
+    public synchronized long archiveDisk(long diskId) throws IOException {
+        Files.createDirectories(shardDir);
+        Path file = shardDir.resolve("disk_" + diskId + ".db");
+        long start = System.currentTimeMillis();
+
+        // 在主库的一个连接上挂载分片库复制记录，只写分片库，主库只读，不占用主库的写锁
+        Long maxId = jdbcTemplate.execute((ConnectionCallback<Long>) con -> {
+            try (Statement statement = con.createStatement()) {
+                statement.execute("ATTACH DATABASE '" + file.toString().replace("'", "''") + "' AS shard");
+                try {
+                    createShardSchema(statement);
+                    Long max = null;
+                    try (PreparedStatement query = con.prepareStatement("SELECT MAX(id) FROM main.backup_log WHERE disk_id = ?")) {
+                        query.setLong(1, diskId);
+                        try (ResultSet rs = query.executeQuery()) {
+                            if (rs.next() && rs.getObject(1) != null) {
+                                max = rs.getLong(1);
+                            }
+                        }
+                    }
+                    try (PreparedStatement copy = con.prepareStatement(
+                            "INSERT OR IGNORE INTO shard.backup_log SELECT * FROM main.backup_log WHERE disk_id = ? AND id <= ?")) {
+                        copy.setLong(1, diskId);
+                        copy.setLong(2, max != null ? max : 0);
+                        copy.executeUpdate();
+                    }
+                    return max;
+                } finally {
+                    statement.execute("DETACH DATABASE shard");
+                }
+            }
+        });
+
+        // 分批删除，每批是单写线程里的一个短事务（同时触发全文索引和重复统计的删除触发器）。
+        // 删除前先保留校验和，迁移到目标盘的内容在去重判断中仍视为已备份
+        long moved = 0;
+        if (maxId != null) {
+            writer.execute(jdbc -> jdbc.update("INSERT OR IGNORE INTO archived_checksum (checksum) "
+                    + "SELECT DISTINCT checksum FROM backup_log WHERE disk_id = ? AND id <= ?", diskId, maxId));
+            while (true) {
+                int deleted = writer.execute(jdbc -> jdbc.update("DELETE FROM backup_log WHERE id IN "
+                        + "(SELECT id FROM backup_log WHERE disk_id = ? AND id <= ? LIMIT ?)", diskId, maxId, DELETE_BATCH));
+                moved += deleted;
+                if (deleted < DELETE_BATCH) {
+                    break;
+                }
+            }
+        }
+        shards.computeIfAbsent(diskId, id -> new Shard(file));
+        log.info("磁盘备份记录已归档到分片: 磁盘ID={}, 记录数={}, 耗时 {} ms", diskId, moved, System.currentTimeMillis() - start);
+        return moved;
+    }
+
+    private void createShardSchema(Statement statement) throws SQLException {
+        statement.execute("CREATE TABLE IF NOT EXISTS shard.backup_log ("
+                + "id INTEGER PRIMARY KEY, task_id INTEGER NOT NULL, filename TEXT NOT NULL, disk_id INTEGER NOT NULL, "
+                + "target_path TEXT NOT NULL, checksum TEXT NOT NULL, status TEXT NOT NULL, transfer_offset INTEGER NOT NULL, "
+                + "backup_time TEXT NOT NULL, index_path TEXT)");
+        statement.execute("CREATE INDEX IF NOT EXISTS shard.idx_backup_log_task_id ON backup_log (task_id)");
+        statement.execute("CREATE INDEX IF NOT EXISTS shard.idx_backup_log_checksum ON backup_log (checksum)");
+    }
+
+    /**
+     * 在所有分片上并行执行同一查询，合并结果（不保证顺序）
+     */
+    public <T> List<T> queryShards(String sql, RowMapper<T> mapper, Object... args) {
+        List<Future<List<T>>> futures = new ArrayList<>();
+        for (Shard shard : shards.values()) {
+            futures.add(queryPool.submit(() -> shard.jdbc().query(sql, mapper, args)));
+        }
+        List<T> result = new ArrayList<>();
+        for (Future<List<T>> future : futures) {
+            try {
+                result.addAll(future.get(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+                future.cancel(true);
+                log.warn("分片查询失败: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 依次在每个分片上流式执行查询（用于导出）
+     */
+    public void forEachInShards(String sql, RowCallbackHandler handler, Object... args) {
+        for (Shard shard : shards.values()) {
+            shard.jdbc().query(sql, handler, args);
+        }
+    }
+
+    private static class Shard {
+        final Path file;
+        private volatile HikariDataSource dataSource;
+        private volatile JdbcTemplate jdbc;
+
+        Shard(Path file) {
+            this.file = file;
+        }
+
+        // 只读连接池在第一次查询时创建
+        JdbcTemplate jdbc() {
+            if (jdbc == null) {
+                synchronized (this) {
+                    if (jdbc == null) {
+                        HikariDataSource ds = new HikariDataSource();
+                        ds.setJdbcUrl("jdbc:sqlite:" + file);
+                        ds.setPoolName("sqlite-shard-" + file.getFileName());
+                        ds.setMaximumPoolSize(SHARD_POOL_SIZE);
+                        ds.setMinimumIdle(0);
+                        ds.setConnectionInitSql("PRAGMA query_only = 1");
+                        SqliteJdbcConfig.pragmas().forEach((key, value) -> ds.addDataSourceProperty((String) key, value));
+                        dataSource = ds;
+                        jdbc = new JdbcTemplate(ds);
+                    }
+                }
+            }
+            return jdbc;
+        }
+
+        synchronized void close() {
+            if (dataSource != null) {
+                dataSource.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.demo.service;
+
+import com.example.demo.model.BackupPlan;
+import com.example.demo.util.KeywordMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 备份计划的保存、加载和复核
+ * 计划文件保存在 ~/backup/plans/plan_{taskId}.bin（GZIP压缩的二进制格式）
+ */
+@Slf4j
+@Service
+public class BackupPlanService {
+    @Autowired
+    private ContentScanService contentScanService;
+
+    private static final int PLAN_MAGIC = 0x42504C4E; // "BPLN"
+    private static final int PLAN_VERSION = 2;
+    public static final long COLD_DATA_THRESHOLD_DAYS = 365; // 冷数据阈值：365天
+
+    private final Path planDir = Paths.get(System.getProperty("user.home"), "backup", "plans");
+
+    public void save(BackupPlan plan) throws IOException {
+        Files.createDirectories(planDir);
+        Path planPath = getPlanPath(plan.getTaskId());
+        Path tmpPath = planPath.resolveSibling(planPath.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmpPath))))) {
+            out.writeInt(PLAN_MAGIC);
+            out.writeInt(PLAN_VERSION);
+            out.writeLong(plan.getTaskId());
+            out.writeUTF(plan.getSourcePath());
+            out.writeUTF(plan.getSensitivePattern() != null ? plan.getSensitivePattern() : "");
+            out.writeLong(plan.getContentScanLimit());
+            out.writeLong(plan.getCreatedAt());
+            out.writeInt(plan.getEntries().size());
+            for (BackupPlan.Entry entry : plan.getEntries()) {
+                out.writeUTF(entry.getPath());
+                out.writeBoolean(entry.isDirectory());
+                out.writeLong(entry.getSize());
+                out.writeLong(entry.getLastModified());
+                out.writeByte(entry.getBackupCount());
+            }
+        }
+        // 先写临时文件再替换，避免执行备份时读到写了一半的计划
+        Files.move(tmpPath, planPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("备份计划已保存: taskId={}, 条目数={}, 文件={}", plan.getTaskId(), plan.getEntries().size(), planPath);
+    }
+
+    /**
+     * 加载任务的备份计划，不存在或文件损坏时返回null
+     */
+    public BackupPlan load(Long taskId) {
+        if (taskId == null) {
+            return null;
+        }
+        Path planPath = getPlanPath(taskId);
+        if (!Files.exists(planPath)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(planPath))))) {
+            if (in.readInt() != PLAN_MAGIC || in.readInt() != PLAN_VERSION) {
+                log.warn("备份计划格式不兼容，忽略: {}", planPath);
+                return null;
+            }
+            BackupPlan plan = new BackupPlan();
+            plan.setTaskId(in.readLong());
+            plan.setSourcePath(in.readUTF());
+            String pattern = in.readUTF();
+            plan.setSensitivePattern(pattern.isEmpty() ? null : pattern);
+            plan.setContentScanLimit(in.readLong());
+            plan.setCreatedAt(in.readLong());
+            int count = in.readInt();
+            List<BackupPlan.Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(new BackupPlan.Entry(in.readUTF(), in.readBoolean(), in.readLong(), in.readLong(), in.readByte()));
+            }
+            plan.setEntries(entries);
+            return plan;
+        } catch (IOException e) {
+            log.warn("备份计划读取失败，忽略: {}，原因: {}", planPath, e.getMessage());
+            return null;
+        }
+    }
+
+    public void delete(Long taskId) {
+        try {
+            Files.deleteIfExists(getPlanPath(taskId));
+        } catch (IOException e) {
+            log.warn("备份计划删除失败: taskId={}，原因: {}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 判断计划是否适用于本次备份：源路径一致，敏感词和内容扫描配置（开关、字节上限）未变化
+     */
+    public boolean matches(BackupPlan plan, File sourceFile, String sensitivePattern) {
+        Path planSource = Paths.get(plan.getSourcePath()).toAbsolutePath().normalize();
+        Path actualSource = sourceFile.toPath().toAbsolutePath().normalize();
+        return planSource.equals(actualSource) && Objects.equals(plan.getSensitivePattern(), sensitivePattern)
+                && plan.getContentScanLimit() == contentScanService.getScanLimit();
+    }
+
+    /**
+     * 复核计划：并行比对每个条目的大小和修改时间，
+     * 变化的文件重新分类，已删除的条目移除，修改时间变化的目录重新列出以补充新增条目
+     */
+    public List<BackupPlan.Entry> revalidate(BackupPlan plan, Path sourcePath, String sensitivePattern) {
+        Classifier classifier = new Classifier(compile(sensitivePattern), contentScanService.prepareMatcher(sensitivePattern));
+        Set<String> changedDirs = ConcurrentHashMap.newKeySet();
+
+        List<BackupPlan.Entry> entries = plan.getEntries().parallelStream()
+                .map(entry -> revalidateEntry(entry, sourcePath, classifier, changedDirs))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+        if (!changedDirs.isEmpty()) {
+            Set<String> known = entries.stream().map(BackupPlan.Entry::getPath).collect(Collectors.toCollection(HashSet::new));
+            for (String dir : changedDirs) {
+                addNewEntries(sourcePath, sourcePath.resolve(dir), known, entries, classifier);
+            }
+        }
+
+        log.info("备份计划复核完成: taskId={}, 原条目数={}, 现条目数={}, 变化目录数={}",
+                plan.getTaskId(), plan.getEntries().size(), entries.size(), changedDirs.size());
+        return entries;
+    }
+
+    /**
+     * 按文件名和修改时间分类：敏感文件备份两次，冷数据备份一次，其他不备份。
+     * 分类接口、备份时的重新分类和计划复核都使用这里的规则，同一文件在阈值附近的结果一致
+     */
+    public int classify(String fileName, long lastModified, Pattern sensitivePattern, long now) {
+        if (sensitivePattern != null && sensitivePattern.matcher(fileName).find()) {
+            return 2;
+        }
+        return daysSinceModified(lastModified, now) > COLD_DATA_THRESHOLD_DAYS ? 1 : 0;
+    }
+
+    /**
+     * 修改时间到 now 之间的天数，按本地时间计算完整的天数
+     */
+    public static long daysSinceModified(long lastModified, long now) {
+        return ChronoUnit.DAYS.between(toLocalDateTime(lastModified), toLocalDateTime(now));
+    }
+
+    public static LocalDateTime toLocalDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+
+    public Pattern compile(String sensitivePattern) {
+        return sensitivePattern != null && !sensitivePattern.isEmpty() ? Pattern.compile(sensitivePattern) : null;
+    }
+
+    private BackupPlan.Entry revalidateEntry(BackupPlan.Entry entry, Path sourcePath, Classifier classifier,
+                                             Set<String> changedDirs) {
+        Path path = sourcePath.resolve(entry.getPath());
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException e) {
+            // 文件已删除或不可访问，从计划中移除
+            return null;
+        }
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (entry.isDirectory()) {
+            if (!attrs.isDirectory()) {
+                return null;
+            }
+            if (lastModified != entry.getLastModified()) {
+                changedDirs.add(entry.getPath());
+            }
+            return entry;
+        }
+        if (!attrs.isRegularFile()) {
+            return null;
+        }
+        if (attrs.size() == entry.getSize() && lastModified == entry.getLastModified()) {
+            // 未变化的敏感文件（文件名或内容命中）保持不变，其他文件仍需按当前时间复核冷数据判断
+            if (entry.getBackupCount() == 2) {
+                return entry;
+            }
+            int backupCount = classify(path.getFileName().toString(), lastModified, classifier.pattern, classifier.now);
+            if (backupCount == entry.getBackupCount()) {
+                return entry;
+            }
+            return new BackupPlan.Entry(entry.getPath(), false, entry.getSize(), lastModified, backupCount);
+        }
+        return new BackupPlan.Entry(entry.getPath(), false, attrs.size(), lastModified, classifier.classify(path, attrs));
+    }
+
+    // 列出变化的目录，把计划中没有的子项（新增目录则整棵子树）追加到计划末尾
+    private void addNewEntries(Path sourcePath, Path dir, Set<String> known, List<BackupPlan.Entry> entries,
+                               Classifier classifier) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                String relative = sourcePath.relativize(child).toString();
+                if (known.contains(relative)) {
+                    continue;
+                }
+                Files.walkFileTree(child, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) {
+                        String rel = sourcePath.relativize(d).toString();
+                        if (known.add(rel)) {
+                            entries.add(new BackupPlan.Entry(rel, true, 0, attrs.lastModifiedTime().toMillis(), 0));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        String rel = sourcePath.relativize(file).toString();
+                        if (attrs.isRegularFile() && known.add(rel)) {
+                            entries.add(new BackupPlan.Entry(rel, false, attrs.size(),
+                                    attrs.lastModifiedTime().toMillis(), classifier.classify(file, attrs)));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        log.warn("复核计划时无法访问: {}，原因: {}", file, exc.getMessage());
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.warn("复核计划时无法列出目录: {}，原因: {}", dir, e.getMessage());
+        }
+    }
+
+    private Path getPlanPath(Long taskId) {
+        return planDir.resolve("plan_" + taskId + ".bin");
+    }
+
+    // 一次复核中共用的分类参数：文件名正则、内容匹配器（未开启内容扫描时为null）
+    private class Classifier {
+        final Pattern pattern;
+        final KeywordMatcher contentMatcher;
+        final long now = System.currentTimeMillis();
+
+        Classifier(Pattern pattern, KeywordMatcher contentMatcher) {
+            this.pattern = pattern;
+            this.contentMatcher = contentMatcher;
+        }
+
+        int classify(Path file, BasicFileAttributes attrs) {
+            String fileName = file.getFileName() != null ? file.getFileName().toString() : file.toString();
+            int backupCount = BackupPlanService.this.classify(fileName, attrs.lastModifiedTime().toMillis(), pattern, now);
+            if (backupCount < 2 && contentScanService.containsSensitive(file, attrs, contentMatcher)) {
+                return 2;
+            }
+            return backupCount;
+        }
+    }
+}
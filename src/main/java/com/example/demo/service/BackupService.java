@@ -4,14 +4,16 @@ import com.example.demo.entity.BackupLog;
 import com.example.demo.entity.BackupTask;
 import com.example.demo.entity.Config;
 import com.example.demo.entity.HardDisk;
-import com.example.demo.handler.BackupWebSocketHandler;
+import com.example.demo.model.BackupLogRef;
+import com.example.demo.model.BackupPlan;
+import com.example.demo.model.TaskProgress;
+import com.example.demo.repository.BackupLogCatalog;
 import com.example.demo.repository.BackupLogRepository;
 import com.example.demo.repository.BackupTaskRepository;
 import com.example.demo.repository.ConfigRepository;
 import com.example.demo.repository.HardDiskRepository;
 import com.example.demo.util.ChecksumUtil;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.example.demo.util.KeywordMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -20,10 +22,10 @@ import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BackupService {
@@ -36,12 +38,29 @@ public class BackupService {
     @Autowired
     private ConfigRepository configRepository;
     @Autowired
-    private BackupWebSocketHandler webSocketHandler;
+    private ProgressEventHub progressEventHub;
+    @Autowired
+    private CapacityLedger capacityLedger;
+    @Autowired
+    private BackupPlanService planService;
+    @Autowired
+    private ContentScanService contentScanService;
+    @Autowired
+    private DirectoryMetadataCache metadataCache;
+    @Autowired
+    private BackupLogCatalog logCatalog;
+    @Autowired
+    private DiskCatalogService diskCatalogService;
+    @Autowired
+    private IndexService indexService;
+    @Autowired
+    private TelemetryService telemetryService;
+    @Autowired
+    private ProgressRegistry progressRegistry;
 
     private static final boolean IS_WINDOWS = System.getProperty("os.name").toLowerCase().contains("win");
     private static final long PROGRESS_PUSH_THRESHOLD = 100 * 1024 * 1024; // 每100MB推送进度
     private static final long PAUSE_CHECK_INTERVAL = 1000; // 每秒检查暂停状态
-    private static final long COLD_DATA_THRESHOLD_DAYS = 365; // 冷数据阈值：365天
 
     private long getMigrationThreshold() {
         Config thresholdConfig = configRepository.findByConfigKey("migration_threshold");
@@ -49,64 +68,119 @@ public class BackupService {
     }
 
     public void executeBackup(BackupTask task, HardDisk targetDisk) throws Exception {
+        try {
+            runBackup(task, targetDisk);
+        } finally {
+            closeCatalog(task, targetDisk);
+            // 没有提交用量就结束（取消、失败、无需备份）时释放预留
+            capacityLedger.release(task.getId());
+            telemetryService.end(task.getId(), task.getStatus());
+            progressRegistry.finish(task);
+        }
+    }
+
+    // 任务结束（包括失败和部分失败）时把剩余的目录日志压缩成段文件；取消的任务目标文件已删除，同时删除它的目录记录。
+    // 目标盘上的二进制目录只是检索加速，写入失败不影响备份结果
+    private void closeCatalog(BackupTask task, HardDisk disk) {
+        try {
+            if (progressRegistry.isCanceled(task.getId()) || "CANCELED".equals(task.getStatus())) {
+                diskCatalogService.discardTask(task.getId(), disk);
+            } else {
+                diskCatalogService.finishTask(task.getId(), disk);
+            }
+        } catch (Exception e) {
+            logError("【磁盘目录写入失败】任务ID: " + task.getId() + "，错误: " + e.getMessage());
+        }
+    }
+
+    private void reserveCapacity(BackupTask task, HardDisk disk, long requiredSpace) {
+        try {
+            capacityLedger.reserve(disk, task.getId(), requiredSpace, getMigrationThreshold());
+        } catch (IllegalStateException e) {
+            task.setStatus("FAILED");
+            progressRegistry.persist(task);
+            throw e;
+        }
+    }
+
+    private void runBackup(BackupTask task, HardDisk targetDisk) throws Exception {
         log("开始执行备份任务，源路径: " + task.getSourcePath());
         File sourceFile = new File(task.getSourcePath());
         preCheckSourceFile(sourceFile);
 
+        Config sensitiveConfig = configRepository.findByConfigKey("sensitive_keywords");
+        String sensitivePattern = sensitiveConfig != null ? sensitiveConfig.getConfigValue() : null;
+
+        // 优先复用分类阶段保存的备份计划，复核后无需重新遍历和分类
+        List<BackupPlan.Entry> planEntries = null;
+        BackupPlan plan = planService.load(task.getId());
+        if (plan != null) {
+            if (planService.matches(plan, sourceFile, sensitivePattern)) {
+                planEntries = planService.revalidate(plan, sourceFile.toPath(), sensitivePattern);
+                log("【复用备份计划】任务ID: " + task.getId() + "，条目数: " + planEntries.size());
+            } else {
+                log("【备份计划失效】源路径、敏感词或内容扫描配置已变化，重新分类，任务ID: " + task.getId());
+            }
+        }
+
         task.setStatus("RUNNING");
         task.setPaused(false);
         task.setTargetDiskId(targetDisk.getDiskId());
-        long totalSize = sourceFile.isDirectory() ? calculateFolderSize(sourceFile) : sourceFile.length();
+        long totalSize;
+        if (planEntries != null) {
+            totalSize = planEntries.stream().mapToLong(BackupPlan.Entry::getSize).sum();
+        } else {
+            totalSize = sourceFile.isDirectory() ? calculateFolderSize(sourceFile) : sourceFile.length();
+        }
         task.setTotalSize(totalSize); // 初始总大小，稍后根据分类调整
         task.setCompletedSize(0L);
-        taskRepository.save(task);
-
-        Config sensitiveConfig = configRepository.findByConfigKey("sensitive_keywords");
-        String sensitivePattern = sensitiveConfig != null ? sensitiveConfig.getConfigValue() : null;
+        progressRegistry.track(task);
+        telemetryService.begin(task.getId(), task.getSourcePath(), targetDisk, totalSize);
 
         List<String> failedFiles = new ArrayList<>();
         long actualUsedSpace = 0;
 
         if (sourceFile.isDirectory()) {
-            actualUsedSpace = backupFolder(sourceFile, task, targetDisk, sensitivePattern, failedFiles);
+            actualUsedSpace = backupFolder(sourceFile, task, targetDisk, sensitivePattern, failedFiles, planEntries);
         } else {
-            // 对单个文件进行分类
-            int backupCount = classifyFile(sourceFile, sensitivePattern);
+            // 对单个文件进行分类（计划中已有分类结果时直接使用）
+            int backupCount = planEntries != null && planEntries.size() == 1
+                    ? planEntries.get(0).getBackupCount()
+                    : classifyFile(sourceFile.toPath(), Files.readAttributes(sourceFile.toPath(), BasicFileAttributes.class),
+                    planService.compile(sensitivePattern), contentScanService.prepareMatcher(sensitivePattern),
+                    System.currentTimeMillis());
             task.setBackupCount(backupCount);
             task.setTotalSize(totalSize * backupCount);
-            taskRepository.save(task);
+            progressRegistry.persist(task);
+            telemetryService.updateTotal(task.getId(), task.getTotalSize());
 
             if (backupCount == 0) {
                 log("文件无需备份: " + sourceFile.getName());
                 task.setStatus("COMPLETED");
                 task.setCompletedSize(0L);
-                taskRepository.save(task);
+                progressRegistry.persist(task);
+                planService.delete(task.getId());
                 return;
             }
 
-            // 检查目标磁盘空间
-            long requiredSpace = task.getTotalSize();
-            if (targetDisk.getAvailableCapacity() < requiredSpace || targetDisk.getAvailableCapacity() < getMigrationThreshold()) {
-                task.setStatus("FAILED");
-                taskRepository.save(task);
-                throw new IllegalStateException("目标磁盘容量不足");
-            }
+            // 在容量台账中预留目标磁盘空间
+            reserveCapacity(task, targetDisk, task.getTotalSize());
 
             String checksum = ChecksumUtil.calculateSHA256(sourceFile);
-            if (backupCount == 1 && logRepository.findByChecksum(checksum) != null) {
+            if (backupCount == 1 && logRepository.existsByChecksum(checksum)) {
                 log("文件已备份，跳过: " + sourceFile.getName());
                 task.setStatus("COMPLETED");
                 task.setCompletedSize(totalSize);
-                taskRepository.save(task);
+                progressRegistry.persist(task);
+                planService.delete(task.getId());
                 return;
             }
 
             // 执行文件备份
             try {
                 for (int i = 1; i <= backupCount; i++) {
-                    if (task.isPaused()) {
+                    if (progressRegistry.isPaused(task.getId())) {
                         handlePause(task);
-                        return;
                     }
                     String targetPath = String.format("%s%s%s%s",
                             targetDisk.getMountPoint(),
@@ -115,98 +189,106 @@ public class BackupService {
                             i > 1 ? "_copy" + i : "");
                     actualUsedSpace += backupFile(sourceFile, targetPath, task, targetDisk, checksum, i);
                     task.setCompletedSize(task.getCompletedSize() + sourceFile.length());
-                    taskRepository.save(task);
+                    progressRegistry.checkpoint(task);
                 }
             } catch (Exception e) {
+                if (progressRegistry.isCanceled(task.getId())) {
+                    throw e;
+                }
                 failedFiles.add(sourceFile.getAbsolutePath() + ": " + e.getMessage());
             }
         }
 
+        // 已写入的部分即使任务部分失败也占用了空间，提交实际用量
+        capacityLedger.commit(task.getId(), actualUsedSpace);
+
         if (!failedFiles.isEmpty()) {
             task.setStatus("PARTIALLY_FAILED");
-            taskRepository.save(task);
+            progressRegistry.persist(task);
             throw new Exception("部分文件备份失败: " + String.join(", ", failedFiles));
         }
 
-        if (actualUsedSpace > 0) {
-            targetDisk.setAvailableCapacity(targetDisk.getAvailableCapacity() - actualUsedSpace);
-            diskRepository.save(targetDisk);
-            generateIndex(task.getId());
-        }
-
         task.setStatus("COMPLETED");
         task.setCompletedSize(task.getTotalSize());
-        taskRepository.save(task);
+        progressRegistry.persist(task);
+        planService.delete(task.getId());
+
+        // 索引文件在任务完成后异步生成
+        if (actualUsedSpace > 0) {
+            indexService.submit(task.getId());
+        }
     }
 
-    private int classifyFile(File file, String sensitivePattern) throws IOException {
-        boolean isSensitive = sensitivePattern != null && Pattern.compile(sensitivePattern).matcher(file.getName()).find();
-        if (isSensitive) {
-            log("文件包含敏感词: " + file.getName());
+    // 文件名和修改时间按 BackupPlanService.classify 的规则分类（与分类接口、计划复核一致），文件名未命中时再扫描内容
+    private int classifyFile(Path file, BasicFileAttributes attrs, Pattern sensitivePattern, KeywordMatcher contentMatcher,
+                             long now) {
+        String fileName = file.getFileName().toString();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        int backupCount = planService.classify(fileName, lastModified, sensitivePattern, now);
+        if (backupCount == 2) {
+            log("文件包含敏感词: " + fileName);
             return 2; // 敏感文件备份两次
         }
-
-        BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
-        LocalDateTime lastModified = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), java.time.ZoneId.systemDefault());
-        long daysSinceModified = ChronoUnit.DAYS.between(lastModified, LocalDateTime.now());
-        if (daysSinceModified > COLD_DATA_THRESHOLD_DAYS) {
-            log("文件为冷数据: " + file.getName() + "，上次修改于: " + lastModified);
+        if (contentMatcher != null && contentScanService.containsSensitive(file, attrs, contentMatcher)) {
+            log("文件内容包含敏感词: " + fileName);
+            return 2;
+        }
+        if (backupCount == 1) {
+            log("文件为冷数据: " + fileName + "，上次修改于: " + BackupPlanService.toLocalDateTime(lastModified));
             return 1; // 冷数据备份一次
         }
 
-        log("文件无需备份: " + file.getName());
+        log("文件无需备份: " + fileName);
         return 0; // 其他情况不备份
     }
 
-    private long backupFolder(File sourceFolder, BackupTask task, HardDisk disk, String sensitivePattern, List<String> failedFiles) throws Exception {
+    private long backupFolder(File sourceFolder, BackupTask task, HardDisk disk, String sensitivePattern,
+                              List<String> failedFiles, List<BackupPlan.Entry> planEntries) throws Exception {
         Path sourcePath = sourceFolder.toPath();
         Path targetBasePath = Paths.get(disk.getMountPoint(), sourceFolder.getName());
         log("【文件夹备份】源文件夹: " + sourcePath.toAbsolutePath() + "，目标根路径: " + targetBasePath.toAbsolutePath());
 
         long actualUsedSpace = 0;
         Files.createDirectories(targetBasePath);
-        List<Path> paths = Files.walk(sourcePath).collect(Collectors.toList());
+        List<BackupPlan.Entry> entries = planEntries != null ? planEntries : classifyFolder(sourcePath, sensitivePattern);
 
         // 计算总备份大小并设置备份次数
         long totalSize = 0;
-        Map<Path, Integer> fileBackupCounts = new HashMap<>();
-        for (Path source : paths) {
-            if (Files.isRegularFile(source)) {
-                int backupCount = classifyFile(source.toFile(), sensitivePattern);
-                fileBackupCounts.put(source, backupCount);
-                totalSize += source.toFile().length() * backupCount;
+        int totalBackupCount = 0;
+        for (BackupPlan.Entry entry : entries) {
+            if (!entry.isDirectory()) {
+                totalSize += entry.getSize() * entry.getBackupCount();
+                totalBackupCount += entry.getBackupCount();
             }
         }
         task.setTotalSize(totalSize);
-        task.setBackupCount(fileBackupCounts.values().stream().mapToInt(Integer::intValue).sum());
-        taskRepository.save(task);
+        task.setBackupCount(totalBackupCount);
+        progressRegistry.persist(task);
+        telemetryService.updateTotal(task.getId(), totalSize);
 
-        // 检查目标磁盘空间
-        if (disk.getAvailableCapacity() < totalSize || disk.getAvailableCapacity() < getMigrationThreshold()) {
-            task.setStatus("FAILED");
-            taskRepository.save(task);
-            throw new IllegalStateException("目标磁盘容量不足");
-        }
+        // 在容量台账中预留目标磁盘空间
+        reserveCapacity(task, disk, totalSize);
 
         // 备份文件夹内容
-        for (Path source : paths) {
-            if (task.isPaused()) {
+        for (BackupPlan.Entry entry : entries) {
+            checkCanceled(task);
+            if (progressRegistry.isPaused(task.getId())) {
                 handlePause(task);
-                return actualUsedSpace;
             }
+            Path source = sourcePath.resolve(entry.getPath());
             try {
-                Path target = targetBasePath.resolve(sourcePath.relativize(source));
-                if (Files.isDirectory(source)) {
+                Path target = targetBasePath.resolve(entry.getPath());
+                if (entry.isDirectory()) {
                     Files.createDirectories(target);
                     log("【文件夹创建】已创建目录: " + target.toAbsolutePath());
                 } else {
-                    int backupCount = fileBackupCounts.getOrDefault(source, 0);
+                    int backupCount = entry.getBackupCount();
                     if (backupCount == 0) {
                         log("【跳过备份】文件: " + source.getFileName());
                         continue;
                     }
                     String fileChecksum = ChecksumUtil.calculateSHA256(source.toFile());
-                    if (backupCount == 1 && logRepository.findByChecksum(fileChecksum) != null) {
+                    if (backupCount == 1 && logRepository.existsByChecksum(fileChecksum)) {
                         log("【去重跳过】文件已备份，跳过: " + source.getFileName() + "，校验和: " + fileChecksum);
                         continue;
                     }
@@ -214,11 +296,15 @@ public class BackupService {
                         String targetPath = backupCount > 1 && i > 1 ?
                                 target.toString() + "_copy" + i : target.toString();
                         actualUsedSpace += backupFile(source.toFile(), targetPath, task, disk, fileChecksum, i);
-                        task.setCompletedSize(task.getCompletedSize() + source.toFile().length());
-                        taskRepository.save(task);
+                        task.setCompletedSize(task.getCompletedSize() + entry.getSize());
+                        progressRegistry.checkpoint(task);
                     }
                 }
             } catch (Exception e) {
+                // 取消时结束整个任务，不再复制剩余的文件
+                if (progressRegistry.isCanceled(task.getId())) {
+                    throw e;
+                }
                 String errorMsg = "文件夹备份失败，文件: " + source.toAbsolutePath() + "，错误: " + e.getMessage();
                 logError("【文件夹备份失败】" + errorMsg);
                 failedFiles.add(errorMsg);
@@ -228,6 +314,36 @@ public class BackupService {
         return actualUsedSpace;
     }
 
+    // 无备份计划时遍历目录并逐个分类，生成与计划相同结构的条目列表
+    private List<BackupPlan.Entry> classifyFolder(Path sourcePath, String sensitivePattern) throws IOException {
+        List<BackupPlan.Entry> entries = new ArrayList<>();
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(sourcePath)) {
+            paths = walk.collect(Collectors.toList());
+        }
+        Pattern pattern = planService.compile(sensitivePattern);
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(sensitivePattern);
+        long now = System.currentTimeMillis();
+        for (Path source : paths) {
+            String relative = sourcePath.relativize(source).toString();
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(source, BasicFileAttributes.class);
+            } catch (IOException e) {
+                continue;   // 遍历后被删除或无法访问
+            }
+            // 记录实际的修改时间，与分类接口生成的计划条目相同
+            long lastModified = attrs.lastModifiedTime().toMillis();
+            if (attrs.isDirectory()) {
+                entries.add(new BackupPlan.Entry(relative, true, 0, lastModified, 0));
+            } else if (attrs.isRegularFile()) {
+                int backupCount = classifyFile(source, attrs, pattern, contentMatcher, now);
+                entries.add(new BackupPlan.Entry(relative, false, attrs.size(), lastModified, backupCount));
+            }
+        }
+        return entries;
+    }
+
     private long backupFile(File sourceFile, String targetPath, BackupTask task, HardDisk disk, String checksum, int copyIndex) throws Exception {
         if (sourceFile.isDirectory()) {
             throw new IllegalArgumentException("backupFile 不支持文件夹: " + sourceFile.getAbsolutePath());
@@ -242,7 +358,7 @@ public class BackupService {
         log.setStatus("RUNNING");
         log.setTransferOffset(0L);
         log.setBackupTime(LocalDateTime.now().toString());
-        logRepository.save(log);
+        logCatalog.insert(log);
 
         Path targetDir = Paths.get(targetPath).getParent();
         Files.createDirectories(targetDir);
@@ -256,22 +372,28 @@ public class BackupService {
             byte[] buffer = new byte[8192];
             int bytesRead;
             while ((bytesRead = source.read(buffer)) != -1) {
-                if (task.isPaused()) {
+                checkCanceled(task);
+                // 在断点处等待继续，继续后从同一位置接着复制；等待期间取消时按中断处理
+                if (progressRegistry.isPaused(task.getId())) {
                     log.setStatus("PAUSED");
                     log.setBackupTime(LocalDateTime.now().toString());
-                    logRepository.save(log);
-                    webSocketHandler.sendBreakpoint(log);
+                    logCatalog.updateState(log);
+                    progressEventHub.publishBreakpoint(log);
                     log("【备份暂停】文件: " + targetPath + "，断点: " + log.getTransferOffset());
-                    return totalRead;
+                    handlePause(task);
+                    log.setStatus("RUNNING");
+                    logCatalog.updateState(log);
+                    progressEventHub.publishBreakpoint(log);
                 }
 
                 target.write(buffer, 0, bytesRead);
                 totalRead += bytesRead;
+                telemetryService.addBytes(task.getId(), bytesRead);
                 log.setTransferOffset(log.getTransferOffset() + bytesRead);
 
                 if (log.getTransferOffset() - lastPushedOffset >= PROGRESS_PUSH_THRESHOLD) {
-                    logRepository.save(log);
-                    webSocketHandler.sendBreakpoint(log);
+                    logCatalog.updateTransferOffset(log.getId(), log.getTransferOffset());
+                    progressEventHub.publishBreakpoint(log);
                     lastPushedOffset = log.getTransferOffset();
                     log("【备份进度】日志ID: " + log.getId() + "，已传输: " + totalRead / (1024 * 1024) + " MB");
                 }
@@ -279,14 +401,14 @@ public class BackupService {
                 Thread.sleep(10); // 模拟暂停检查
             }
 
-            logRepository.save(log);
-            webSocketHandler.sendBreakpoint(log);
+            logCatalog.updateState(log);
+            progressEventHub.publishBreakpoint(log);
 
             String targetChecksum = ChecksumUtil.calculateSHA256(new File(targetPath));
             if (!checksum.equals(targetChecksum)) {
                 log.setStatus("FAILED");
-                logRepository.save(log);
-                webSocketHandler.sendBreakpoint(log);
+                logCatalog.updateState(log);
+                progressEventHub.publishBreakpoint(log);
                 throw new Exception("校验和不匹配");
             }
 
@@ -302,66 +424,132 @@ public class BackupService {
             }
 
             log.setStatus("SUCCESS");
-            logRepository.save(log);
-            webSocketHandler.sendBreakpoint(log);
+            logCatalog.updateState(log);
+            progressEventHub.publishBreakpoint(log);
+            telemetryService.fileCompleted(task.getId());
+            diskCatalogService.append(task.getId(), disk, log, sourceFile.length());
             return totalRead;
         } catch (Exception e) {
-            log.setStatus("INTERRUPTED");
+            if (progressRegistry.isCanceled(task.getId())) {
+                // 取消请求删除目标文件时这个文件可能还在写入，在这里删除未完成的副本
+                try {
+                    Files.deleteIfExists(Paths.get(targetPath));
+                } catch (IOException deleteError) {
+                    logError("【文件删除失败】目标文件: " + targetPath + "，错误: " + deleteError.getMessage());
+                }
+                log.setStatus("CANCELED");
+            } else {
+                log.setStatus("INTERRUPTED");
+            }
             log.setBackupTime(LocalDateTime.now().toString());
-            logRepository.save(log);
-            webSocketHandler.sendBreakpoint(log);
+            logCatalog.updateState(log);
+            progressEventHub.publishBreakpoint(log);
             throw e;
         }
     }
 
     public float getProgress(Long taskId) {
-        BackupTask task = taskRepository.findById(taskId)
-                .orElseThrow(() -> new IllegalArgumentException("任务不存在: " + taskId));
-        if (task.getTotalSize() == 0) return 0;
-        return (float) task.getCompletedSize() / task.getTotalSize() * 100;
+        return (float) progressRegistry.get(taskId).getProgress();
+    }
+
+    public TaskProgress getTaskProgress(Long taskId) {
+        return progressRegistry.get(taskId);
+    }
+
+    public List<TaskProgress> getTaskProgress(List<Long> taskIds) {
+        return progressRegistry.getAll(taskIds);
     }
 
+    // 暂停标志由暂停/继续请求写入进度登记表，这里每秒检查一次，不查询数据库
     private void handlePause(BackupTask task) throws Exception {
         task.setStatus("PAUSED");
-        taskRepository.save(task);
+        progressRegistry.persist(task);
         log("【任务暂停】任务ID: " + task.getId());
-        while (task.isPaused()) {
+        while (progressRegistry.isPaused(task.getId()) && !progressRegistry.isCanceled(task.getId())) {
             Thread.sleep(PAUSE_CHECK_INTERVAL);
-            task = taskRepository.findById(task.getId()).orElseThrow(() -> new IllegalStateException("任务不存在"));
-            if (task.getStatus().equals("CANCELED")) {
-                cancelBackup(task);
-                throw new Exception("备份任务已取消");
-            }
         }
+        checkCanceled(task);
         task.setStatus("RUNNING");
-        taskRepository.save(task);
+        progressRegistry.persist(task);
         log("【任务继续】任务ID: " + task.getId());
     }
 
+    // 取消请求只写入进度登记表，执行线程在文件之间和复制循环中检查
+    private void checkCanceled(BackupTask task) throws Exception {
+        if (progressRegistry.isCanceled(task.getId())) {
+            task.setStatus("CANCELED");
+            throw new Exception("备份任务已取消");
+        }
+    }
+
     public void cancelBackup(BackupTask task) throws Exception {
+        progressRegistry.markCanceled(task.getId());
         task.setStatus("CANCELED");
         task.setPaused(false);
         taskRepository.save(task);
         log("【任务取消】任务ID: " + task.getId());
 
-        List<BackupLog> logs = logRepository.findAllByTaskId(task.getId());
-        for (BackupLog log : logs) {
-            try {
-                File targetFile = new File(log.getTargetPath());
-                if (targetFile.exists()) {
-                    Files.deleteIfExists(targetFile.toPath());
-                    log("【文件删除】已删除目标文件: " + log.getTargetPath());
+        // 按id分页读取轻量投影（只需要定位目标文件），每页的状态更新合并为一条语句，内存占用不随任务大小增长
+        long afterId = 0;
+        List<BackupLogRef> logs;
+        while (!(logs = logCatalog.pageRefsByTask(task.getId(), afterId, BackupLogCatalog.DEFAULT_PAGE_SIZE)).isEmpty()) {
+            List<Long> canceledIds = new ArrayList<>(logs.size());
+            for (BackupLogRef ref : logs) {
+                try {
+                    File targetFile = new File(ref.getTargetPath());
+                    if (targetFile.exists()) {
+                        Files.deleteIfExists(targetFile.toPath());
+                        log("【文件删除】已删除目标文件: " + ref.getTargetPath());
+                    }
+                    canceledIds.add(ref.getId());
+                    progressEventHub.publishBreakpoint(canceledBreakpoint(ref));
+                } catch (Exception e) {
+                    logError("【文件删除失败】目标文件: " + ref.getTargetPath() + "，错误: " + e.getMessage());
+                }
+            }
+            long lastId = logs.get(logs.size() - 1).getId();
+            if (canceledIds.size() == logs.size()) {
+                logCatalog.updateStatusInRange(task.getId(), afterId, lastId, "CANCELED");
+            } else if (!canceledIds.isEmpty()) {
+                logCatalog.updateStatus(canceledIds, "CANCELED");
+            }
+            afterId = lastId;
+        }
+
+        // 没有执行线程的任务（服务重启后未恢复的暂停任务等）在这里删除目录记录，执行中的任务由执行线程结束时删除
+        if (!progressRegistry.isLive(task.getId()) && task.getTargetDiskId() != null) {
+            HardDisk disk = diskRepository.findByDiskId(task.getTargetDiskId());
+            if (disk != null) {
+                try {
+                    diskCatalogService.discardTask(task.getId(), disk);
+                } catch (IOException e) {
+                    logError("【磁盘目录删除失败】任务ID: " + task.getId() + "，错误: " + e.getMessage());
                 }
-                log.setStatus("CANCELED");
-                logRepository.save(log);
-                webSocketHandler.sendBreakpoint(log);
-            } catch (Exception e) {
-                logError("【文件删除失败】目标文件: " + log.getTargetPath() + "，错误: " + e.getMessage());
             }
         }
     }
 
+    // 取消时推送的断点只带定位文件所需的字段
+    private BackupLog canceledBreakpoint(BackupLogRef ref) {
+        BackupLog breakpoint = new BackupLog();
+        breakpoint.setId(ref.getId());
+        breakpoint.setTaskId(ref.getTaskId());
+        breakpoint.setDiskId(ref.getDiskId());
+        breakpoint.setFilename(ref.getFilename());
+        breakpoint.setTargetPath(ref.getTargetPath());
+        breakpoint.setStatus("CANCELED");
+        return breakpoint;
+    }
+
     public void pauseBackup(Long taskId) throws Exception {
+        // 本进程中正在执行的任务只修改登记表，执行线程在下一次检查时暂停并写入数据库
+        if (progressRegistry.isLive(taskId)) {
+            if (progressRegistry.isPaused(taskId) || !progressRegistry.setPaused(taskId, true)) {
+                throw new IllegalStateException("任务不在运行状态，无法暂停");
+            }
+            log("【暂停请求】任务ID: " + taskId);
+            return;
+        }
         BackupTask task = taskRepository.findById(taskId)
                 .orElseThrow(() -> new IllegalArgumentException("任务不存在: " + taskId));
         if (!task.getStatus().equals("RUNNING")) {
@@ -374,6 +562,14 @@ public class BackupService {
     }
 
     public void resumeBackup(Long taskId) throws Exception {
+        // 执行线程仍在等待时直接唤醒，不再启动新线程
+        if (progressRegistry.isLive(taskId)) {
+            if (!progressRegistry.isPaused(taskId) || !progressRegistry.setPaused(taskId, false)) {
+                throw new IllegalStateException("任务不在暂停状态，无法继续");
+            }
+            log("【继续请求】任务ID: " + taskId);
+            return;
+        }
         BackupTask task = taskRepository.findById(taskId)
                 .orElseThrow(() -> new IllegalArgumentException("任务不存在: " + taskId));
         if (!task.getStatus().equals("PAUSED")) {
@@ -399,16 +595,13 @@ public class BackupService {
     }
 
     private long calculateFolderSize(File folder) {
-        long size = 0;
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                size += file.isDirectory() ? calculateFolderSize(file) : file.length();
-            }
-        } else {
+        // 使用目录元数据缓存，同一目录重复预检时无需再次遍历
+        try {
+            return metadataCache.aggregate(folder.toPath()).getTotalSize();
+        } catch (IOException e) {
             logError("【文件夹大小计算失败】无法列出目录内容: " + folder.getAbsolutePath());
+            return 0;
         }
-        return size;
     }
 
     private void preCheckSourceFile(File sourceFile) throws Exception {
@@ -423,62 +616,6 @@ public class BackupService {
         }
     }
 
-    private void generateIndex(Long taskId) throws Exception {
-        Iterable<BackupLog> logs = logRepository.findAllByTaskId(taskId);
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Backup Index");
-
-        Row header = sheet.createRow(0);
-        header.createCell(0).setCellValue("ID");
-        header.createCell(1).setCellValue("Filename");
-        header.createCell(2).setCellValue("Disk ID");
-        header.createCell(3).setCellValue("Target Path");
-        header.createCell(4).setCellValue("Backup Time");
-        header.createCell(5).setCellValue("Checksum");
-        header.createCell(6).setCellValue("Status");
-        header.createCell(7).setCellValue("Transfer Offset");
-
-        int rowNum = 1;
-        for (BackupLog log : logs) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(log.getId());
-            row.createCell(1).setCellValue(log.getFilename());
-            row.createCell(2).setCellValue(log.getDiskId());
-            row.createCell(3).setCellValue(log.getTargetPath());
-            row.createCell(4).setCellValue(log.getBackupTime());
-            row.createCell(5).setCellValue(log.getChecksum());
-            row.createCell(6).setCellValue(log.getStatus());
-            row.createCell(7).setCellValue(log.getTransferOffset() != null ? log.getTransferOffset() : 0);
-        }
-
-        String userHome = System.getProperty("user.home");
-        String indexDir = userHome + File.separator + "backup" + File.separator + "indexes";
-        Path indexDirPath = Paths.get(indexDir);
-        Files.createDirectories(indexDirPath);
-        String indexPath = indexDir + File.separator + "index_" + taskId + ".xlsx";
-
-        try (FileOutputStream fos = new FileOutputStream(indexPath)) {
-            workbook.write(fos);
-        }
-        workbook.close();
-        log("【索引生成】已保存索引文件到: " + indexPath);
-
-        for (BackupLog log : logs) {
-            log.setIndexPath(indexPath);
-            logRepository.save(log);
-        }
-
-        if (logs.iterator().hasNext()) {
-            Path targetIndexPath = Paths.get(logs.iterator().next().getTargetPath())
-                    .getParent()
-                    .resolve("indexes")
-                    .resolve("index_" + taskId + ".xlsx");
-            Files.createDirectories(targetIndexPath.getParent());
-            Files.copy(Paths.get(indexPath), targetIndexPath, StandardCopyOption.REPLACE_EXISTING);
-            log("【索引同步】已同步索引到目标盘: " + targetIndexPath);
-        }
-    }
-
     private void pushFailureBreakpoint(File sourceFile, BackupTask task, HardDisk disk, String errorMsg) {
         try {
             BackupLog failureLog = new BackupLog();
@@ -491,7 +628,7 @@ public class BackupService {
             failureLog.setBackupTime(LocalDateTime.now().toString());
             failureLog.setChecksum("");
 
-            webSocketHandler.sendBreakpoint(failureLog);
+            progressEventHub.publishBreakpoint(failureLog);
             log("【失败断点推送】已推送失败信息: " + sourceFile.getName() + "，错误: " + errorMsg);
         } catch (Exception e) {
             logError("【失败断点推送失败】" + e.getMessage());
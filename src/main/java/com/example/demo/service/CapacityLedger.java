@@ -0,0 +1,144 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.HardDisk;
+import com.example.demo.model.DiskCapacity;
+import com.example.demo.util.SqliteWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 磁盘容量台账：任务开始写入前按计划大小在 disk_reservation 中预留容量，完成时提交实际用量或释放预留。
+ * 预留在写线程的事务中用一条条件 INSERT 完成（可用容量减去其他任务的预留后仍足够才插入），
+ * 同一磁盘上并发的任务不会都通过检查；提交时用 UPDATE ... SET available_capacity = available_capacity - ?
+ * 原子扣减，不再读出整条磁盘记录再写回，避免互相覆盖。
+ * <p>
+ * 本地磁盘同时按挂载点文件系统的实时可用空间检查（取数据库记录和实时值中较小的一个）。
+ * 实时值已经包含运行中任务写入的部分，与其预留重复计算，结果偏保守。
+ * <p>
+ * 磁盘迁移没有任务ID，以 migrationKey（源磁盘ID的相反数）作为预留的键，与任务ID不会冲突
+ */
+@Slf4j
+@Service
+public class CapacityLedger {
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private SqliteWriter writer;
+
+    private static final String ACTIVE = "ACTIVE";
+
+    // 上次运行中未结束的预留对应的任务已经不在执行，启动后第一次预留前释放
+    private final long startedAt = System.currentTimeMillis();
+    private final AtomicBoolean staleReleased = new AtomicBoolean();
+
+    /**
+     * 为任务预留容量：预留后剩余的可用容量不低于 requiredBytes，且当前可用容量不低于迁移阈值，否则抛出异常。
+     * 同一任务之前未结束的预留先释放（任务重新执行）
+     */
+    public void reserve(HardDisk disk, Long taskId, long requiredBytes, long threshold) {
+        Long usableSpace = usableSpace(disk);
+        long limit = usableSpace != null ? usableSpace : Long.MAX_VALUE;
+        long now = System.currentTimeMillis();
+        boolean releaseStale = staleReleased.compareAndSet(false, true);
+        int inserted = writer.execute(jdbc -> {
+            if (releaseStale) {
+                int stale = jdbc.update("UPDATE disk_reservation SET status = 'RELEASED', updated_at = ? "
+                        + "WHERE status = 'ACTIVE' AND created_at < ?", now, startedAt);
+                if (stale > 0) {
+                    log.info("释放上次运行遗留的容量预留 {} 条", stale);
+                }
+            }
+            jdbc.update("UPDATE disk_reservation SET status = 'RELEASED', updated_at = ? WHERE task_id = ? AND status = 'ACTIVE'",
+                    now, taskId);
+            return jdbc.update("INSERT INTO disk_reservation (disk_id, task_id, reserved_bytes, used_bytes, status, created_at, updated_at) "
+                            + "SELECT d.id, ?, ?, 0, 'ACTIVE', ?, ? FROM hard_disk d WHERE d.id = ? "
+                            + "AND MIN(d.available_capacity, ?) - (SELECT COALESCE(SUM(r.reserved_bytes), 0) FROM disk_reservation r "
+                            + "WHERE r.disk_id = d.id AND r.status = 'ACTIVE') >= MAX(?, ?)",
+                    taskId, requiredBytes, now, now, disk.getId(), limit, requiredBytes, threshold);
+        });
+        if (inserted == 0) {
+            DiskCapacity capacity = getCapacity(disk);
+            log.warn("目标磁盘容量不足: 磁盘={}，需要={}，可预留={}，已预留={}，迁移阈值={}",
+                    disk.getDiskId(), requiredBytes, capacity.getFreeCapacity(), capacity.getReservedBytes(), threshold);
+            throw new IllegalStateException("目标磁盘容量不足");
+        }
+        log.info("预留磁盘容量: 任务ID={}，磁盘={}，字节数={}", taskId, disk.getDiskId(), requiredBytes);
+    }
+
+    /**
+     * 提交任务的实际用量：结束预留并从磁盘可用容量中原子扣减
+     */
+    public void commit(Long taskId, long usedBytes) {
+        long now = System.currentTimeMillis();
+        writer.execute(jdbc -> {
+            Long reservationId = jdbc.query("SELECT id FROM disk_reservation WHERE task_id = ? AND status = 'ACTIVE' "
+                    + "ORDER BY id DESC LIMIT 1", rs -> rs.next() ? rs.getLong(1) : null, taskId);
+            if (reservationId == null) {
+                return 0;
+            }
+            jdbc.update("UPDATE disk_reservation SET status = 'COMMITTED', used_bytes = ?, updated_at = ? WHERE id = ?",
+                    usedBytes, now, reservationId);
+            return jdbc.update("UPDATE hard_disk SET available_capacity = MAX(0, available_capacity - ?) "
+                    + "WHERE id = (SELECT disk_id FROM disk_reservation WHERE id = ?)", usedBytes, reservationId);
+        });
+    }
+
+    /**
+     * 释放任务未提交的预留（失败、取消或没有写入），已提交时不做处理
+     */
+    public void release(Long taskId) {
+        long now = System.currentTimeMillis();
+        writer.execute(jdbc -> jdbc.update("UPDATE disk_reservation SET status = 'RELEASED', updated_at = ? "
+                + "WHERE task_id = ? AND status = 'ACTIVE'", now, taskId));
+    }
+
+    public static long migrationKey(Long sourceDiskId) {
+        return -sourceDiskId;
+    }
+
+    public DiskCapacity getCapacity(HardDisk disk) {
+        Map<String, Object> row = readJdbcTemplate.queryForMap("SELECT COALESCE(SUM(reserved_bytes), 0) AS reserved, "
+                + "COUNT(*) AS reservations FROM disk_reservation WHERE disk_id = ? AND status = ?", disk.getId(), ACTIVE);
+        Long available = readJdbcTemplate.queryForObject("SELECT available_capacity FROM hard_disk WHERE id = ?",
+                Long.class, disk.getId());
+        DiskCapacity capacity = new DiskCapacity();
+        capacity.setDiskId(disk.getId());
+        capacity.setAvailableCapacity(available != null ? available : 0);
+        capacity.setUsableSpace(usableSpace(disk));
+        capacity.setReservedBytes(((Number) row.get("reserved")).longValue());
+        capacity.setActiveReservations(((Number) row.get("reservations")).intValue());
+        long limit = capacity.getUsableSpace() != null
+                ? Math.min(capacity.getAvailableCapacity(), capacity.getUsableSpace())
+                : capacity.getAvailableCapacity();
+        capacity.setFreeCapacity(limit - capacity.getReservedBytes());
+        return capacity;
+    }
+
+    // 本地磁盘挂载点的实时可用空间；远程磁盘或挂载点不可读时为空，只按数据库记录检查
+    private static Long usableSpace(HardDisk disk) {
+        if ("SMB".equals(disk.getProtocol()) || disk.getMountPoint() == null) {
+            return null;
+        }
+        Path mountPoint = Paths.get(disk.getMountPoint());
+        if (!Files.isDirectory(mountPoint)) {
+            return null;
+        }
+        try {
+            return Files.getFileStore(mountPoint).getUsableSpace();
+        } catch (IOException e) {
+            log.warn("读取挂载点可用空间失败: {}，{}", disk.getMountPoint(), e.getMessage());
+            return null;
+        }
+    }
+}
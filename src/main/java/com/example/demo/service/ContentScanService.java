@@ -0,0 +1,203 @@
+package com.example.demo.service;
+
+import com.example.demo.controller.ConfigController;
+import com.example.demo.entity.Config;
+import com.example.demo.repository.ConfigRepository;
+import com.example.demo.util.KeywordMatcher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件内容敏感词扫描（可选，由 config 表的 content_scan_enabled 开启）
+ * 小文件用直接缓冲区读取，大文件分段内存映射，按字节上限截断；二进制文件跳过；
+ * 结果按（路径、大小、修改时间、关键词、扫描上限）缓存，未变化的文件不会重复扫描
+ */
+@Slf4j
+@Service
+public class ContentScanService {
+    @Autowired
+    private ConfigRepository configRepository;
+
+    private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;      // 每个文件默认最多扫描4MB
+    private static final int DIRECT_READ_THRESHOLD = 256 * 1024;         // 小于256KB直接读取，不做映射
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;            // 大文件每次映射64MB
+    private static final int BINARY_PROBE_BYTES = 8192;                  // 检测前8KB是否含有NUL字节
+    private static final int CACHE_CAPACITY = 200_000;
+    private static final Set<String> BINARY_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "zip", "rar", "7z", "gz", "tgz", "bz2", "xz", "iso", "img", "exe", "dll", "so", "bin", "class", "jar",
+            "jpg", "jpeg", "png", "gif", "bmp", "ico", "webp", "mp3", "wav", "flac", "mp4", "mkv", "avi", "mov", "wmv"));
+
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(DIRECT_READ_THRESHOLD));
+
+    // LRU缓存：key为路径，value记录扫描时的文件大小、修改时间和关键词
+    private final Map<String, ScanResult> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, ScanResult>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ScanResult> eldest) {
+                    return size() > CACHE_CAPACITY;
+                }
+            });
+
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong scannedBytes = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * 内容扫描开启时返回构建好的匹配器（带有当前配置的扫描字节上限），否则返回null；调用方在一次分类中复用同一个匹配器
+     */
+    public KeywordMatcher prepareMatcher(String sensitivePattern) {
+        if (!isEnabled()) {
+            return null;
+        }
+        KeywordMatcher matcher = KeywordMatcher.fromPattern(sensitivePattern);
+        return matcher != null ? matcher.withScanLimit(getMaxBytes()) : null;
+    }
+
+    /**
+     * 当前配置下的内容扫描上限，未开启时为0；记录在备份计划中，开关或上限变化后计划失效
+     */
+    public long getScanLimit() {
+        return isEnabled() ? getMaxBytes() : 0;
+    }
+
+    public boolean isEnabled() {
+        Config config = configRepository.findByConfigKey(ConfigController.CONTENT_SCAN_ENABLED);
+        return config != null && Boolean.parseBoolean(config.getConfigValue().trim());
+    }
+
+    public long getMaxBytes() {
+        Config config = configRepository.findByConfigKey(ConfigController.CONTENT_SCAN_MAX_BYTES);
+        if (config == null) {
+            return DEFAULT_MAX_BYTES;
+        }
+        try {
+            return Long.parseLong(config.getConfigValue().trim());
+        } catch (NumberFormatException e) {
+            return DEFAULT_MAX_BYTES;
+        }
+    }
+
+    /**
+     * 检查文件内容是否包含敏感词，读取失败按不敏感处理
+     */
+    public boolean containsSensitive(Path file, BasicFileAttributes attrs, KeywordMatcher matcher) {
+        if (matcher == null || !attrs.isRegularFile() || attrs.size() == 0 || isBinaryExtension(file)) {
+            return false;
+        }
+        String key = file.toString();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        ScanResult cached = cache.get(key);
+        if (cached != null && cached.size == attrs.size() && cached.lastModified == lastModified
+                && cached.scanLimit == matcher.getScanLimit() && cached.keywords.equals(matcher.getKeywords())) {
+            cacheHits.incrementAndGet();
+            return cached.sensitive;
+        }
+
+        boolean sensitive;
+        try {
+            sensitive = scan(file, Math.min(attrs.size(), matcher.getScanLimit()), matcher);
+        } catch (IOException e) {
+            log.warn("内容扫描失败: {}，原因: {}", file, e.getMessage());
+            return false;
+        }
+        cache.put(key, new ScanResult(attrs.size(), lastModified, matcher.getKeywords(), matcher.getScanLimit(), sensitive));
+        if (sensitive) {
+            log.info("文件内容包含敏感词: {}", file);
+        }
+        return sensitive;
+    }
+
+    /**
+     * 并行扫描多个文件，返回内容包含敏感词的文件集合
+     */
+    public Set<Path> scanAll(Map<Path, BasicFileAttributes> files, KeywordMatcher matcher) {
+        if (matcher == null || files.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<Path> sensitive = Collections.synchronizedSet(new HashSet<>());
+        files.entrySet().parallelStream()
+                .filter(e -> containsSensitive(e.getKey(), e.getValue(), matcher))
+                .forEach(e -> sensitive.add(e.getKey()));
+        log.info("内容扫描完成: 文件数={}，命中={}，累计扫描文件={}，累计扫描字节={}，缓存命中={}",
+                files.size(), sensitive.size(), scannedFiles.get(), scannedBytes.get(), cacheHits.get());
+        return sensitive;
+    }
+
+    private boolean scan(Path file, long limit, KeywordMatcher matcher) throws IOException {
+        scannedFiles.incrementAndGet();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int state = 0;
+            if (limit <= DIRECT_READ_THRESHOLD) {
+                ByteBuffer buffer = READ_BUFFER.get();
+                buffer.clear().limit((int) limit);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // 读满或到达文件末尾
+                }
+                buffer.flip();
+                scannedBytes.addAndGet(buffer.remaining());
+                if (isBinary(buffer)) {
+                    return false;
+                }
+                return matcher.feed(buffer, state) < 0;
+            }
+
+            for (long position = 0; position < limit; position += MAP_WINDOW) {
+                long length = Math.min(MAP_WINDOW, limit - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                if (position == 0 && isBinary(mapped)) {
+                    return false;
+                }
+                scannedBytes.addAndGet(length);
+                state = matcher.feed(mapped, state);
+                if (state < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private boolean isBinary(ByteBuffer buffer) {
+        int end = Math.min(buffer.limit(), buffer.position() + BINARY_PROBE_BYTES);
+        for (int i = buffer.position(); i < end; i++) {
+            if (buffer.get(i) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBinaryExtension(Path file) {
+        String name = file.getFileName() != null ? file.getFileName().toString() : "";
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && BINARY_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    private static class ScanResult {
+        final long size;
+        final long lastModified;
+        final List<String> keywords;  // 扫描时使用的关键词和字节上限，配置变化后缓存失效
+        final long scanLimit;
+        final boolean sensitive;
+
+        ScanResult(long size, long lastModified, List<String> keywords, long scanLimit, boolean sensitive) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.keywords = keywords;
+            this.scanLimit = scanLimit;
+            this.sensitive = sensitive;
+        }
+    }
+}
@@ -3,25 +3,29 @@ package com.example.demo.service;
 import com.example.demo.controller.ConfigController;
 import com.example.demo.entity.BackupTask;
 import com.example.demo.entity.Config;
+import com.example.demo.model.BackupPlan;
 import com.example.demo.repository.BackupTaskRepository;
 import com.example.demo.repository.ConfigRepository;
 import com.example.demo.repository.HardDiskRepository;
+import com.example.demo.util.KeywordMatcher;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+@Slf4j
 @Service
 public class DataClassificationService {
     @Autowired
@@ -32,8 +36,11 @@ public class DataClassificationService {
     private BackupService backupService;
     @Autowired
     private HardDiskRepository hardDiskRepository;
+    @Autowired
+    private BackupPlanService planService;
+    @Autowired
+    private ContentScanService contentScanService;
 
-    private static final long COLD_DATA_THRESHOLD_DAYS = 365;
 
     public Map<String, Object> classifyData(String sourcePath) throws Exception {
         Path path = Paths.get(sourcePath);
@@ -57,81 +64,125 @@ public class DataClassificationService {
         task.setSensitive(false); // 默认非敏感，具体由文件分类确定
         task.setPaused(false);
 
-        // 分类文件
+        // 分类文件，同时生成备份计划（每个条目只读取一次属性）
+        Pattern compiledPattern = Pattern.compile(sensitivePattern);
+        BackupPlan plan = new BackupPlan();
+        plan.setSourcePath(sourcePath);
+        plan.setSensitivePattern(sensitivePattern);
+        plan.setContentScanLimit(contentScanService.getScanLimit());
+        long now = System.currentTimeMillis();
+        plan.setCreatedAt(now);
+
+        // 开启内容扫描时，文件名未命中敏感词的文件在遍历结束后并行扫描内容
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(sensitivePattern);
+        Map<Path, BasicFileAttributes> scanCandidates = new HashMap<>();
+        Map<Path, Map<String, Object>> candidateClassifications = new HashMap<>();
+        Map<Path, BackupPlan.Entry> candidateEntries = new HashMap<>();
+
         List<Map<String, Object>> fileClassifications = new ArrayList<>();
         if (path.toFile().isDirectory()) {
-            Files.walk(path)
-                    .filter(Files::isRegularFile)
-                    .forEach(filePath -> {
-                        try {
-                            fileClassifications.add(classifySingleFile(filePath, sensitivePattern));
-                        } catch (Exception e) {
-                            Map<String, Object> errorClassification = new HashMap<>();
-                            errorClassification.put("filePath", filePath.toString());
-                            errorClassification.put("backupCount", 0);
-                            errorClassification.put("reason", "分类失败: " + e.getMessage());
-                            fileClassifications.add(errorClassification);
+            Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    plan.addEntry(new BackupPlan.Entry(path.relativize(dir).toString(), true, 0,
+                            attrs.lastModifiedTime().toMillis(), 0));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        Map<String, Object> classification = classifySingleFile(filePath, attrs, compiledPattern, now);
+                        fileClassifications.add(classification);
+                        BackupPlan.Entry entry = new BackupPlan.Entry(path.relativize(filePath).toString(), false,
+                                attrs.size(), attrs.lastModifiedTime().toMillis(), (int) classification.get("backupCount"));
+                        plan.addEntry(entry);
+                        if (contentMatcher != null && entry.getBackupCount() < 2) {
+                            scanCandidates.put(filePath, attrs);
+                            candidateClassifications.put(filePath, classification);
+                            candidateEntries.put(filePath, entry);
                         }
-                    });
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path filePath, IOException e) {
+                    Map<String, Object> errorClassification = new HashMap<>();
+                    errorClassification.put("filePath", filePath.toString());
+                    errorClassification.put("backupCount", 0);
+                    errorClassification.put("reason", "分类失败: " + e.getMessage());
+                    fileClassifications.add(errorClassification);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
         } else {
-            fileClassifications.add(classifySingleFile(path, sensitivePattern));
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            Map<String, Object> classification = classifySingleFile(path, attrs, compiledPattern, now);
+            fileClassifications.add(classification);
+            BackupPlan.Entry entry = new BackupPlan.Entry("", false, attrs.size(),
+                    attrs.lastModifiedTime().toMillis(), (int) classification.get("backupCount"));
+            plan.addEntry(entry);
+            if (contentMatcher != null && entry.getBackupCount() < 2) {
+                scanCandidates.put(path, attrs);
+                candidateClassifications.put(path, classification);
+                candidateEntries.put(path, entry);
+            }
+        }
+
+        // 内容包含敏感词的文件按敏感文件处理（备份两次）
+        for (Path hit : contentScanService.scanAll(scanCandidates, contentMatcher)) {
+            Map<String, Object> classification = candidateClassifications.get(hit);
+            classification.put("backupCount", 2);
+            classification.put("reason", "Sensitive Content");
+            candidateEntries.get(hit).setBackupCount(2);
         }
 
-        // 计算总备份次数和大小
+        // 计算总备份次数和大小（直接使用计划中的文件大小，不再重复读取）
         int totalBackupCount = fileClassifications.stream()
                 .mapToInt(classification -> (int) classification.get("backupCount"))
                 .sum();
-        long totalSize = fileClassifications.stream()
-                .filter(classification -> (int) classification.get("backupCount") > 0)
-                .mapToLong(classification -> {
-                    try {
-                        return Files.size(Paths.get((String) classification.get("filePath")));
-                    } catch (Exception e) {
-                        return 0L;
-                    }
-                })
-                .sum() * totalBackupCount;
+        long totalSize = plan.getEntries().stream()
+                .filter(entry -> !entry.isDirectory())
+                .mapToLong(entry -> entry.getSize() * entry.getBackupCount())
+                .sum();
 
         task.setBackupCount(totalBackupCount);
         task.setTotalSize(totalSize);
         taskRepository.save(task);
 
+        // 保存备份计划，executeBackup 复核后直接使用
+        plan.setTaskId(task.getId());
+        boolean planSaved = false;
+        try {
+            planService.save(plan);
+            planSaved = true;
+        } catch (IOException e) {
+            log.warn("备份计划保存失败，备份时将重新分类: 任务ID={}，{}", task.getId(), e.getMessage());
+        }
+
         // 返回分类结果
         Map<String, Object> result = new HashMap<>();
         result.put("task", task);
         result.put("fileClassifications", fileClassifications);
+        result.put("planSaved", planSaved);
         return result;
     }
 
-    private Map<String, Object> classifySingleFile(Path file, String sensitivePattern) throws Exception {
+    // 分类规则与 BackupPlanService.classify 相同（备份时复核计划也用它），阈值附近的文件结果一致
+    private Map<String, Object> classifySingleFile(Path file, BasicFileAttributes attrs, Pattern sensitivePattern, long now) {
         Map<String, Object> classification = new HashMap<>();
         classification.put("filePath", file.toString());
 
-        // 检查敏感词
-        boolean isSensitive = Pattern.compile(sensitivePattern).matcher(file.getFileName().toString()).find();
-        if (isSensitive) {
-            classification.put("backupCount", 2);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        int backupCount = planService.classify(file.getFileName().toString(), lastModified, sensitivePattern, now);
+        classification.put("backupCount", backupCount);
+        if (backupCount == 2) {
             classification.put("reason", "Sensitive");
             return classification;
         }
-
-        // 检查冷数据
-        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
-        LocalDateTime lastModified = LocalDateTime.ofInstant(
-                attrs.lastModifiedTime().toInstant(),
-                java.time.ZoneId.systemDefault()
-        );
-        long daysSinceModified = ChronoUnit.DAYS.between(lastModified, LocalDateTime.now());
-        if (daysSinceModified > COLD_DATA_THRESHOLD_DAYS) {
-            classification.put("backupCount", 1);
-            classification.put("reason", "Cold Data");
-            classification.put("lastModified", lastModified.toString());
-            return classification;
-        }
-
-        classification.put("backupCount", 0);
-        classification.put("reason", "Normal");
-        classification.put("lastModified", lastModified.toString());
+        classification.put("reason", backupCount == 1 ? "Cold Data" : "Normal");
+        classification.put("lastModified", BackupPlanService.toLocalDateTime(lastModified).toString());
         return classification;
     }
 }
\ No newline at end of file
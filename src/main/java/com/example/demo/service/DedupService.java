@@ -0,0 +1,169 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.BackupLog;
+import com.example.demo.model.DiskDedupStats;
+import com.example.demo.model.DuplicateContent;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * 重复内容统计：按校验和维护增量汇总，由 backup_log 上的触发器在记录写入、修改、删除时同步，
+ * 查询时不需要对 backup_log 做全表 GROUP BY。
+ * <pre>
+ * checksum_disk  每个（校验和, 磁盘）的副本数和单个副本大小，由 backup_log 的触发器维护
+ * checksum_stats 每个校验和的总副本数和所在磁盘数，由 checksum_disk 的触发器维护
+ * dedup_disk     每块磁盘的文件数、字节数和同盘重复副本，由 checksum_disk 的触发器维护
+ * </pre>
+ * 只统计 SUCCESS 状态且校验和非空的记录，单个副本大小取 transfer_offset（传输完成时即文件大小）
+ */
+@Slf4j
+@Service
+@DependsOnDatabaseInitialization
+public class DedupService {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final int MAX_LIMIT = 1000;
+    private static final RowMapper<BackupLog> LOG_MAPPER = new BeanPropertyRowMapper<>(BackupLog.class);
+
+    private static final String LOG_COUNTED_NEW = "new.status = 'SUCCESS' AND new.checksum <> ''";
+    private static final String LOG_COUNTED_OLD = "old.status = 'SUCCESS' AND old.checksum <> ''";
+
+    // 表和触发器的DDL包含分号，与全文索引一样在这里单独创建；建表、建触发器和回填在同一事务中完成
+    @PostConstruct
+    public void initAggregates() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Integer existing = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'checksum_disk'", Integer.class);
+            createTables();
+            createTriggers();
+            if (existing == null || existing == 0) {
+                // 首次创建：按已有的备份记录回填（插入 checksum_disk 时由触发器汇总到另外两张表）
+                long start = System.currentTimeMillis();
+                jdbcTemplate.update("INSERT INTO checksum_disk (checksum, disk_id, size, copies) "
+                        + "SELECT checksum, disk_id, MAX(transfer_offset), COUNT(*) FROM backup_log "
+                        + "WHERE status = 'SUCCESS' AND checksum <> '' GROUP BY checksum, disk_id");
+                log.info("重复内容统计表已建立，耗时 {} ms", System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    private void createTables() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS checksum_disk ("
+                + "checksum TEXT NOT NULL, disk_id INTEGER NOT NULL, size INTEGER NOT NULL, copies INTEGER NOT NULL, "
+                + "PRIMARY KEY (checksum, disk_id)) WITHOUT ROWID");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS checksum_stats ("
+                + "checksum TEXT PRIMARY KEY, size INTEGER NOT NULL, copies INTEGER NOT NULL, disks INTEGER NOT NULL) WITHOUT ROWID");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS dedup_disk ("
+                + "disk_id INTEGER PRIMARY KEY, copies INTEGER NOT NULL, bytes INTEGER NOT NULL, "
+                + "duplicate_copies INTEGER NOT NULL, duplicate_bytes INTEGER NOT NULL)");
+        // 只索引有重复的内容，按可回收字节数排序
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_checksum_stats_wasted "
+                + "ON checksum_stats ((copies - 1) * size) WHERE copies > 1");
+    }
+
+    private void createTriggers() {
+        // checksum_disk -> checksum_stats, dedup_disk
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS checksum_disk_ai AFTER INSERT ON checksum_disk BEGIN "
+                + "INSERT INTO checksum_stats (checksum, size, copies, disks) VALUES (new.checksum, new.size, new.copies, 1) "
+                + "ON CONFLICT (checksum) DO UPDATE SET copies = copies + excluded.copies, disks = disks + 1, size = excluded.size; "
+                + "INSERT INTO dedup_disk (disk_id, copies, bytes, duplicate_copies, duplicate_bytes) "
+                + "VALUES (new.disk_id, new.copies, new.copies * new.size, max(new.copies - 1, 0), max(new.copies - 1, 0) * new.size) "
+                + "ON CONFLICT (disk_id) DO UPDATE SET copies = copies + excluded.copies, bytes = bytes + excluded.bytes, "
+                + "duplicate_copies = duplicate_copies + excluded.duplicate_copies, "
+                + "duplicate_bytes = duplicate_bytes + excluded.duplicate_bytes; "
+                + "END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS checksum_disk_au AFTER UPDATE OF copies, size ON checksum_disk BEGIN "
+                + "UPDATE checksum_stats SET copies = copies + new.copies - old.copies, size = new.size WHERE checksum = new.checksum; "
+                + "UPDATE dedup_disk SET copies = copies + new.copies - old.copies, "
+                + "bytes = bytes + new.copies * new.size - old.copies * old.size, "
+                + "duplicate_copies = duplicate_copies + max(new.copies - 1, 0) - max(old.copies - 1, 0), "
+                + "duplicate_bytes = duplicate_bytes + max(new.copies - 1, 0) * new.size - max(old.copies - 1, 0) * old.size "
+                + "WHERE disk_id = new.disk_id; "
+                + "END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS checksum_disk_ad AFTER DELETE ON checksum_disk BEGIN "
+                + "UPDATE checksum_stats SET copies = copies - old.copies, disks = disks - 1 WHERE checksum = old.checksum; "
+                + "DELETE FROM checksum_stats WHERE checksum = old.checksum AND disks <= 0; "
+                + "UPDATE dedup_disk SET copies = copies - old.copies, bytes = bytes - old.copies * old.size, "
+                + "duplicate_copies = duplicate_copies - max(old.copies - 1, 0), "
+                + "duplicate_bytes = duplicate_bytes - max(old.copies - 1, 0) * old.size "
+                + "WHERE disk_id = old.disk_id; "
+                + "END");
+
+        // backup_log -> checksum_disk
+        String addNew = "INSERT INTO checksum_disk (checksum, disk_id, size, copies) "
+                + "SELECT new.checksum, new.disk_id, new.transfer_offset, 1 WHERE " + LOG_COUNTED_NEW + " "
+                + "ON CONFLICT (checksum, disk_id) DO UPDATE SET copies = copies + 1, size = excluded.size; ";
+        String removeOld = "UPDATE checksum_disk SET copies = copies - 1 "
+                + "WHERE checksum = old.checksum AND disk_id = old.disk_id AND " + LOG_COUNTED_OLD + "; "
+                + "DELETE FROM checksum_disk WHERE checksum = old.checksum AND disk_id = old.disk_id AND copies <= 0; ";
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS dedup_log_ai AFTER INSERT ON backup_log "
+                + "WHEN " + LOG_COUNTED_NEW + " BEGIN " + addNew + "END");
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS dedup_log_ad AFTER DELETE ON backup_log "
+                + "WHEN " + LOG_COUNTED_OLD + " BEGIN " + removeOld + "END");
+        // 保存实体时所有列都会出现在 SET 中，只在相关列的值真正变化时调整
+        jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS dedup_log_au "
+                + "AFTER UPDATE OF status, checksum, disk_id, transfer_offset ON backup_log "
+                + "WHEN ((" + LOG_COUNTED_OLD + ") OR (" + LOG_COUNTED_NEW + ")) "
+                + "AND (old.status IS NOT new.status OR old.checksum IS NOT new.checksum "
+                + "OR old.disk_id IS NOT new.disk_id OR old.transfer_offset IS NOT new.transfer_offset) "
+                + "BEGIN " + removeOld + addNew + "END");
+    }
+
+    /**
+     * 可回收字节数最多的重复内容
+     */
+    public List<DuplicateContent> topDuplicates(int limit) {
+        return readJdbcTemplate.query("SELECT checksum, size, copies, disks FROM checksum_stats "
+                        + "WHERE copies > 1 ORDER BY (copies - 1) * size DESC LIMIT ?",
+                (rs, rowNum) -> new DuplicateContent(rs.getString("checksum"), rs.getLong("size"),
+                        rs.getLong("copies"), rs.getLong("disks")),
+                clamp(limit));
+    }
+
+    /**
+     * 每块磁盘的重复副本和可回收字节数（按可回收字节数降序）
+     */
+    public List<DiskDedupStats> diskStats() {
+        return readJdbcTemplate.query("SELECT d.disk_id, h.disk_id AS disk_name, h.mount_point, d.copies, d.bytes, "
+                        + "d.duplicate_copies, d.duplicate_bytes FROM dedup_disk d LEFT JOIN hard_disk h ON h.id = d.disk_id "
+                        + "WHERE d.copies > 0 ORDER BY d.duplicate_bytes DESC",
+                (rs, rowNum) -> new DiskDedupStats(rs.getLong("disk_id"), rs.getString("disk_name"),
+                        rs.getString("mount_point"), rs.getLong("copies"), rs.getLong("bytes"),
+                        rs.getLong("duplicate_copies"), rs.getLong("duplicate_bytes")));
+    }
+
+    /**
+     * 相同内容的所有成功备份副本，按校验和或某条备份记录的ID查找
+     */
+    public List<BackupLog> findCopies(String checksum, Long logId, int limit) {
+        if ((checksum == null || checksum.isEmpty()) && logId != null) {
+            List<String> found = readJdbcTemplate.queryForList("SELECT checksum FROM backup_log WHERE id = ?", String.class, logId);
+            checksum = found.isEmpty() ? null : found.get(0);
+        }
+        if (checksum == null || checksum.isEmpty()) {
+            throw new IllegalArgumentException("校验和或备份记录不存在");
+        }
+        return readJdbcTemplate.query("SELECT * FROM backup_log WHERE checksum = ? AND status = 'SUCCESS' ORDER BY id LIMIT ?",
+                LOG_MAPPER, checksum, clamp(limit));
+    }
+
+    private int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
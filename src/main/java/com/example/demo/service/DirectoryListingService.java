@@ -0,0 +1,180 @@
+package com.example.demo.service;
+
+import com.example.demo.dto.FileInfoDTO;
+import com.example.demo.dto.FileListPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * 文件选择器的目录列表：目录列表来自 DirectoryMetadataCache（每个条目只读取一次属性），
+ * 服务端排序、按名称前缀过滤、按游标分页。排好序的结果与目录列表一起缓存，翻页时不再重新列目录和排序
+ */
+@Service
+public class DirectoryListingService {
+    @Autowired
+    private DirectoryMetadataCache metadataCache;
+
+    private static final int DEFAULT_PAGE_SIZE = 200;
+    private static final int MAX_PAGE_SIZE = 2000;
+    private static final int SORTED_VIEW_CAPACITY = 32;
+
+    // 排好序的视图（LRU），key为 目录 + 排序方式；目录列表对象变化（缓存失效重新加载）时视图随之失效
+    private final Map<String, SortedView> sortedViews = Collections.synchronizedMap(
+            new LinkedHashMap<String, SortedView>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SortedView> eldest) {
+                    return size() > SORTED_VIEW_CAPACITY;
+                }
+            });
+
+    /**
+     * 完整列表（不分页），保持原有的目录列出顺序
+     */
+    public List<FileInfoDTO> listAll(Path dir) throws IOException {
+        List<FileInfoDTO> result = new ArrayList<>();
+        for (DirectoryMetadataCache.Entry entry : metadataCache.list(dir)) {
+            result.add(new FileInfoDTO(entry.getPath(), entry.getTargetAttrs()));
+        }
+        return result;
+    }
+
+    /**
+     * 分页列表，目录在前
+     *
+     * @param sortBy name / size / modified
+     * @param prefix 名称前缀（不区分大小写），为空时不过滤
+     * @param cursor 上一页返回的 nextCursor，第一页为空
+     */
+    public FileListPage listPage(Path dir, String sortBy, String order, String prefix, String cursor, int limit) throws IOException {
+        String sort = "size".equals(sortBy) || "modified".equals(sortBy) ? sortBy : "name";
+        boolean desc = "desc".equalsIgnoreCase(order);
+        limit = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+
+        List<DirectoryMetadataCache.Entry> sorted = getSorted(dir, sort, desc);
+        Comparator<SortKey> comparator = keyComparator(desc);
+
+        // 游标是上一页最后一项的排序键，二分查找第一个大于它的位置（列表变化后也不会重复或遗漏）
+        int start = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            SortKey after = decodeCursor(cursor);
+            int low = 0, high = sorted.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.compare(keyOf(sorted.get(mid), sort), after) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            start = low;
+        }
+
+        String lowerPrefix = prefix != null && !prefix.isEmpty() ? prefix.toLowerCase() : null;
+        List<FileInfoDTO> items = new ArrayList<>(Math.min(limit, sorted.size()));
+        DirectoryMetadataCache.Entry last = null;
+        boolean more = false;
+        for (int i = start; i < sorted.size(); i++) {
+            DirectoryMetadataCache.Entry entry = sorted.get(i);
+            if (lowerPrefix != null && !entry.getName().toLowerCase().startsWith(lowerPrefix)) {
+                continue;
+            }
+            if (items.size() == limit) {
+                more = true;
+                break;
+            }
+            items.add(new FileInfoDTO(entry.getPath(), entry.getTargetAttrs()));
+            last = entry;
+        }
+
+        int total = sorted.size();
+        if (lowerPrefix != null) {
+            total = 0;
+            for (DirectoryMetadataCache.Entry entry : sorted) {
+                if (entry.getName().toLowerCase().startsWith(lowerPrefix)) {
+                    total++;
+                }
+            }
+        }
+        return new FileListPage(items, total, more ? encodeCursor(keyOf(last, sort)) : null);
+    }
+
+    private List<DirectoryMetadataCache.Entry> getSorted(Path dir, String sort, boolean desc) throws IOException {
+        List<DirectoryMetadataCache.Entry> entries = metadataCache.list(dir);
+        String key = dir.toAbsolutePath().normalize() + "\u0000" + sort + "\u0000" + desc;
+        SortedView view = sortedViews.get(key);
+        if (view != null && view.source == entries) {
+            return view.sorted;
+        }
+        List<DirectoryMetadataCache.Entry> sorted = new ArrayList<>(entries);
+        Comparator<SortKey> comparator = keyComparator(desc);
+        sorted.sort((a, b) -> comparator.compare(keyOf(a, sort), keyOf(b, sort)));
+        sortedViews.put(key, new SortedView(entries, sorted));
+        return sorted;
+    }
+
+    // 目录在前；再按排序值（名称排序时为0）；最后按名称，保证顺序唯一
+    private Comparator<SortKey> keyComparator(boolean desc) {
+        Comparator<SortKey> byValue = Comparator.<SortKey>comparingLong(k -> k.value)
+                .thenComparing(k -> k.name, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(k -> k.name);
+        if (desc) {
+            byValue = byValue.reversed();
+        }
+        return Comparator.<SortKey, Boolean>comparing(k -> !k.directory).thenComparing(byValue);
+    }
+
+    // 与 FileInfoDTO 一样取链接目标的属性，指向目录的链接排在目录中
+    private SortKey keyOf(DirectoryMetadataCache.Entry entry, String sort) {
+        BasicFileAttributes attrs = entry.getTargetAttrs();
+        long value = 0;
+        if ("size".equals(sort)) {
+            value = attrs.isRegularFile() ? attrs.size() : 0;
+        } else if ("modified".equals(sort)) {
+            value = attrs.lastModifiedTime().toMillis();
+        }
+        return new SortKey(attrs.isDirectory(), value, entry.getName());
+    }
+
+    private String encodeCursor(SortKey key) {
+        String raw = (key.directory ? "1" : "0") + "|" + key.value + "|" + key.name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private SortKey decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 3);
+            return new SortKey("1".equals(parts[0]), Long.parseLong(parts[1]), parts[2]);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标: " + cursor);
+        }
+    }
+
+    private static class SortKey {
+        final boolean directory;
+        final long value;
+        final String name;
+
+        SortKey(boolean directory, long value, String name) {
+            this.directory = directory;
+            this.value = value;
+            this.name = name;
+        }
+    }
+
+    private static class SortedView {
+        final List<DirectoryMetadataCache.Entry> source;
+        final List<DirectoryMetadataCache.Entry> sorted;
+
+        SortedView(List<DirectoryMetadataCache.Entry> source, List<DirectoryMetadataCache.Entry> sorted) {
+            this.source = source;
+            this.sorted = sorted;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Stats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 目录元数据缓存：缓存每个目录的列表（子项及其属性）和递归汇总（大小、文件数等）
+ * 本地目录在加载列表时注册到 WatchService，收到变化事件后使该目录的列表及所有上级目录的汇总失效；
+ * 无法监听的目录（网络挂载、监听数达到上限）按 TTL 过期后重新加载。
+ * 缓存按条目总数和目录数限制大小（空目录和已失效的目录不占条目，也要计数），超出时淘汰最久未使用的目录
+ */
+@Slf4j
+@Service
+public class DirectoryMetadataCache {
+
+    private static final int MAX_CACHED_ENTRIES = 1_000_000;   // 所有目录列表的条目总数上限
+    private static final int MAX_CACHED_DIRS = 200_000;         // 缓存的目录数上限
+    private static final int MAX_WATCHES = 8192;                // 最多监听的目录数（受 inotify 限制）
+    private static final long UNWATCHED_TTL_MILLIS = 30_000;    // 未监听目录的缓存有效期
+    private static final Set<String> NETWORK_FS_TYPES = new HashSet<>(Arrays.asList(
+            "nfs", "nfs4", "cifs", "smbfs", "smb3", "9p", "fuse.sshfs", "fuse.rclone", "davfs", "afpfs"));
+
+    // LRU：key为规范化后的目录路径
+    private final LinkedHashMap<Path, DirNode> nodes = new LinkedHashMap<>(1024, 0.75f, true);
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+    // 设备号（取不到时为盘符/根目录）-> 是否网络文件系统；FileStore.type() 每次都要解析挂载表，同一设备只判断一次
+    private final Map<Object, Boolean> networkStores = new ConcurrentHashMap<>();
+    private long cachedEntries = 0;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * 递归计算中的一步：由目录自身的列表和各子目录的结果合成该目录的结果
+     */
+    public interface SubtreeFolder<T> {
+        T fold(Path dir, List<Entry> entries, List<T> childResults);
+    }
+
+    /**
+     * 目录中的一个子项。attrs 不跟随符号链接，递归遍历用它判断是否进入子目录（链接不展开，避免成环）；
+     * targetAttrs 是链接目标的属性（目标不存在时与 attrs 相同），单层列表展示用它，指向目录的链接仍显示为目录
+     */
+    public static class Entry {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final BasicFileAttributes targetAttrs;
+
+        Entry(Path path, BasicFileAttributes attrs, BasicFileAttributes targetAttrs) {
+            this.path = path;
+            this.attrs = attrs;
+            this.targetAttrs = targetAttrs;
+        }
+
+        public Path getPath() { return path; }
+        public BasicFileAttributes getAttrs() { return attrs; }
+        public BasicFileAttributes getTargetAttrs() { return targetAttrs; }
+        public String getName() { return path.getFileName().toString(); }
+        public boolean isDirectory() { return attrs.isDirectory(); }
+        public boolean isTargetDirectory() { return targetAttrs.isDirectory(); }
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("WatchService不可用，目录缓存全部按TTL过期: {}", e.getMessage());
+            return;
+        }
+        watchThread = new Thread(this::processEvents, "dir-cache-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * 列出目录的直接子项（每个子项只读取一次属性），优先使用缓存
+     */
+    public List<Entry> list(Path dir) throws IOException {
+        Path key = dir.toAbsolutePath().normalize();
+        synchronized (this) {
+            DirNode node = nodes.get(key);
+            if (node != null && node.entries != null && isFresh(node, node.loadedAt)) {
+                return node.entries;
+            }
+        }
+
+        // 先注册监听再读取，读取期间发生的变化会使这次结果不写入缓存
+        long startedAt = System.currentTimeMillis();
+        boolean watched = register(key);
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(key)) {
+            for (Path child : stream) {
+                try {
+                    // 不跟随符号链接，避免链接成环导致递归汇总无法结束；链接另外读取一次目标的属性
+                    // （Windows 的目录联接不跟随读取时既不是目录也不是符号链接，归为 isOther）
+                    BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    boolean link = attrs.isSymbolicLink() || attrs.isOther();
+                    entries.add(new Entry(child, attrs, link ? targetAttributes(child, attrs) : attrs));
+                } catch (IOException e) {
+                    // 忽略无权限的文件/目录，避免整个列表失败
+                    log.debug("无法访问 {}，原因: {}", child, e.getMessage());
+                }
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        entries = Collections.unmodifiableList(entries);
+
+        synchronized (this) {
+            DirNode node = nodes.computeIfAbsent(key, k -> new DirNode());
+            if (node.invalidatedAt > startedAt) {
+                return entries;
+            }
+            if (node.entries != null) {
+                cachedEntries -= node.entries.size();
+            }
+            node.entries = entries;
+            node.loadedAt = System.currentTimeMillis();
+            node.watched = watched;
+            cachedEntries += entries.size();
+            evict();
+        }
+        return entries;
+    }
+
+    // 链接目标不存在或无权限访问时按链接本身处理
+    private static BasicFileAttributes targetAttributes(Path link, BasicFileAttributes linkAttrs) {
+        try {
+            return Files.readAttributes(link, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.debug("无法读取链接目标 {}，原因: {}", link, e.getMessage());
+            return linkAttrs;
+        }
+    }
+
+    /**
+     * 目录的递归汇总：文件数、目录数（含自身）、总大小
+     */
+    public Stats aggregate(Path dir) throws IOException {
+        return subtree(dir, "aggregate", (d, entries, childResults) -> {
+            Stats stats = new Stats();
+            stats.setTotalDirectories(1);
+            for (Entry entry : entries) {
+                if (!entry.isDirectory()) {
+                    stats.setTotalFiles(stats.getTotalFiles() + 1);
+                    stats.setTotalSize(stats.getTotalSize() + entry.getAttrs().size());
+                }
+            }
+            childResults.forEach(stats::add);
+            return stats;
+        });
+    }
+
+    /**
+     * 对目录子树做递归计算并按 key 缓存结果；子树中任一目录变化时结果失效
+     * 整个子树都被监听时结果一直有效，否则按 TTL 过期
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T subtree(Path dir, String key, SubtreeFolder<T> folder) throws IOException {
+        return (T) compute(dir.toAbsolutePath().normalize(), key, folder, true).value;
+    }
+
+    /**
+     * 只取已缓存的子树结果，没有或已失效时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T getCachedSubtree(Path dir, String key) {
+        DirNode node = nodes.get(dir.toAbsolutePath().normalize());
+        SubtreeValue cached = node != null ? node.subtree.get(key) : null;
+        if (cached == null || !isFresh(cached.watched, cached.computedAt)) {
+            return null;
+        }
+        return (T) cached.value;
+    }
+
+    /**
+     * 丢弃目录及其所有下级目录的缓存（用于强制刷新）
+     */
+    public synchronized void evictSubtree(Path dir) {
+        Path root = dir.toAbsolutePath().normalize();
+        List<Path> keys = new ArrayList<>();
+        for (Path key : nodes.keySet()) {
+            if (key.startsWith(root)) {
+                keys.add(key);
+            }
+        }
+        keys.forEach(this::removeNode);
+        invalidate(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> SubtreeValue compute(Path dir, String key, SubtreeFolder<T> folder, boolean root) throws IOException {
+        synchronized (this) {
+            DirNode node = nodes.get(dir);
+            SubtreeValue cached = node != null ? node.subtree.get(key) : null;
+            if (cached != null && isFresh(cached.watched, cached.computedAt)) {
+                return cached;
+            }
+        }
+
+        long startedAt = System.currentTimeMillis();
+        List<Entry> entries;
+        try {
+            entries = list(dir);
+        } catch (IOException e) {
+            if (root) {
+                throw e;
+            }
+            // 子目录无法访问时按空目录计算，不缓存结果
+            log.debug("无法访问 {}，原因: {}", dir, e.getMessage());
+            return new SubtreeValue(folder.fold(dir, Collections.emptyList(), Collections.emptyList()), 0, false);
+        }
+        boolean watched;
+        synchronized (this) {
+            DirNode node = nodes.get(dir);
+            watched = node != null && node.watched;
+        }
+        List<T> childResults = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.isDirectory()) {
+                SubtreeValue child = compute(entry.getPath(), key, folder, false);
+                childResults.add((T) child.value);
+                watched &= child.watched;
+            }
+        }
+        SubtreeValue value = new SubtreeValue(folder.fold(dir, entries, childResults), startedAt, watched);
+        synchronized (this) {
+            DirNode node = nodes.get(dir);
+            if (node != null && node.invalidatedAt <= startedAt) {
+                node.subtree.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    private boolean isFresh(DirNode node, long loadedAt) {
+        return isFresh(node.watched, loadedAt);
+    }
+
+    private boolean isFresh(boolean watched, long loadedAt) {
+        return watched || System.currentTimeMillis() - loadedAt < UNWATCHED_TTL_MILLIS;
+    }
+
+    // 本地目录注册监听，网络挂载或监听数达到上限时返回false
+    private boolean register(Path dir) {
+        if (watchService == null) {
+            return false;
+        }
+        synchronized (this) {
+            DirNode node = nodes.get(dir);
+            if (node != null && node.watchKey != null && node.watchKey.isValid()) {
+                return true;
+            }
+            if (watchKeys.size() >= MAX_WATCHES) {
+                return false;
+            }
+        }
+        try {
+            if (isNetworkStore(dir)) {
+                return false;
+            }
+            WatchKey watchKey = dir.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            synchronized (this) {
+                watchKeys.put(watchKey, dir);
+                nodes.computeIfAbsent(dir, k -> new DirNode()).watchKey = watchKey;
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException | ClosedWatchServiceException e) {
+            log.debug("目录无法监听，按TTL过期: {}，原因: {}", dir, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isNetworkStore(Path dir) throws IOException {
+        Object device;
+        try {
+            device = Files.getAttribute(dir, "unix:dev", LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            device = dir.getRoot();
+        }
+        Boolean network = networkStores.get(device);
+        if (network == null) {
+            network = NETWORK_FS_TYPES.contains(Files.getFileStore(dir).type().toLowerCase());
+            networkStores.put(device, network);
+        }
+        return network;
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey watchKey;
+            try {
+                watchKey = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean overflow = watchKey.pollEvents().stream()
+                    .anyMatch(event -> event.kind() == StandardWatchEventKinds.OVERFLOW);
+            synchronized (this) {
+                Path dir = watchKeys.get(watchKey);
+                if (overflow) {
+                    // 事件丢失，无法确定变化范围，清空所有缓存
+                    log.warn("目录监听事件溢出，清空目录缓存");
+                    clear();
+                } else if (dir != null) {
+                    invalidate(dir);
+                }
+                if (!watchKey.reset()) {
+                    // 目录已删除或不可访问
+                    watchKeys.remove(watchKey);
+                    if (dir != null) {
+                        removeNode(dir);
+                    }
+                }
+            }
+        }
+    }
+
+    // 目录变化：该目录的列表失效，该目录及所有上级目录的子树结果失效
+    private void invalidate(Path dir) {
+        DirNode node = nodes.get(dir);
+        if (node != null && node.entries != null) {
+            cachedEntries -= node.entries.size();
+            node.entries = null;
+        }
+        long now = System.currentTimeMillis();
+        for (Path p = dir; p != null; p = p.getParent()) {
+            DirNode ancestor = nodes.get(p);
+            if (ancestor != null) {
+                ancestor.subtree.clear();
+                ancestor.invalidatedAt = now;
+            }
+        }
+    }
+
+    private void removeNode(Path dir) {
+        invalidate(dir);
+        DirNode node = nodes.remove(dir);
+        if (node != null && node.watchKey != null) {
+            node.watchKey.cancel();
+            watchKeys.remove(node.watchKey);
+        }
+    }
+
+    // 淘汰最久未使用的目录；被淘汰的目录不再监听，因此上级目录的子树结果也一并失效
+    private void evict() {
+        while ((cachedEntries > MAX_CACHED_ENTRIES || nodes.size() > MAX_CACHED_DIRS) && !nodes.isEmpty()) {
+            Path eldest = nodes.keySet().iterator().next();
+            removeNode(eldest);
+        }
+    }
+
+    private void clear() {
+        for (DirNode node : nodes.values()) {
+            node.subtree.clear();
+            node.entries = null;
+            node.invalidatedAt = System.currentTimeMillis();
+        }
+        cachedEntries = 0;
+    }
+
+    private static class DirNode {
+        List<Entry> entries;          // 目录列表，失效后为null
+        long loadedAt;
+        boolean watched;
+        WatchKey watchKey;
+        long invalidatedAt;           // 最近一次失效时间，早于该时间开始的计算结果不写入缓存
+        final Map<String, SubtreeValue> subtree = new HashMap<>();
+    }
+
+    private static class SubtreeValue {
+        final Object value;
+        final long computedAt;
+        final boolean watched;        // 计算时整个子树都在监听中
+
+        SubtreeValue(Object value, long computedAt, boolean watched) {
+            this.value = value;
+            this.computedAt = computedAt;
+            this.watched = watched;
+        }
+    }
+}
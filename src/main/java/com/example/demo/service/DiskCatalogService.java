@@ -0,0 +1,363 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.BackupLog;
+import com.example.demo.entity.HardDisk;
+import com.example.demo.model.CatalogHit;
+import com.example.demo.repository.BackupLogCatalog;
+import com.example.demo.util.CatalogJournal;
+import com.example.demo.util.CatalogSegment;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 目标盘上的二进制目录（.backup-catalog 目录下的 *.bcat 段文件）：
+ * 文件备份成功时先追加到该任务的日志（task_<id>.journal），日志积累到一定条数或任务结束时
+ * 压缩成不可修改的段文件（task_<id>_<首条记录ID>.bcat），因此备份过程中目录就是可用的，中途崩溃也只丢失未写完的尾部。
+ * 路径相对挂载点保存，磁盘脱机或换了挂载位置也能单独检索，不依赖 SQLite 数据库。
+ * 查询时各段文件以内存映射方式打开，查完立即解除映射，不长期占用段文件（Windows 下被映射的文件无法替换或删除），多块盘并行查找
+ */
+@Slf4j
+@Service
+public class DiskCatalogService {
+    @Autowired
+    private BackupLogCatalog logCatalog;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+
+    public static final String CATALOG_DIR = ".backup-catalog";
+    private static final String SEGMENT_SUFFIX = ".bcat";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final int COMPACT_THRESHOLD = 50_000;   // 日志达到该条数时压缩成段文件
+    private static final int FORCE_INTERVAL = 1000;        // 每追加该条数刷一次盘
+    private static final int SEGMENT_MAX_ENTRIES = 200_000;
+    private static final int MAX_LIMIT = 1000;
+    private static final long SEARCH_TIMEOUT_SECONDS = 30;
+
+    // 正在备份的任务的追加日志
+    private final Map<Long, CatalogJournal> journals = new ConcurrentHashMap<>();
+    // 追加失败的任务，结束时改为从数据库重建目录
+    private final Set<Long> staleTasks = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService searchPool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+                Thread thread = new Thread(r, "disk-catalog-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdownNow();
+        for (CatalogJournal journal : journals.values()) {
+            try {
+                journal.force();
+                journal.close();
+            } catch (IOException e) {
+                log.warn("关闭目录日志失败: {}", journal.getFile(), e);
+            }
+        }
+        journals.clear();
+    }
+
+    /**
+     * 文件备份成功后追加到任务的目录日志（size 为目标文件大小），失败只记录日志（任务结束时从数据库重建）
+     */
+    public void append(Long taskId, HardDisk disk, BackupLog backupLog, long size) {
+        CatalogSegment.Record record = toRecord(taskId, disk, mountPrefix(disk.getMountPoint()), backupLog, size);
+        if (record == null || staleTasks.contains(taskId)) {
+            return;
+        }
+        try {
+            CatalogJournal journal = journals.get(taskId);
+            if (journal == null) {
+                journal = CatalogJournal.open(journalPath(disk, taskId));
+                CatalogJournal existing = journals.putIfAbsent(taskId, journal);
+                if (existing != null) {
+                    journal.close();
+                    journal = existing;
+                }
+            }
+            synchronized (journal) {
+                journal.append(record);
+                if (journal.size() >= COMPACT_THRESHOLD) {
+                    compact(taskId, disk, journal);
+                } else if (journal.size() % FORCE_INTERVAL == 0) {
+                    journal.force();
+                }
+            }
+        } catch (IOException e) {
+            staleTasks.add(taskId);
+            log.warn("追加目录日志失败，任务结束时将重建目录: 任务ID={}, 错误={}", taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 任务结束（成功、失败或部分失败）：把剩余的日志压缩成段文件并删除日志；之前追加失败过的任务从数据库重建
+     */
+    public void finishTask(Long taskId, HardDisk disk) throws IOException {
+        if (staleTasks.remove(taskId)) {
+            rebuildTaskCatalog(taskId, disk);
+            return;
+        }
+        CatalogJournal journal = journals.remove(taskId);
+        if (journal == null) {
+            // 服务重启后恢复的任务，日志文件可能仍在盘上
+            if (!Files.exists(journalPath(disk, taskId))) {
+                return;
+            }
+            journal = CatalogJournal.open(journalPath(disk, taskId));
+        }
+        try {
+            synchronized (journal) {
+                compact(taskId, disk, journal);
+            }
+        } finally {
+            journal.close();
+        }
+        Files.deleteIfExists(journal.getFile());
+    }
+
+    /**
+     * 任务取消：目标文件已经删除，同时删除该任务在磁盘上的目录日志和段文件
+     */
+    public void discardTask(Long taskId, HardDisk disk) throws IOException {
+        staleTasks.remove(taskId);
+        CatalogJournal journal = journals.remove(taskId);
+        if (journal != null) {
+            journal.close();
+        }
+        Files.deleteIfExists(journalPath(disk, taskId));
+        deleteTaskSegments(catalogDir(disk), taskId);
+        log.info("已删除取消任务的磁盘目录: 磁盘={}, 任务ID={}", disk.getDiskId(), taskId);
+    }
+
+    // 日志内容写成段文件后清空日志；段文件以首条记录ID命名，压缩中途崩溃后重做会覆盖同名文件，不会重复
+    private void compact(Long taskId, HardDisk disk, CatalogJournal journal) throws IOException {
+        journal.force();
+        List<CatalogSegment.Record> records = CatalogJournal.readAll(journal.getFile());
+        if (!records.isEmpty()) {
+            Path segmentFile = catalogDir(disk).resolve(segmentName(taskId, records.get(0).getLogId()));
+            CatalogSegment.write(segmentFile, records);
+            log.info("目录日志已压缩: 磁盘={}, 任务ID={}, 记录数={}", disk.getDiskId(), taskId, records.size());
+        }
+        journal.truncate();
+    }
+
+    /**
+     * 从数据库重建任务在该磁盘上的目录（删除该任务之前的段文件和日志）
+     *
+     * @return 写入的记录数
+     */
+    public int rebuildTaskCatalog(Long taskId, HardDisk disk) throws IOException {
+        String mountPrefix = mountPrefix(disk.getMountPoint());
+        List<CatalogSegment.Record> records = new ArrayList<>();
+        logCatalog.forEachByTask(taskId, backupLog -> {
+            // 数据库中没有文件大小，按目标文件的实际大小（文件已不存在时为0）
+            CatalogSegment.Record record = toRecord(taskId, disk, mountPrefix, backupLog,
+                    backupLog.getTargetPath() != null ? new File(backupLog.getTargetPath()).length() : 0);
+            if (record != null) {
+                records.add(record);
+            }
+        });
+
+        CatalogJournal journal = journals.remove(taskId);
+        if (journal != null) {
+            journal.close();
+        }
+        Files.deleteIfExists(journalPath(disk, taskId));
+        deleteTaskSegments(catalogDir(disk), taskId);
+        for (int from = 0; from < records.size(); from += SEGMENT_MAX_ENTRIES) {
+            List<CatalogSegment.Record> chunk = records.subList(from, Math.min(records.size(), from + SEGMENT_MAX_ENTRIES));
+            CatalogSegment.write(catalogDir(disk).resolve(segmentName(taskId, chunk.get(0).getLogId())), chunk);
+        }
+        log.info("已重建磁盘目录: 磁盘={}, 任务ID={}, 记录数={}", disk.getDiskId(), taskId, records.size());
+        return records.size();
+    }
+
+    // 只收录成功写到该磁盘挂载点下的记录
+    private CatalogSegment.Record toRecord(Long taskId, HardDisk disk, String mountPrefix, BackupLog backupLog, long size) {
+        if (!"SUCCESS".equals(backupLog.getStatus()) || !disk.getId().equals(backupLog.getDiskId())
+                || backupLog.getTargetPath() == null || !backupLog.getTargetPath().startsWith(mountPrefix)) {
+            return null;
+        }
+        return new CatalogSegment.Record(
+                backupLog.getId(),
+                taskId,
+                size,
+                toMillis(backupLog.getBackupTime()),
+                backupLog.getTargetPath().substring(mountPrefix.length()),
+                backupLog.getChecksum());
+    }
+
+    /**
+     * 在所有已登记磁盘的目录中查找（并行），或者只查找 root 指定的目录（脱机磁盘的挂载点或目录文件夹）
+     *
+     * @param prefix   路径前缀，可以是相对挂载点的路径，也可以是带挂载点的完整路径
+     * @param checksum 校验和，与 prefix 二选一，同时给出时两者都要满足
+     */
+    public List<CatalogHit> search(String prefix, String checksum, String root, int limit) {
+        boolean hasPrefix = prefix != null && !prefix.isEmpty();
+        boolean hasChecksum = checksum != null && !checksum.isEmpty();
+        if (!hasPrefix && !hasChecksum) {
+            throw new IllegalArgumentException("路径前缀和校验和不能同时为空");
+        }
+        int max = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        List<CatalogLocation> locations = new ArrayList<>();
+        if (root != null && !root.isEmpty()) {
+            // root 可以是磁盘挂载点，也可以直接是 .backup-catalog 目录
+            Path rootPath = Paths.get(root).toAbsolutePath().normalize();
+            if (Files.isDirectory(rootPath.resolve(CATALOG_DIR)) || rootPath.getParent() == null) {
+                locations.add(new CatalogLocation(root, rootPath.toString(), rootPath.resolve(CATALOG_DIR)));
+            } else {
+                locations.add(new CatalogLocation(root, rootPath.getParent().toString(), rootPath));
+            }
+        } else {
+            // 只读取需要的列（旧库中 hard_disk 的列可能不全）
+            readJdbcTemplate.query("SELECT disk_id, mount_point FROM hard_disk", rs -> {
+                String mountPoint = rs.getString("mount_point");
+                if (mountPoint != null && !mountPoint.isEmpty()) {
+                    locations.add(new CatalogLocation(rs.getString("disk_id"), mountPoint, Paths.get(mountPoint, CATALOG_DIR)));
+                }
+            });
+        }
+
+        List<Future<List<CatalogHit>>> futures = new ArrayList<>();
+        for (CatalogLocation location : locations) {
+            futures.add(searchPool.submit(() -> searchLocation(location, prefix, checksum, max)));
+        }
+        List<CatalogHit> hits = new ArrayList<>();
+        for (Future<List<CatalogHit>> future : futures) {
+            try {
+                hits.addAll(future.get(SEARCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } catch (ExecutionException | TimeoutException e) {
+                future.cancel(true);
+                log.warn("磁盘目录查找失败: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        hits.sort(Comparator.comparing(CatalogHit::getDiskId, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(CatalogHit::getRelativePath));
+        return hits.size() > max ? new ArrayList<>(hits.subList(0, max)) : hits;
+    }
+
+    private List<CatalogHit> searchLocation(CatalogLocation location, String prefix, String checksum, int limit) throws IOException {
+        List<CatalogHit> hits = new ArrayList<>();
+        if (!Files.isDirectory(location.catalogDir)) {
+            return hits;
+        }
+        String relativePrefix = null;
+        if (prefix != null && !prefix.isEmpty()) {
+            String mountPrefix = mountPrefix(location.mountPoint);
+            relativePrefix = prefix.startsWith(mountPrefix) ? prefix.substring(mountPrefix.length()) : prefix;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(location.catalogDir,
+                "*{" + SEGMENT_SUFFIX + "," + JOURNAL_SUFFIX + "}")) {
+            for (Path file : stream) {
+                List<CatalogSegment.Record> records;
+                if (file.getFileName().toString().endsWith(JOURNAL_SUFFIX)) {
+                    // 尚未压缩的日志条数有限，顺序扫描
+                    records = new ArrayList<>();
+                    for (CatalogSegment.Record record : CatalogJournal.readAll(file)) {
+                        if (checksum != null && !checksum.isEmpty() ? checksum.equals(record.getChecksum())
+                                : record.getPath().startsWith(relativePrefix)) {
+                            records.add(record);
+                        }
+                    }
+                } else {
+                    try (CatalogSegment segment = CatalogSegment.open(file)) {
+                        records = checksum != null && !checksum.isEmpty()
+                                ? segment.findByChecksum(checksum)
+                                : segment.findByPathPrefix(relativePrefix, limit);
+                    }
+                }
+                for (CatalogSegment.Record record : records) {
+                    if (relativePrefix != null && !record.getPath().startsWith(relativePrefix)) {
+                        continue;
+                    }
+                    hits.add(new CatalogHit(location.diskId,
+                            mountPrefix(location.mountPoint) + record.getPath(),
+                            record.getPath(),
+                            record.getChecksum(),
+                            record.getSize(),
+                            record.getBackupTime(),
+                            record.getTaskId(),
+                            record.getLogId()));
+                    if (hits.size() >= limit) {
+                        return hits;
+                    }
+                }
+            }
+        }
+        return hits;
+    }
+
+    private void deleteTaskSegments(Path catalogDir, Long taskId) throws IOException {
+        if (!Files.isDirectory(catalogDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(catalogDir, "task_" + taskId + "_*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private String segmentName(Long taskId, long firstLogId) {
+        return "task_" + taskId + "_" + firstLogId + SEGMENT_SUFFIX;
+    }
+
+    private Path catalogDir(HardDisk disk) {
+        return Paths.get(disk.getMountPoint(), CATALOG_DIR);
+    }
+
+    private Path journalPath(HardDisk disk, Long taskId) {
+        return catalogDir(disk).resolve("task_" + taskId + JOURNAL_SUFFIX);
+    }
+
+    private String mountPrefix(String mountPoint) {
+        return mountPoint.endsWith(File.separator) ? mountPoint : mountPoint + File.separator;
+    }
+
+    // backup_time 保存的是 LocalDateTime.toString()
+    private long toMillis(String backupTime) {
+        if (backupTime == null || backupTime.isEmpty()) {
+            return 0;
+        }
+        try {
+            return LocalDateTime.parse(backupTime).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static class CatalogLocation {
+        final String diskId;
+        final String mountPoint;
+        final Path catalogDir;
+
+        CatalogLocation(String diskId, String mountPoint, Path catalogDir) {
+            this.diskId = diskId;
+            this.mountPoint = mountPoint;
+            this.catalogDir = catalogDir;
+        }
+    }
+}
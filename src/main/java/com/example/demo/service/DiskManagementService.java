@@ -2,6 +2,7 @@ package com.example.demo.service;
 
 import com.example.demo.entity.Config;
 import com.example.demo.entity.HardDisk;
+import com.example.demo.repository.BackupLogShardRouter;
 import com.example.demo.repository.ConfigRepository;
 import com.example.demo.repository.HardDiskRepository;
 import com.example.demo.util.*;
@@ -18,6 +19,7 @@ import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.StreamSupport;
 
 @Slf4j
@@ -27,6 +29,12 @@ public class DiskManagementService {
     private HardDiskRepository diskRepository;
     @Autowired
     private ConfigRepository configRepository;
+    @Autowired
+    private BackupLogShardRouter shardRouter;
+    @Autowired
+    private CapacityLedger capacityLedger;
+    @Autowired
+    private SqliteWriter writer;
 
     private static final long MIGRATION_THRESHOLD = 50L * 1024 * 1024 * 1024; // 50GB
 
@@ -97,42 +105,59 @@ public class DiskManagementService {
     }
 
     public void migrateDisk(HardDisk sourceDisk, HardDisk targetDisk) throws Exception {
-        if (targetDisk.getAvailableCapacity() < sourceDisk.getTotalCapacity() * 1.2) {
-            throw new IllegalStateException("Target disk capacity insufficient");
+        // 按源盘容量的1.2倍在台账中预留目标盘空间，与同时写入目标盘的备份任务互斥检查
+        long reservationKey = CapacityLedger.migrationKey(sourceDisk.getId());
+        capacityLedger.reserve(targetDisk, reservationKey, (long) (sourceDisk.getTotalCapacity() * 1.2), 0);
+        AtomicLong copiedBytes = new AtomicLong();
+        try {
+            updateMigration(sourceDisk.getId(), "RUNNING", targetDisk.getId());
+
+            // 递归复制数据（仅本地磁盘支持，远程磁盘需额外实现SMB复制逻辑）
+            Files.walk(Paths.get(sourceDisk.getMountPoint()))
+                    .filter(path -> !Files.isDirectory(path))
+                    .forEach(path -> {
+                        try {
+                            String relativePath = path.toString().substring(sourceDisk.getMountPoint().length());
+                            Path targetPath = Paths.get(targetDisk.getMountPoint() + relativePath);
+                            Files.createDirectories(targetPath.getParent());
+                            Files.copy(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                            copiedBytes.addAndGet(Files.size(targetPath));
+
+                            // 校验文件完整性
+                            String sourceChecksum = ChecksumUtil.calculateSHA256(path.toFile());
+                            String targetChecksum = ChecksumUtil.calculateSHA256(targetPath.toFile());
+                            if (!sourceChecksum.equals(targetChecksum)) {
+                                throw new Exception("Checksum verification failed for " + path);
+                            }
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    });
+
+            // 提交实际复制的字节数，从目标盘可用容量中原子扣减
+            capacityLedger.commit(reservationKey, copiedBytes.get());
+        } finally {
+            capacityLedger.release(reservationKey);
         }
 
-        sourceDisk.setMigrationStatus("RUNNING");
-        sourceDisk.setMigrationTarget(targetDisk.getId());
-        diskRepository.save(sourceDisk);
-
-        // 递归复制数据（仅本地磁盘支持，远程磁盘需额外实现SMB复制逻辑）
-        Files.walk(Paths.get(sourceDisk.getMountPoint()))
-                .filter(path -> !Files.isDirectory(path))
-                .forEach(path -> {
-                    try {
-                        String relativePath = path.toString().substring(sourceDisk.getMountPoint().length());
-                        Path targetPath = Paths.get(targetDisk.getMountPoint() + relativePath);
-                        Files.createDirectories(targetPath.getParent());
-                        Files.copy(path, targetPath, StandardCopyOption.REPLACE_EXISTING);
-
-                        // 校验文件完整性
-                        String sourceChecksum = ChecksumUtil.calculateSHA256(path.toFile());
-                        String targetChecksum = ChecksumUtil.calculateSHA256(targetPath.toFile());
-                        if (!sourceChecksum.equals(targetChecksum)) {
-                            throw new Exception("Checksum verification failed for " + path);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
-
-        // 更新状态
-        sourceDisk.setStatus("ARCHIVED");
-        sourceDisk.setMigrationStatus(null);
-        sourceDisk.setMigrationTarget(null);
-        targetDisk.setStatus("ACTIVE");
-        diskRepository.save(sourceDisk);
-        diskRepository.save(targetDisk);
+        // 更新状态：只修改状态和迁移字段，不写回整条记录（避免覆盖迁移期间其他任务扣减的可用容量）
+        writer.execute(jdbc -> {
+            jdbc.update("UPDATE hard_disk SET status = 'ARCHIVED', migration_status = NULL, migration_target = NULL WHERE id = ?",
+                    sourceDisk.getId());
+            return jdbc.update("UPDATE hard_disk SET status = 'ACTIVE' WHERE id = ?", targetDisk.getId());
+        });
+
+        // 归档磁盘的备份记录移出主库，失败时记录留在主库，不影响迁移结果
+        try {
+            shardRouter.archiveDisk(sourceDisk.getId());
+        } catch (Exception e) {
+            log.error("归档磁盘备份记录失败: 磁盘ID={}", sourceDisk.getId(), e);
+        }
+    }
+
+    private void updateMigration(Long diskId, String migrationStatus, Long migrationTarget) {
+        writer.execute(jdbc -> jdbc.update("UPDATE hard_disk SET migration_status = ?, migration_target = ? WHERE id = ?",
+                migrationStatus, migrationTarget, diskId));
     }
 
     /**
@@ -2,110 +2,748 @@ package com.example.demo.service;
 
 import com.example.demo.model.AnalyzeResponse;
 import com.example.demo.model.FileInfo;
+import com.example.demo.model.FolderPage;
+import com.example.demo.model.HotspotReport;
 import com.example.demo.model.Stats;
+import com.example.demo.util.CompactTree;
+import com.example.demo.util.KeywordMatcher;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 @Service
 public class FolderService {
+    @Autowired
+    private ContentScanService contentScanService;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private DirectoryMetadataCache metadataCache;
 
     private static final String DEFAULT_SENSITIVE_KEYWORDS = "杀人|强奸|抢劫|个人";
+    public static final int DEFAULT_MAX_ENTRIES = 200_000;      // 完整树接口最多返回的条目数，超过请使用分页接口
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String SUMMARY_KEY = "stats\u0000";      // 子树统计在目录缓存中的key前缀，后接关键词
+    private static final int MAX_HOTSPOT_TOP = 10_000;
+    private static final int MAX_HOTSPOT_EXTENSIONS = 1000;    // 扩展名种类上限，超出的归入 "*"
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final long MAX_RESIDENT_ENTRIES = 10_000_000;   // 常驻紧凑树的总条目数上限
+
+    // 建树使用的线程池：目录列举和属性读取以IO等待为主，线程数取CPU核数的2倍
+    private final ForkJoinPool treePool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    // 常驻内存的紧凑文件树（LRU），key为 关键词 + 根路径，总条目数超过上限时淘汰最久未用的
+    private final LinkedHashMap<String, CompactTree> residentTrees = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentEntries = 0;
 
     // 对外暴露的方法：返回包含树形结构和统计的响应
     public AnalyzeResponse analyzeFolder(String folderPath, String sensitiveKeywords) throws IOException {
-        if (sensitiveKeywords == null || sensitiveKeywords.isEmpty()) {
-            sensitiveKeywords = DEFAULT_SENSITIVE_KEYWORDS;
+        return analyzeFolder(folderPath, sensitiveKeywords, Integer.MAX_VALUE, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * 构建完整文件树，仅适用于小目录
+     *
+     * @param maxDepth   最大展开深度，更深的目录 children 为null，由前端通过分页接口按需加载
+     * @param maxEntries 最大条目数，超过时抛出异常提示改用分页接口
+     */
+    public AnalyzeResponse analyzeFolder(String folderPath, String sensitiveKeywords, int maxDepth, int maxEntries) throws IOException {
+        sensitiveKeywords = defaultKeywords(sensitiveKeywords);
+        Path rootPath = checkDirectory(folderPath);
+
+        // 在ForkJoinPool中并行构建文件树，每个条目只读取一次属性，统计信息在构建时自底向上汇总
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(sensitiveKeywords);
+        BasicFileAttributes rootAttrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+        TreeContext context = new TreeContext(compileKeywords(sensitiveKeywords), contentMatcher, maxDepth, maxEntries);
+        context.countEntry();
+        TreeBuildTask rootTask = new TreeBuildTask(rootPath, rootAttrs, 0, context);
+        try {
+            treePool.invoke(rootTask);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new AnalyzeResponse(rootTask.node, rootTask.stats);
+    }
+
+    /**
+     * 边遍历边把文件树写入输出流（深度优先），格式与 analyzeFolder 返回的 AnalyzeResponse 相同，stats 写在最后
+     * 内存占用只与目录深度有关，不受条目数限制
+     */
+    public void streamFolder(String folderPath, String sensitiveKeywords, int maxDepth, OutputStream out) throws IOException {
+        sensitiveKeywords = defaultKeywords(sensitiveKeywords);
+        Path rootPath = checkDirectory(folderPath);
+        Pattern keywordPattern = compileKeywords(sensitiveKeywords);
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(sensitiveKeywords);
+        BasicFileAttributes rootAttrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeFieldName("rootNode");
+            Stats stats = writeNode(generator, rootPath, rootAttrs, 0, maxDepth, keywordPattern, contentMatcher);
+            generator.writeObjectField("stats", stats);
+            generator.writeEndObject();
         }
+    }
 
-        Path rootPath = Paths.get(folderPath);
-        // 验证路径合法性
-        if (!Files.exists(rootPath) || !Files.isDirectory(rootPath)) {
-            throw new IllegalArgumentException("路径不存在或不是目录: " + folderPath);
+    // 写出一个节点，目录递归写出子节点，返回该节点的子树统计
+    private Stats writeNode(JsonGenerator generator, Path path, BasicFileAttributes attrs, int depth, int maxDepth,
+                            Pattern keywordPattern, KeywordMatcher contentMatcher) throws IOException {
+        FileInfo node = toNode(path, attrs, keywordPattern, contentMatcher);
+        Stats stats = new Stats();
+        if (attrs.isDirectory()) {
+            stats.setTotalDirectories(1);
+        } else {
+            stats.setTotalFiles(1);
+            stats.setTotalSize(node.getSize());
+        }
+        if (node.isSensitive()) {
+            stats.setSensitiveFiles(1);
         }
 
-        // 1. 递归构建文件树（根节点）
-        FileInfo rootNode = buildFileTree(rootPath, sensitiveKeywords);
-        // 2. 计算统计信息
-        Stats stats = calculateStats(rootNode);
+        generator.writeStartObject();
+        generator.writeStringField("name", node.getName());
+        generator.writeStringField("path", node.getPath());
+        generator.writeNumberField("size", node.getSize());
+        generator.writeStringField("lastModifiedTime", node.getLastModifiedTime());
+        generator.writeBooleanField("directory", node.isDirectory());
+        generator.writeBooleanField("sensitive", node.isSensitive());
+        generator.writeFieldName("children");
+        if (!attrs.isDirectory() || depth >= maxDepth) {
+            generator.writeNull();
+            generator.writeEndObject();
+            return stats;
+        }
 
-        return new AnalyzeResponse(rootNode, stats);
+        DirectoryStream<Path> stream;
+        try {
+            stream = Files.newDirectoryStream(path);
+        } catch (IOException e) {
+            if (depth == 0) {
+                throw e;
+            }
+            // 无法列出的子目录写出空的children，不影响其他目录
+            System.err.println("无法访问 " + path + "，原因：" + e.getMessage());
+            stream = null;
+        }
+        generator.writeStartArray();
+        if (depth == 0) {
+            generator.flush();  // 根节点信息先发送给前端
+        }
+        if (stream != null) {
+            try (DirectoryStream<Path> children = stream) {
+                for (Path childPath : children) {
+                    BasicFileAttributes childAttrs;
+                    try {
+                        childAttrs = Files.readAttributes(childPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        System.err.println("无法访问 " + childPath + "，原因：" + e.getMessage());
+                        continue;
+                    }
+                    stats.add(writeNode(generator, childPath, childAttrs, depth + 1, maxDepth, keywordPattern, contentMatcher));
+                }
+            } catch (DirectoryIteratorException e) {
+                System.err.println("无法访问 " + path + "，原因：" + e.getMessage());
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        return stats;
     }
 
-    // 递归构建文件树（核心方法）
-    private FileInfo buildFileTree(Path path, String sensitiveKeywords) throws IOException {
-        FileInfo node = new FileInfo();
-        node.setName(path.getFileName().toString());
-        node.setPath(path.toString());
-        node.setDirectory(Files.isDirectory(path));
+    /**
+     * 热点分析：一次流式遍历，只保留最大的N个文件和目录、大小和时间分布、扩展名汇总，内存占用与条目数无关
+     *
+     * @param top 返回的文件和目录个数
+     */
+    public HotspotReport analyzeHotspots(String folderPath, int top) throws IOException {
+        Path rootPath = checkDirectory(folderPath);
+        int limit = Math.max(1, Math.min(top, MAX_HOTSPOT_TOP));
+        long start = System.currentTimeMillis();
+        long now = start;
 
-        // 处理文件时间（将FileTime转为String，避免序列化异常）
-        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-        node.setLastModifiedTime(attrs.lastModifiedTime().toString());  // 转为字符串
+        Comparator<HotspotReport.Item> bySize = Comparator.comparingLong(HotspotReport.Item::getSize);
+        PriorityQueue<HotspotReport.Item> topFiles = new PriorityQueue<>(limit + 1, bySize);   // 小顶堆，堆顶是当前第N大
+        PriorityQueue<HotspotReport.Item> topDirs = new PriorityQueue<>(limit + 1, bySize);
+        long[] sizeCounts = new long[65], sizeBytes = new long[65];   // 第i个桶为 [2^(i-1), 2^i)，第0个桶为空文件
+        long[] ageCounts = new long[65], ageBytes = new long[65];
+        Map<String, long[]> extensions = new HashMap<>();   // 扩展名 -> {个数, 字节数}
+        long[] other = new long[2];                         // 超出扩展名上限的汇总
+        long[] totals = new long[3];                        // 文件数、目录数、总大小
+        Deque<long[]> dirStack = new ArrayDeque<>();        // 当前路径上各目录的 {子树大小, 修改时间}
 
-        // 关键修改：对所有节点（包括目录）进行敏感词检测
-        String safeKeywords = sensitiveKeywords.replaceAll("[.*+?^${}()\\[\\]\\\\]", "\\\\$0");
-        // 正则匹配：不区分大小写，匹配任意关键词
-        boolean isSensitive = node.getName().matches("(?i).*(" + safeKeywords + ").*");
-        node.setSensitive(isSensitive);
+        Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                dirStack.push(new long[]{0, attrs.lastModifiedTime().toMillis()});
+                totals[1]++;
+                return FileVisitResult.CONTINUE;
+            }
 
-        if (Files.isDirectory(path)) {
-            // 目录：递归处理子节点
-            List<FileInfo> children = new ArrayList<>();
-            // 遍历子目录/文件（使用try-with-resources确保流关闭）
-            try (var stream = Files.list(path)) {
-                stream.forEach(childPath -> {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                long size = attrs.size();
+                long modified = attrs.lastModifiedTime().toMillis();
+                totals[0]++;
+                totals[2] += size;
+                dirStack.peek()[0] += size;
+                offer(topFiles, limit, file, size, modified);
+
+                int sizeBucket = 64 - Long.numberOfLeadingZeros(size);
+                sizeCounts[sizeBucket]++;
+                sizeBytes[sizeBucket] += size;
+                int ageBucket = 64 - Long.numberOfLeadingZeros(Math.max(0, (now - modified) / DAY_MILLIS));
+                ageCounts[ageBucket]++;
+                ageBytes[ageBucket] += size;
+
+                String extension = extensionOf(file);
+                long[] total = extensions.get(extension);
+                if (total == null && extensions.size() < MAX_HOTSPOT_EXTENSIONS) {
+                    total = new long[2];
+                    extensions.put(extension, total);
+                }
+                if (total == null) {
+                    total = other;
+                }
+                total[0]++;
+                total[1] += size;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                System.err.println("无法访问 " + file + "，原因：" + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                long[] current = dirStack.pop();
+                if (!dirStack.isEmpty()) {
+                    dirStack.peek()[0] += current[0];
+                    offer(topDirs, limit, dir, current[0], current[1]);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        HotspotReport report = new HotspotReport();
+        report.setPath(rootPath.toString());
+        report.setTotalFiles(totals[0]);
+        report.setTotalDirectories(totals[1]);
+        report.setTotalSize(totals[2]);
+        report.setTopFiles(drainDescending(topFiles));
+        report.setTopDirectories(drainDescending(topDirs));
+        report.setSizeHistogram(toBuckets(sizeCounts, sizeBytes));
+        report.setAgeHistogram(toBuckets(ageCounts, ageBytes));
+
+        List<HotspotReport.ExtensionTotal> extensionTotals = new ArrayList<>();
+        extensions.forEach((extension, total) -> extensionTotals.add(new HotspotReport.ExtensionTotal(extension, total[0], total[1])));
+        if (other[0] > 0) {
+            extensionTotals.add(new HotspotReport.ExtensionTotal("*", other[0], other[1]));
+        }
+        extensionTotals.sort(Comparator.comparingLong(HotspotReport.ExtensionTotal::getBytes).reversed());
+        report.setExtensions(extensionTotals);
+        report.setElapsedMillis(System.currentTimeMillis() - start);
+        return report;
+    }
+
+    // 堆未满或比堆顶大时加入，始终保留最大的 limit 个
+    private void offer(PriorityQueue<HotspotReport.Item> heap, int limit, Path path, long size, long modified) {
+        if (heap.size() < limit) {
+            heap.add(new HotspotReport.Item(path.toString(), size, modified));
+        } else if (size > heap.peek().getSize()) {
+            heap.poll();
+            heap.add(new HotspotReport.Item(path.toString(), size, modified));
+        }
+    }
+
+    private List<HotspotReport.Item> drainDescending(PriorityQueue<HotspotReport.Item> heap) {
+        List<HotspotReport.Item> items = new ArrayList<>(heap);
+        items.sort(Comparator.comparingLong(HotspotReport.Item::getSize).reversed());
+        return items;
+    }
+
+    // 只输出非空的桶；第0个桶为 [0, 1)，第i个桶为 [2^(i-1), 2^i)
+    private List<HotspotReport.Bucket> toBuckets(long[] counts, long[] bytes) {
+        List<HotspotReport.Bucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                long from = i == 0 ? 0 : 1L << (i - 1);
+                long to = i == 0 ? 1 : (i == 64 ? Long.MAX_VALUE : 1L << i);
+                buckets.add(new HotspotReport.Bucket(from, to, counts[i], bytes[i]));
+            }
+        }
+        return buckets;
+    }
+
+    private String extensionOf(Path file) {
+        Path fileName = file.getFileName();
+        String name = fileName != null ? fileName.toString() : "";
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && dot < name.length() - 1 ? name.substring(dot + 1).toLowerCase() : "";
+    }
+
+    /**
+     * 构建目录的紧凑文件树并常驻内存，之后该目录下的分页、统计和切片查询直接使用它
+     * 紧凑树是构建时的快照，目录修改时间变化的部分会回退到实时读取
+     */
+    public CompactTree buildCompactTree(String folderPath, String sensitiveKeywords) throws IOException {
+        String keywords = defaultKeywords(sensitiveKeywords);
+        Path rootPath = checkDirectory(folderPath).toAbsolutePath().normalize();
+        Pattern keywordPattern = compileKeywords(keywords);
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(keywords);
+
+        // 广度优先：同一目录的子节点连续编号，队列中只保存目录的节点编号
+        CompactTree.Builder builder = new CompactTree.Builder(rootPath.toString(), keywords);
+        BasicFileAttributes rootAttrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+        String rootName = rootPath.getFileName() != null ? rootPath.getFileName().toString() : rootPath.toString();
+        builder.add(-1, rootName, rootAttrs, isSensitiveName(rootPath, keywordPattern));
+        ArrayDeque<Integer> dirNodes = new ArrayDeque<>();
+        ArrayDeque<Path> dirPaths = new ArrayDeque<>();
+        dirNodes.add(0);
+        dirPaths.add(rootPath);
+        while (!dirNodes.isEmpty()) {
+            int dirNode = dirNodes.poll();
+            Path dir = dirPaths.poll();
+            builder.beginChildren(dirNode);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path childPath : stream) {
+                    BasicFileAttributes childAttrs;
                     try {
-                        children.add(buildFileTree(childPath, sensitiveKeywords));
+                        childAttrs = Files.readAttributes(childPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
                     } catch (IOException e) {
-                        // 忽略无权限的文件/目录，避免整个遍历失败
                         System.err.println("无法访问 " + childPath + "，原因：" + e.getMessage());
+                        continue;
+                    }
+                    boolean sensitive = isSensitiveName(childPath, keywordPattern);
+                    if (!sensitive && contentMatcher != null && childAttrs.isRegularFile()) {
+                        sensitive = contentScanService.containsSensitive(childPath, childAttrs, contentMatcher);
+                    }
+                    int child = builder.add(dirNode, childPath.getFileName().toString(), childAttrs, sensitive);
+                    if (childAttrs.isDirectory()) {
+                        dirNodes.add(child);
+                        dirPaths.add(childPath);
                     }
-                });
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                if (dirNode == 0) {
+                    throw e instanceof IOException ? (IOException) e : ((DirectoryIteratorException) e).getCause();
+                }
+                System.err.println("无法访问 " + dir + "，原因：" + e.getMessage());
             }
-            node.setChildren(children);
-        } else {
-            // 文件：设置大小
-            node.setSize(attrs.size());
+            builder.endChildren(dirNode);
         }
+        CompactTree tree = builder.build();
 
-        return node;
+        synchronized (residentTrees) {
+            CompactTree old = residentTrees.put(keywords + "\u0000" + tree.getRootPath(), tree);
+            residentEntries += tree.getCount() - (old != null ? old.getCount() : 0);
+            Iterator<CompactTree> it = residentTrees.values().iterator();
+            while (residentEntries > MAX_RESIDENT_ENTRIES && it.hasNext()) {
+                CompactTree eldest = it.next();
+                if (eldest == tree) {
+                    continue;
+                }
+                residentEntries -= eldest.getCount();
+                it.remove();
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * 从常驻紧凑树中取出一个目录的切片（按 maxDepth 展开为 FileInfo），目录未常驻时返回null
+     */
+    public AnalyzeResponse getCompactSlice(String folderPath, String sensitiveKeywords, int maxDepth) {
+        ResidentNode resident = findResident(Paths.get(folderPath), defaultKeywords(sensitiveKeywords));
+        if (resident == null) {
+            return null;
+        }
+        String path = Paths.get(folderPath).toAbsolutePath().normalize().toString();
+        FileInfo node = toFileInfo(resident.tree, resident.node, path, 0, maxDepth);
+        return new AnalyzeResponse(node, toStats(resident.tree, resident.node));
+    }
+
+    // 紧凑树节点转为 FileInfo，目录按 maxDepth 递归展开；路径直接拼接字符串，不再逐个解析为Path
+    private FileInfo toFileInfo(CompactTree tree, int node, String path, int depth, int maxDepth) {
+        FileInfo info = new FileInfo();
+        info.setName(tree.getName(node));
+        info.setPath(path);
+        info.setDirectory(tree.isDirectory(node));
+        info.setSize(tree.isDirectory(node) ? 0 : tree.getSize(node));
+        info.setLastModifiedTime(FileTime.fromMillis(tree.getLastModified(node)).toString());
+        info.setSensitive(tree.isSensitive(node));
+        if (tree.isDirectory(node) && depth < maxDepth) {
+            int first = tree.getFirstChild(node);
+            List<FileInfo> children = new ArrayList<>(tree.getChildCount(node));
+            for (int child = first; child < first + tree.getChildCount(node); child++) {
+                children.add(toFileInfo(tree, child, childPath(path, tree.getName(child)), depth + 1, maxDepth));
+            }
+            info.setChildren(children);
+        }
+        return info;
     }
 
-    // 计算统计信息（递归累加）
-    private Stats calculateStats(FileInfo node) {
+    private String childPath(String parent, String name) {
+        return parent.endsWith(File.separator) ? parent + name : parent + File.separator + name;
+    }
+
+    private Stats toStats(CompactTree tree, int node) {
         Stats stats = new Stats();
+        stats.setTotalFiles(tree.getFileTotal(node));
+        stats.setTotalDirectories(tree.getDirectoryTotal(node));
+        stats.setSensitiveFiles(tree.getSensitiveTotal(node));
+        stats.setTotalSize(tree.getSize(node));
+        return stats;
+    }
+
+    // 在常驻紧凑树中查找目录；目录的修改时间与构建时不一致（子项有增删）时视为不可用
+    private ResidentNode findResident(Path dir, String keywords) {
+        Path target = dir.toAbsolutePath().normalize();
+        List<CompactTree> trees;
+        synchronized (residentTrees) {
+            if (residentTrees.isEmpty()) {
+                return null;
+            }
+            trees = new ArrayList<>(residentTrees.values());
+        }
+        for (CompactTree tree : trees) {
+            Path root = Paths.get(tree.getRootPath());
+            if (!tree.getKeywords().equals(keywords) || !target.startsWith(root)) {
+                continue;
+            }
+            List<String> segments = new ArrayList<>();
+            for (Path segment : root.relativize(target)) {
+                if (!segment.toString().isEmpty()) {
+                    segments.add(segment.toString());
+                }
+            }
+            int node = tree.find(segments);
+            if (node < 0 || !tree.isDirectory(node)) {
+                continue;
+            }
+            try {
+                if (Files.getLastModifiedTime(target).toMillis() != tree.getLastModified(node)) {
+                    continue;
+                }
+            } catch (IOException e) {
+                continue;
+            }
+            synchronized (residentTrees) {
+                residentTrees.get(keywords + "\u0000" + tree.getRootPath());  // 刷新LRU顺序
+            }
+            return new ResidentNode(tree, node);
+        }
+        return null;
+    }
+
+    /**
+     * 分页列出目录的直接子项（目录在前），只为当前页的条目做敏感词检测
+     *
+     * @param sortBy         name / size / modified
+     * @param computeSummary 为true时对没有缓存的子目录现场计算子树统计，否则只返回已缓存的统计
+     */
+    public FolderPage listChildren(String folderPath, String sensitiveKeywords, int offset, int limit,
+                                   String sortBy, String order, boolean computeSummary) throws IOException {
+        String keywords = defaultKeywords(sensitiveKeywords);
+        Path dir = checkDirectory(folderPath);
+        offset = Math.max(0, offset);
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
+        ResidentNode resident = findResident(dir, keywords);
+        if (resident != null) {
+            return listResidentChildren(resident, dir, offset, limit, sortBy, order);
+        }
+
+        // 1. 列出子项（目录元数据缓存，每个条目只读取一次属性）
+        List<DirectoryMetadataCache.Entry> children = new ArrayList<>(metadataCache.list(dir));
+
+        // 2. 排序：目录在前，再按指定字段排序；按大小排序时目录使用已缓存的子树大小
+        Comparator<DirectoryMetadataCache.Entry> comparator;
+        if ("size".equals(sortBy)) {
+            comparator = Comparator.comparingLong(child -> child.isDirectory()
+                    ? Optional.ofNullable(getCachedSummary(child.getPath(), keywords)).map(Stats::getTotalSize).orElse(0L)
+                    : child.getAttrs().size());
+        } else if ("modified".equals(sortBy)) {
+            comparator = Comparator.comparing(child -> child.getAttrs().lastModifiedTime());
+        } else {
+            comparator = Comparator.comparing(DirectoryMetadataCache.Entry::getName, String.CASE_INSENSITIVE_ORDER);
+        }
+        if ("desc".equalsIgnoreCase(order)) {
+            comparator = comparator.reversed();
+        }
+        children.sort(Comparator.<DirectoryMetadataCache.Entry, Boolean>comparing(child -> !child.isDirectory()).thenComparing(comparator));
+
+        // 3. 只为当前页构建节点
+        Pattern keywordPattern = compileKeywords(keywords);
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(keywords);
+        List<DirectoryMetadataCache.Entry> page = children.subList(Math.min(offset, children.size()), Math.min(offset + limit, children.size()));
+        List<FileInfo> items = new ArrayList<>(page.size());
+        for (DirectoryMetadataCache.Entry child : page) {
+            FileInfo node = toNode(child.getPath(), child.getAttrs(), keywordPattern, contentMatcher);
+            if (child.isDirectory()) {
+                node.setStats(computeSummary ? getSummary(child.getPath().toString(), keywords, false)
+                        : getCachedSummary(child.getPath(), keywords));
+                if (node.getStats() != null) {
+                    node.setSize(node.getStats().getTotalSize());
+                }
+            }
+            items.add(node);
+        }
+        return new FolderPage(dir.toString(), offset, limit, children.size(), items);
+    }
+
+    // 由常驻紧凑树分页：子项已在内存中，目录统计直接取子树汇总
+    private FolderPage listResidentChildren(ResidentNode resident, Path dir, int offset, int limit, String sortBy, String order) {
+        CompactTree tree = resident.tree;
+        int first = tree.getFirstChild(resident.node);
+        int total = tree.getChildCount(resident.node);
+        Integer[] nodes = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            nodes[i] = first + i;
+        }
+
+        Comparator<Integer> comparator;
+        if ("size".equals(sortBy)) {
+            comparator = Comparator.comparingLong(tree::getSize);
+        } else if ("modified".equals(sortBy)) {
+            comparator = Comparator.comparingLong(tree::getLastModified);
+        } else {
+            comparator = Comparator.comparing(tree::getName, String.CASE_INSENSITIVE_ORDER);
+        }
+        if ("desc".equalsIgnoreCase(order)) {
+            comparator = comparator.reversed();
+        }
+        Arrays.sort(nodes, Comparator.<Integer, Boolean>comparing(node -> !tree.isDirectory(node)).thenComparing(comparator));
 
-        if (node.isDirectory()) {
-            // 目录：自身计数+子节点计数
+        List<FileInfo> items = new ArrayList<>();
+        for (int i = offset; i < Math.min(offset + limit, total); i++) {
+            int node = nodes[i];
+            FileInfo item = toFileInfo(tree, node, childPath(dir.toString(), tree.getName(node)), 0, 0);
+            if (tree.isDirectory(node)) {
+                item.setStats(toStats(tree, node));
+                item.setSize(tree.getSize(node));
+            }
+            items.add(item);
+        }
+        return new FolderPage(dir.toString(), offset, limit, total, items);
+    }
+
+    /**
+     * 获取目录的子树统计：优先使用缓存，否则通过目录元数据缓存递归计算，所有子目录的统计一并缓存
+     */
+    public Stats getSummary(String folderPath, String sensitiveKeywords, boolean refresh) throws IOException {
+        String keywords = defaultKeywords(sensitiveKeywords);
+        Path dir = checkDirectory(folderPath);
+        if (refresh) {
+            metadataCache.evictSubtree(dir);
+        } else {
+            ResidentNode resident = findResident(dir, keywords);
+            if (resident != null) {
+                return toStats(resident.tree, resident.node);
+            }
+        }
+
+        Pattern keywordPattern = compileKeywords(keywords);
+        KeywordMatcher contentMatcher = contentScanService.prepareMatcher(keywords);
+        return metadataCache.subtree(dir, SUMMARY_KEY + keywords, (d, entries, childResults) -> {
+            Stats stats = new Stats();
+            stats.setTotalDirectories(1);
+            if (isSensitiveName(d, keywordPattern)) {
+                stats.setSensitiveFiles(1);
+            }
+            for (DirectoryMetadataCache.Entry entry : entries) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                stats.setTotalFiles(stats.getTotalFiles() + 1);
+                stats.setTotalSize(stats.getTotalSize() + entry.getAttrs().size());
+                if (isSensitiveName(entry.getPath(), keywordPattern) || (contentMatcher != null
+                        && contentScanService.containsSensitive(entry.getPath(), entry.getAttrs(), contentMatcher))) {
+                    stats.setSensitiveFiles(stats.getSensitiveFiles() + 1);
+                }
+            }
+            childResults.forEach(stats::add);
+            return stats;
+        });
+    }
+
+    // 只取已缓存的子树统计，不触发遍历
+    private Stats getCachedSummary(Path dir, String keywords) {
+        return metadataCache.getCachedSubtree(dir, SUMMARY_KEY + keywords);
+    }
+
+    /**
+     * 构建一个目录节点：文件在当前任务中直接处理，子目录拆分为子任务并行构建，
+     * 子任务完成后把子目录的统计累加到当前目录
+     */
+    private class TreeBuildTask extends RecursiveAction {
+        private final Path path;
+        private final BasicFileAttributes attrs;
+        private final int depth;
+        private final TreeContext context;
+        private FileInfo node;
+        private Stats stats;
+
+        TreeBuildTask(Path path, BasicFileAttributes attrs, int depth, TreeContext context) {
+            this.path = path;
+            this.attrs = attrs;
+            this.depth = depth;
+            this.context = context;
+        }
+
+        @Override
+        protected void compute() {
+            node = toNode(path, attrs, context.keywordPattern, context.contentMatcher);
+            stats = new Stats();
             stats.setTotalDirectories(1);  // 自身算一个目录
             if (node.isSensitive()) {
                 stats.setSensitiveFiles(1);  // 敏感目录计数
             }
-            if (node.getChildren() != null) {
-                for (FileInfo child : node.getChildren()) {
-                    Stats childStats = calculateStats(child);
-                    stats.setTotalFiles(stats.getTotalFiles() + childStats.getTotalFiles());
-                    stats.setTotalDirectories(stats.getTotalDirectories() + childStats.getTotalDirectories());
-                    stats.setSensitiveFiles(stats.getSensitiveFiles() + childStats.getSensitiveFiles());
-                    stats.setTotalSize(stats.getTotalSize() + childStats.getTotalSize());
+            if (depth >= context.maxDepth) {
+                // 超过展开深度：children 保持为null，前端按需加载
+                return;
+            }
+
+            List<FileInfo> children = new ArrayList<>();
+            List<TreeBuildTask> subtasks = new ArrayList<>();
+            try {
+                for (DirectoryMetadataCache.Entry entry : metadataCache.list(path)) {
+                    context.countEntry();
+                    Path childPath = entry.getPath();
+                    BasicFileAttributes childAttrs = entry.getAttrs();
+                    if (childAttrs.isDirectory()) {
+                        TreeBuildTask subtask = new TreeBuildTask(childPath, childAttrs, depth + 1, context);
+                        subtask.fork();
+                        subtasks.add(subtask);
+                        children.add(null);  // 占位，保持目录列出的顺序
+                    } else {
+                        FileInfo child = toNode(childPath, childAttrs, context.keywordPattern, context.contentMatcher);
+                        children.add(child);
+                        // 文件：自身计数
+                        stats.setTotalFiles(stats.getTotalFiles() + 1);
+                        stats.setTotalSize(stats.getTotalSize() + child.getSize());
+                        if (child.isSensitive()) {
+                            stats.setSensitiveFiles(stats.getSensitiveFiles() + 1);  // 敏感文件计数
+                        }
+                    }
                 }
+            } catch (IOException e) {
+                if (depth == 0) {
+                    throw new UncheckedIOException(e);
+                }
+                System.err.println("无法访问 " + path + "，原因：" + e.getMessage());
             }
-        } else {
-            // 文件：自身计数
-            stats.setTotalFiles(1);  // 自身算一个文件
-            stats.setTotalSize(node.getSize());
-            if (node.isSensitive()) {
-                stats.setSensitiveFiles(1);  // 敏感文件计数
+
+            int next = 0;
+            for (TreeBuildTask subtask : subtasks) {
+                subtask.join();
+                while (children.get(next) != null) {
+                    next++;
+                }
+                children.set(next, subtask.node);
+                stats.add(subtask.stats);
             }
+            node.setChildren(children);
         }
+    }
 
-        return stats;
+    // 由一次属性读取的结果构建节点（不含children）
+    private FileInfo toNode(Path path, BasicFileAttributes attrs, Pattern keywordPattern, KeywordMatcher contentMatcher) {
+        FileInfo node = new FileInfo();
+        node.setName(path.getFileName().toString());
+        node.setPath(path.toString());
+        node.setDirectory(attrs.isDirectory());
+        node.setLastModifiedTime(attrs.lastModifiedTime().toString());  // 转为字符串
+
+        // 对所有节点（包括目录）进行敏感词检测
+        boolean isSensitive = isSensitiveName(path, keywordPattern);
+        if (!isSensitive && contentMatcher != null && attrs.isRegularFile()) {
+            isSensitive = contentScanService.containsSensitive(path, attrs, contentMatcher);
+        }
+        node.setSensitive(isSensitive);
+
+        if (!attrs.isDirectory()) {
+            // 文件：设置大小
+            node.setSize(attrs.size());
+        }
+        return node;
+    }
+
+    // 关键词中的正则特殊字符（|除外）按字面量处理，不区分大小写，匹配任意关键词
+    private Pattern compileKeywords(String sensitiveKeywords) {
+        String safeKeywords = sensitiveKeywords.replaceAll("[.*+?^${}()\\[\\]\\\\]", "\\\\$0");
+        return Pattern.compile("(?i).*(" + safeKeywords + ").*");
+    }
+
+    private boolean isSensitiveName(Path path, Pattern keywordPattern) {
+        Path fileName = path.getFileName();
+        return fileName != null && keywordPattern.matcher(fileName.toString()).matches();
+    }
+
+    private String defaultKeywords(String sensitiveKeywords) {
+        return sensitiveKeywords == null || sensitiveKeywords.isEmpty() ? DEFAULT_SENSITIVE_KEYWORDS : sensitiveKeywords;
+    }
+
+    public Path checkDirectory(String folderPath) {
+        Path path = Paths.get(folderPath);
+        // 验证路径合法性
+        if (!Files.exists(path) || !Files.isDirectory(path)) {
+            throw new IllegalArgumentException("路径不存在或不是目录: " + folderPath);
+        }
+        return path;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        treePool.shutdownNow();
+    }
+
+    // 一次建树共享的参数：敏感词、内容匹配器、深度和条目数限制
+    private static class TreeContext {
+        final Pattern keywordPattern;
+        final KeywordMatcher contentMatcher;
+        final int maxDepth;
+        final int maxEntries;
+        final AtomicInteger entries = new AtomicInteger();
+
+        TreeContext(Pattern keywordPattern, KeywordMatcher contentMatcher, int maxDepth, int maxEntries) {
+            this.keywordPattern = keywordPattern;
+            this.contentMatcher = contentMatcher;
+            this.maxDepth = maxDepth;
+            this.maxEntries = maxEntries;
+        }
+
+        void countEntry() {
+            if (entries.incrementAndGet() > maxEntries) {
+                throw new IllegalStateException("目录条目超过" + maxEntries + "个，请使用分页接口 /api/analyze/children 按需加载");
+            }
+        }
+    }
+
+    private static class ResidentNode {
+        final CompactTree tree;
+        final int node;
+
+        ResidentNode(CompactTree tree, int node) {
+            this.tree = tree;
+            this.node = node;
+        }
     }
-}
\ No newline at end of file
+}
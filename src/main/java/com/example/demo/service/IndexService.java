@@ -1,66 +1,211 @@
 package com.example.demo.service;
 
 
+import com.example.demo.controller.ConfigController;
 import com.example.demo.entity.BackupLog;
-import com.example.demo.repository.BackupLogRepository;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import com.example.demo.entity.Config;
+import com.example.demo.repository.BackupLogCatalog;
+import com.example.demo.repository.ConfigRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.FileOutputStream;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * 备份索引导出：按任务流式读取 backup_log，写成 xlsx（SXSSF，内存中只保留固定行数）或 CSV，
+ * 全程不把记录列表或整个工作簿放进内存。任务完成后由单线程执行器异步生成，不阻塞备份线程
+ */
+@Slf4j
 @Service
 public class IndexService {
     @Autowired
-    private BackupLogRepository logRepository;
+    private BackupLogCatalog logCatalog;
+    @Autowired
+    private ConfigRepository configRepository;
 
-    public void generateIndex(Long taskId) throws Exception {
-        List<BackupLog> logs = (List<BackupLog>) logRepository.findAllByTaskId(taskId);
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Backup Index");
+    public static final String FORMAT_XLSX = "xlsx";
+    public static final String FORMAT_CSV = "csv";
+    private static final int ROW_WINDOW = 200;   // SXSSF 内存中保留的行数，超出的行写入临时文件
+    private static final int MAX_SHEET_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final String[] HEADERS = {
+            "ID", "Filename", "Disk ID", "Target Path", "Backup Time", "Checksum", "Status", "Transfer Offset"};
 
-        // 创建表头
-        Row header = sheet.createRow(0);
-        header.createCell(0).setCellValue("ID");
-        header.createCell(1).setCellValue("Filename");
-        header.createCell(2).setCellValue("Disk ID");
-        header.createCell(3).setCellValue("Target Path");
-        header.createCell(4).setCellValue("Backup Time");
-        header.createCell(5).setCellValue("Checksum");
-
-        // 填充数据
-        int rowNum = 1;
-        for (BackupLog log : logs) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(log.getId());
-            row.createCell(1).setCellValue(log.getFilename());
-            row.createCell(2).setCellValue(log.getDiskId());
-            row.createCell(3).setCellValue(log.getTargetPath());
-            row.createCell(4).setCellValue(log.getBackupTime());
-            row.createCell(5).setCellValue(log.getChecksum());
+    // 单线程：同一时间只导出一个索引，避免多个大任务同时完成时争抢磁盘
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "index-export");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        exportExecutor.shutdown();
+    }
+
+    /**
+     * 异步生成索引，失败只记录日志
+     */
+    public Future<?> submit(Long taskId) {
+        return exportExecutor.submit(() -> {
+            try {
+                generateIndex(taskId);
+            } catch (Exception e) {
+                log.error("【索引生成失败】任务ID: {}", taskId, e);
+            }
+        });
+    }
+
+    /**
+     * 生成索引文件，更新 backup_log.index_path，并同步一份到目标盘
+     *
+     * @return 索引文件路径
+     */
+    public String generateIndex(Long taskId) throws IOException {
+        long start = System.currentTimeMillis();
+        String format = getFormat();
+        Path indexDir = Paths.get(System.getProperty("user.home"), "backup", "indexes");
+        Files.createDirectories(indexDir);
+        Path indexPath = indexDir.resolve("index_" + taskId + "." + format);
+
+        // 先写临时文件，完成后替换，读取方不会看到写了一半的索引
+        Path tmp = indexDir.resolve("index_" + taskId + "." + format + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            export(taskId, format, out);
         }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("【索引生成】已保存索引文件到: {}，耗时 {} ms", indexPath, System.currentTimeMillis() - start);
+
+        logCatalog.updateIndexPath(taskId, indexPath.toString());
 
-        // 保存索引文件
-        String indexPath = "/backup/index_" + taskId + ".xlsx";
-        try (FileOutputStream fos = new FileOutputStream(indexPath)) {
-            workbook.write(fos);
+        String firstTargetPath = logCatalog.findFirstTargetPath(taskId);
+        if (firstTargetPath != null) {
+            Path targetIndexPath = Paths.get(firstTargetPath)
+                    .getParent()
+                    .resolve("indexes")
+                    .resolve(indexPath.getFileName());
+            Files.createDirectories(targetIndexPath.getParent());
+            Files.copy(indexPath, targetIndexPath, StandardCopyOption.REPLACE_EXISTING);
+            log.info("【索引同步】已同步索引到目标盘: {}", targetIndexPath);
         }
-        workbook.close();
+        return indexPath.toString();
+    }
 
-        // 更新 backup_log.index_path
-        for (BackupLog log : logs) {
-            log.setIndexPath(indexPath);
-            logRepository.save(log);
+    /**
+     * 把任务的索引按指定格式写到输出流（不关闭输出流）
+     */
+    public void export(Long taskId, String format, OutputStream out) throws IOException {
+        if (FORMAT_CSV.equalsIgnoreCase(format)) {
+            exportCsv(taskId, out);
+        } else {
+            exportXlsx(taskId, out);
         }
+    }
 
-        // 同步到目标盘和云端（模拟 SMB 和云存储）
-        Files.copy(Paths.get(indexPath), Paths.get("/smb/share/index_" + taskId + ".xlsx"), StandardCopyOption.REPLACE_EXISTING);
-        // 云存储API调用（示例，需替换为实际云存储API）
-        // CloudStorageApi.upload(indexPath);
+    public String getFormat() {
+        Config config = configRepository.findByConfigKey(ConfigController.INDEX_FORMAT);
+        return config != null && FORMAT_CSV.equalsIgnoreCase(config.getConfigValue().trim()) ? FORMAT_CSV : FORMAT_XLSX;
+    }
+
+    private void exportXlsx(Long taskId, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            // 单个工作表最多 1048576 行，超出后续写到新的工作表
+            Sheet[] sheet = {createSheet(workbook, 1)};
+            int[] rowNum = {1};
+            logCatalog.forEachByTask(taskId, backupLog -> {
+                if (rowNum[0] == MAX_SHEET_ROWS) {
+                    sheet[0] = createSheet(workbook, workbook.getNumberOfSheets() + 1);
+                    rowNum[0] = 1;
+                }
+                Row row = sheet[0].createRow(rowNum[0]++);
+                row.createCell(0).setCellValue(backupLog.getId());
+                row.createCell(1).setCellValue(backupLog.getFilename());
+                row.createCell(2).setCellValue(backupLog.getDiskId());
+                row.createCell(3).setCellValue(backupLog.getTargetPath());
+                row.createCell(4).setCellValue(backupLog.getBackupTime());
+                row.createCell(5).setCellValue(backupLog.getChecksum());
+                row.createCell(6).setCellValue(backupLog.getStatus());
+                row.createCell(7).setCellValue(backupLog.getTransferOffset() != null ? backupLog.getTransferOffset() : 0);
+            });
+            workbook.write(out);
+        } finally {
+            // 删除 SXSSF 的临时文件
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private Sheet createSheet(SXSSFWorkbook workbook, int number) {
+        Sheet sheet = workbook.createSheet(number == 1 ? "Backup Index" : "Backup Index " + number);
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < HEADERS.length; i++) {
+            header.createCell(i).setCellValue(HEADERS[i]);
+        }
+        return sheet;
+    }
+
+    private void exportCsv(Long taskId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        // UTF-8 BOM，Excel 打开时中文文件名不会乱码
+        writer.write('\uFEFF');
+        writer.write(String.join(",", HEADERS));
+        writer.write("\r\n");
+        try {
+            logCatalog.forEachByTask(taskId, backupLog -> {
+                try {
+                    writeCsvRow(writer, backupLog);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private void writeCsvRow(Writer writer, BackupLog backupLog) throws IOException {
+        writer.write(String.valueOf(backupLog.getId()));
+        writer.write(',');
+        writer.write(csvField(backupLog.getFilename()));
+        writer.write(',');
+        writer.write(backupLog.getDiskId() != null ? String.valueOf(backupLog.getDiskId()) : "");
+        writer.write(',');
+        writer.write(csvField(backupLog.getTargetPath()));
+        writer.write(',');
+        writer.write(csvField(backupLog.getBackupTime()));
+        writer.write(',');
+        writer.write(csvField(backupLog.getChecksum()));
+        writer.write(',');
+        writer.write(csvField(backupLog.getStatus()));
+        writer.write(',');
+        writer.write(String.valueOf(backupLog.getTransferOffset() != null ? backupLog.getTransferOffset() : 0));
+        writer.write("\r\n");
+    }
+
+    // RFC 4180：含逗号、引号或换行的字段加双引号，内部引号写两次
+    private String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
     }
-}
\ No newline at end of file
+}
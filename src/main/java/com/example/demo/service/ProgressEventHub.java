@@ -0,0 +1,266 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.BackupLog;
+import com.example.demo.model.TaskProgress;
+import com.example.demo.model.TransferRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进度事件源：断点（breakpoint）、速率统计（telemetry）和任务进度（progress）都先发布到这里，
+ * 同一对象的多次更新在待推送表中合并，由推送线程按固定频率（4Hz）统一编号、序列化一次，再交给各个推送通道
+ * （WebSocket、SSE）。备份线程只做一次 Map 写入，不等待序列化和网络。
+ * <p>
+ * 每个对象的最新事件保留在内存中供新连接获取快照（运行中的保留到结束，结束后保留60秒），
+ * 最近的事件按编号保留在回放缓冲区中，断线重连的 SSE 客户端据此补发 Last-Event-ID 之后的事件
+ */
+@Slf4j
+@Service
+public class ProgressEventHub {
+
+    public static final String BREAKPOINT = "breakpoint";
+    public static final String TELEMETRY = "telemetry";
+    public static final String PROGRESS = "progress";
+
+    private static final long FLUSH_INTERVAL_MS = 250;
+    private static final int REPLAY_LIMIT = 4096;
+    private static final long FINISHED_RETENTION_MS = 60_000;
+    private static final Set<String> ACTIVE_STATUSES = Set.of("PENDING", "RUNNING", "PAUSED");
+
+    /**
+     * 推送通道，在推送线程中调用，实现方不能阻塞
+     */
+    public interface Listener {
+        void onEvents(List<Event> events);
+    }
+
+    private final ObjectMapper objectMapper;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, Event> latest = new ConcurrentHashMap<>();
+    private final Deque<Event> replay = new ArrayDeque<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "progress-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ProgressEventHub(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.scheduleAtFixedRate(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 断点的当前状态（保存副本，调用方可以继续修改原对象）
+     */
+    public void publishBreakpoint(BackupLog backupLog) {
+        BackupLog copy = copyOf(backupLog);
+        pending.put(BREAKPOINT + ":" + keyOf(copy),
+                new Pending(BREAKPOINT, copy.getTaskId(), copy.getDiskId(), copy.getStatus(), copy));
+    }
+
+    public void publishTelemetry(TransferRate rate) {
+        pending.put(TELEMETRY + ":" + rate.getTaskId(),
+                new Pending(TELEMETRY, rate.getTaskId(), rate.getDiskId(), rate.getStatus(), rate));
+    }
+
+    /**
+     * 任务进度（任务级事件不属于某一块磁盘，按磁盘订阅时收不到）
+     */
+    public void publishProgress(TaskProgress progress) {
+        pending.put(PROGRESS + ":" + progress.getTaskId(),
+                new Pending(PROGRESS, progress.getTaskId(), null, progress.getStatus(), progress));
+    }
+
+    /**
+     * 当前状态的快照：匹配的任务或磁盘上每个对象的最新事件，按编号排序；两个集合都为空时返回全部
+     */
+    public List<Event> snapshot(Set<Long> taskIds, Set<Long> diskIds) {
+        boolean all = taskIds.isEmpty() && diskIds.isEmpty();
+        List<Event> snapshot = new ArrayList<>();
+        for (Event event : latest.values()) {
+            if (all || event.matches(taskIds, diskIds)) {
+                snapshot.add(event);
+            }
+        }
+        snapshot.sort(Comparator.comparingLong(Event::getId));
+        return snapshot;
+    }
+
+    /**
+     * 编号大于 lastId 的事件；lastId 之后的事件已经不在回放缓冲区中（或编号不属于本次运行）时返回 null，
+     * 调用方应改为发送快照
+     */
+    public List<Event> eventsSince(long lastId) {
+        synchronized (replay) {
+            if (lastId > sequence.get()) {
+                return null;
+            }
+            Event oldest = replay.peekFirst();
+            if (oldest != null && oldest.id > lastId + 1) {
+                return null;
+            }
+            List<Event> events = new ArrayList<>();
+            Iterator<Event> it = replay.descendingIterator();
+            while (it.hasNext()) {
+                Event event = it.next();
+                if (event.id <= lastId) {
+                    break;
+                }
+                events.add(event);
+            }
+            Collections.reverse(events);
+            return events;
+        }
+    }
+
+    private void flush() {
+        try {
+            evictFinished();
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Event> events = new ArrayList<>(pending.size());
+            for (String key : pending.keySet()) {
+                Pending item = pending.remove(key);
+                if (item != null) {
+                    Event event = new Event(sequence.incrementAndGet(), key, item, serialize(item));
+                    latest.put(key, event);
+                    events.add(event);
+                }
+            }
+            synchronized (replay) {
+                replay.addAll(events);
+                while (replay.size() > REPLAY_LIMIT) {
+                    replay.removeFirst();
+                }
+            }
+            for (Listener listener : listeners) {
+                try {
+                    listener.onEvents(events);
+                } catch (Exception e) {
+                    log.warn("分发进度事件失败: {}", e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("进度事件推送失败: {}", e.getMessage());
+        }
+    }
+
+    // 断点保持原来的格式；其他事件加上 type 字段，便于 WebSocket 客户端区分
+    private String serialize(Pending item) throws Exception {
+        if (BREAKPOINT.equals(item.type)) {
+            return objectMapper.writeValueAsString(item.payload);
+        }
+        ObjectNode node = objectMapper.createObjectNode().put("type", item.type);
+        node.setAll((ObjectNode) objectMapper.valueToTree(item.payload));
+        return objectMapper.writeValueAsString(node);
+    }
+
+    private void evictFinished() {
+        long expired = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        latest.values().removeIf(event -> event.createdAt < expired && !ACTIVE_STATUSES.contains(event.status));
+    }
+
+    // 同一条备份记录的更新互相覆盖；未入库的失败记录没有ID，按任务和路径区分
+    private static String keyOf(BackupLog backupLog) {
+        return backupLog.getId() != null ? String.valueOf(backupLog.getId())
+                : backupLog.getTaskId() + ":" + backupLog.getTargetPath();
+    }
+
+    private static BackupLog copyOf(BackupLog source) {
+        BackupLog copy = new BackupLog();
+        copy.setId(source.getId());
+        copy.setTaskId(source.getTaskId());
+        copy.setFilename(source.getFilename());
+        copy.setDiskId(source.getDiskId());
+        copy.setTargetPath(source.getTargetPath());
+        copy.setBackupTime(source.getBackupTime());
+        copy.setChecksum(source.getChecksum());
+        copy.setStatus(source.getStatus());
+        copy.setTransferOffset(source.getTransferOffset());
+        copy.setIndexPath(source.getIndexPath());
+        return copy;
+    }
+
+    private static class Pending {
+        final String type;
+        final Long taskId;
+        final Long diskId;
+        final String status;
+        final Object payload;
+
+        Pending(String type, Long taskId, Long diskId, String status, Object payload) {
+            this.type = type;
+            this.taskId = taskId;
+            this.diskId = diskId;
+            this.status = status;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * 已编号、已序列化的事件，各推送通道共用同一份 JSON
+     */
+    public static class Event {
+        private final long id;
+        private final String key;        // 同一对象的事件 key 相同，后一条可以替代前一条
+        private final String type;
+        private final Long taskId;
+        private final Long diskId;
+        private final String status;
+        private final String json;
+        private final long createdAt = System.currentTimeMillis();
+
+        Event(long id, String key, Pending item, String json) {
+            this.id = id;
+            this.key = key;
+            this.type = item.type;
+            this.taskId = item.taskId;
+            this.diskId = item.diskId;
+            this.status = item.status;
+            this.json = json;
+        }
+
+        public long getId() { return id; }
+        public String getKey() { return key; }
+        public String getType() { return type; }
+        public Long getTaskId() { return taskId; }
+        public Long getDiskId() { return diskId; }
+        public String getJson() { return json; }
+
+        public boolean matches(Set<Long> taskIds, Set<Long> diskIds) {
+            return taskIds.contains(taskId) || (diskId != null && diskIds.contains(diskId));
+        }
+    }
+}
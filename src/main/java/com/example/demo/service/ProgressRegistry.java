@@ -0,0 +1,260 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.BackupTask;
+import com.example.demo.model.TaskProgress;
+import com.example.demo.model.TransferRate;
+import com.example.demo.repository.BackupTaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 运行中任务的进度登记表：执行线程更新内存中的状态，进度查询直接读内存，不访问数据库。
+ * 每个文件完成后只更新内存，按检查点间隔（5秒）写一次 backup_task，状态变化（暂停、完成、失败等）立即写入。
+ * 暂停和取消请求也先写到这里，执行线程从这里读取，不需要每次查询数据库。
+ * 每次变化同时发布到 ProgressEventHub，推送给 WebSocket 和 SSE 客户端
+ */
+@Slf4j
+@Service
+public class ProgressRegistry {
+    @Autowired
+    private BackupTaskRepository taskRepository;
+    @Autowired
+    private TelemetryService telemetryService;
+    @Autowired
+    private ProgressEventHub progressEventHub;
+
+    private static final long CHECKPOINT_INTERVAL_MS = 5000;
+    private static final long FINISHED_RETENTION_MS = 60_000;   // 结束的任务在内存中保留的时间
+
+    private final Map<Long, LiveTask> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * 执行线程开始处理任务时登记，并立即写入数据库
+     */
+    public void track(BackupTask task) {
+        evictFinished();
+        LiveTask live = new LiveTask(task.getId());
+        live.copyFrom(task);
+        tasks.put(task.getId(), live);
+        persist(task);
+    }
+
+    /**
+     * 更新内存中的进度，距上次写入超过检查点间隔时才写数据库
+     */
+    public void checkpoint(BackupTask task) {
+        LiveTask live = tasks.get(task.getId());
+        if (live == null) {
+            taskRepository.save(task);
+            return;
+        }
+        live.copyFrom(task);
+        publish(live);
+        if (System.currentTimeMillis() - live.persistedAt >= CHECKPOINT_INTERVAL_MS) {
+            save(live, task);
+        }
+    }
+
+    /**
+     * 更新内存中的状态并立即写入数据库（状态变化时使用）
+     */
+    public void persist(BackupTask task) {
+        LiveTask live = tasks.get(task.getId());
+        if (live == null) {
+            taskRepository.save(task);
+            return;
+        }
+        live.copyFrom(task);
+        save(live, task);
+        publish(live);
+    }
+
+    private void save(LiveTask live, BackupTask task) {
+        // 暂停和取消请求可能在执行线程持有的实体之后到达，以登记表为准
+        task.setPaused(live.paused);
+        if (live.canceled) {
+            task.setStatus("CANCELED");
+        }
+        taskRepository.save(task);
+        live.persistedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 执行线程结束时调用，保留最终状态一段时间供查询
+     */
+    public void finish(BackupTask task) {
+        LiveTask live = tasks.get(task.getId());
+        if (live != null) {
+            live.copyFrom(task);
+            if (live.canceled) {
+                live.status = "CANCELED";
+            }
+            live.finishedAt = System.currentTimeMillis();
+            publish(live);
+        }
+    }
+
+    public boolean isLive(Long taskId) {
+        LiveTask live = tasks.get(taskId);
+        return live != null && live.finishedAt == 0;
+    }
+
+    public boolean isPaused(Long taskId) {
+        LiveTask live = tasks.get(taskId);
+        return live != null && live.paused;
+    }
+
+    public boolean isCanceled(Long taskId) {
+        LiveTask live = tasks.get(taskId);
+        return live != null && live.canceled;
+    }
+
+    /**
+     * 暂停或继续运行中的任务，任务不在运行时返回 false
+     */
+    public boolean setPaused(Long taskId, boolean paused) {
+        LiveTask live = tasks.get(taskId);
+        if (live == null || live.finishedAt != 0) {
+            return false;
+        }
+        live.paused = paused;
+        publish(live);
+        return true;
+    }
+
+    public void markCanceled(Long taskId) {
+        LiveTask live = tasks.get(taskId);
+        if (live != null) {
+            live.canceled = true;
+            live.paused = false;
+            publish(live);
+        }
+    }
+
+    /**
+     * 任务进度：运行中（或刚结束）的任务读内存，其他任务读数据库
+     */
+    public TaskProgress get(Long taskId) {
+        TaskProgress progress = getLive(taskId);
+        if (progress != null) {
+            return progress;
+        }
+        BackupTask task = taskRepository.findById(taskId)
+                .orElseThrow(() -> new IllegalArgumentException("任务不存在: " + taskId));
+        return fromTask(task);
+    }
+
+    /**
+     * 批量查询进度，不在内存中的任务一次性从数据库读取，不存在的任务ID忽略
+     */
+    public List<TaskProgress> getAll(Collection<Long> taskIds) {
+        Map<Long, TaskProgress> result = new LinkedHashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long taskId : taskIds) {
+            TaskProgress progress = getLive(taskId);
+            if (progress != null) {
+                result.put(taskId, progress);
+            } else {
+                result.put(taskId, null);
+                missing.add(taskId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (BackupTask task : taskRepository.findAllById(missing)) {
+                result.put(task.getId(), fromTask(task));
+            }
+        }
+        List<TaskProgress> list = new ArrayList<>(result.size());
+        result.values().forEach(progress -> {
+            if (progress != null) {
+                list.add(progress);
+            }
+        });
+        return list;
+    }
+
+    private TaskProgress getLive(Long taskId) {
+        LiveTask live = tasks.get(taskId);
+        if (live == null) {
+            return null;
+        }
+        if (live.finishedAt != 0 && System.currentTimeMillis() - live.finishedAt > FINISHED_RETENTION_MS) {
+            tasks.remove(taskId, live);
+            return null;
+        }
+        return toProgress(live);
+    }
+
+    private void publish(LiveTask live) {
+        progressEventHub.publishProgress(toProgress(live));
+    }
+
+    private TaskProgress toProgress(LiveTask live) {
+        Long taskId = live.taskId;
+        TaskProgress progress = new TaskProgress();
+        progress.setTaskId(taskId);
+        progress.setStatus(live.canceled ? "CANCELED" : live.paused ? "PAUSED" : live.status);
+        progress.setPaused(live.paused);
+        progress.setTotalSize(live.totalSize);
+        progress.setCompletedSize(live.completedSize);
+        progress.setLive(true);
+        double percent = live.totalSize > 0 ? live.completedSize * 100.0 / live.totalSize : 0;
+        // 正在复制的大文件按已写入的字节计算
+        TransferRate rate = telemetryService.getTask(taskId);
+        if (rate != null) {
+            progress.setTransferredBytes(rate.getTransferredBytes());
+            progress.setBytesPerSecond(rate.getBytesPerSecond());
+            progress.setFilesPerSecond(rate.getFilesPerSecond());
+            progress.setEtaSeconds(rate.getEtaSeconds());
+            percent = Math.max(percent, rate.getProgress());
+        }
+        if ("COMPLETED".equals(live.status)) {
+            percent = 100;
+        }
+        progress.setProgress(Math.min(100.0, percent));
+        return progress;
+    }
+
+    private static TaskProgress fromTask(BackupTask task) {
+        TaskProgress progress = new TaskProgress();
+        progress.setTaskId(task.getId());
+        progress.setStatus(task.getStatus());
+        progress.setPaused(task.isPaused());
+        progress.setTotalSize(task.getTotalSize());
+        progress.setCompletedSize(task.getCompletedSize());
+        double percent = task.getTotalSize() > 0 ? task.getCompletedSize() * 100.0 / task.getTotalSize() : 0;
+        progress.setProgress(Math.min(100.0, percent));
+        return progress;
+    }
+
+    private void evictFinished() {
+        long expired = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+        tasks.values().removeIf(live -> live.finishedAt != 0 && live.finishedAt < expired);
+    }
+
+    private static class LiveTask {
+        final Long taskId;
+        volatile String status;
+        volatile long totalSize;
+        volatile long completedSize;
+        volatile boolean paused;
+        volatile boolean canceled;
+        volatile long persistedAt;
+        volatile long finishedAt;
+
+        LiveTask(Long taskId) {
+            this.taskId = taskId;
+        }
+
+        // 暂停和取消标志只由请求方修改，不从执行线程的实体覆盖
+        void copyFrom(BackupTask task) {
+            status = task.getStatus();
+            totalSize = task.getTotalSize();
+            completedSize = task.getCompletedSize();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.demo.service;
+
+import com.example.demo.controller.ConfigController;
+import com.example.demo.dto.SearchQuery;
+import com.example.demo.entity.BackupLog;
+import com.example.demo.entity.Config;
+import com.example.demo.model.RetentionReport;
+import com.example.demo.repository.ConfigRepository;
+import com.example.demo.util.SqliteWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 备份记录保留策略，后台定期增量执行：
+ * <pre>
+ * 清理 log_compact_enabled 为 true 时（默认关闭），同一目标盘、同一目标路径（含 _copyN 副本后缀）已有更新的成功备份时，
+ *      删除更早的记录（成功、失败、中断、取消）
+ * 归档 早于 log_archive_days 天的记录（默认0，不归档）按月写入 gzip 压缩的 JSON Lines 分区文件（~/backup/log-archive/yyyy-MM/），
+ *      分区清单登记在 log_archive_partition 表中，然后从主库删除；搜索时指定 archived=true 可按需扫描分区
+ * </pre>
+ * 每批处理后按 retention_io_budget（字节/秒）限速，不与备份争抢磁盘。
+ * 分区文件先写临时文件再原子改名，登记清单和删除记录在同一个写事务中完成，中途失败时记录仍在主库，
+ * 未登记的分区文件在下次执行时删除。归档记录的校验和保留在 archived_checksum 表中，备份时的去重判断仍然可以命中
+ */
+@Slf4j
+@Service
+public class RetentionService {
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private SqliteWriter writer;
+    @Autowired
+    private ConfigRepository configRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final int COMPACT_WINDOW = 5000;       // 每批检查的ID范围
+    private static final int ARCHIVE_BATCH = 5000;        // 每批归档的记录数
+    private static final long DEFAULT_ARCHIVE_DAYS = 0;      // 默认不归档，需要时通过配置开启
+    private static final long DEFAULT_IO_BUDGET = 4L * 1024 * 1024;
+    private static final long INITIAL_DELAY_MINUTES = 10;
+    private static final long INTERVAL_MINUTES = 6 * 60;
+    private static final RowMapper<BackupLog> LOG_MAPPER = new BeanPropertyRowMapper<>(BackupLog.class);
+
+    // 记录大小的估算：文本列长度加上整数列和行头的固定开销
+    private static final String ROW_BYTES = "(length(l.filename) + length(l.target_path) + length(l.checksum) "
+            + "+ length(l.backup_time) + length(l.status) + ifnull(length(l.index_path), 0) + 40)";
+    private static final String SUPERSEDED_SQL = "SELECT l.id, " + ROW_BYTES + " FROM backup_log l "
+            + "WHERE l.id >= ? AND l.id < ? AND l.status IN ('SUCCESS', 'FAILED', 'INTERRUPTED', 'CANCELED') "
+            + "AND EXISTS (SELECT 1 FROM backup_log n WHERE n.target_path = l.target_path AND n.disk_id = l.disk_id "
+            + "AND n.status = 'SUCCESS' AND n.id > l.id)";
+
+    private final Path archiveDir = Paths.get(System.getProperty("user.home"), "backup", "log-archive");
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private volatile RetentionReport lastReport;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "log-retention");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void schedule() {
+        executor.scheduleWithFixedDelay(this::runQuietly, INITIAL_DELAY_MINUTES, INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 立即在后台执行一次，已在执行时返回 false
+     */
+    public boolean trigger() {
+        if (running.get()) {
+            return false;
+        }
+        executor.execute(this::runQuietly);
+        return true;
+    }
+
+    /**
+     * 正在执行时为当前进度，否则为最近一次的结果
+     */
+    public RetentionReport getLastReport() {
+        return lastReport;
+    }
+
+    private void runQuietly() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        RetentionReport report = new RetentionReport();
+        report.setRunning(true);
+        report.setStartTime(LocalDateTime.now().toString());
+        lastReport = report;
+        long start = System.currentTimeMillis();
+        IoBudget budget = new IoBudget(getIoBudget());
+        try {
+            removeUnregisteredFiles();
+            // 清理会永久删除历史任务的记录（任务视图和索引导出随之变化），只在配置开启后执行
+            if (isCompactEnabled()) {
+                compact(report, budget);
+            }
+            long days = getArchiveDays();
+            if (days > 0) {
+                archive(LocalDateTime.now().minusDays(days).toString(), report, budget);
+            }
+            log.info("备份记录清理完成: 删除 {} 条（约 {} 字节），归档 {} 条（{} 字节，压缩后 {} 字节，{} 个分区），限速等待 {} ms",
+                    report.getCompactedRows(), report.getCompactedBytes(), report.getArchivedRows(),
+                    report.getArchivedBytes(), report.getArchiveFileBytes(), report.getPartitionsWritten(),
+                    budget.throttledMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.setError("已中断");
+        } catch (Exception e) {
+            log.error("备份记录清理失败", e);
+            report.setError(e.getMessage());
+        } finally {
+            report.setFreeBytes(freeBytes());
+            report.setThrottledMillis(budget.throttledMillis);
+            report.setElapsedMillis(System.currentTimeMillis() - start);
+            report.setEndTime(LocalDateTime.now().toString());
+            report.setRunning(false);
+            running.set(false);
+        }
+    }
+
+    private void compact(RetentionReport report, IoBudget budget) throws InterruptedException {
+        Long maxId = readJdbcTemplate.queryForObject("SELECT MAX(id) FROM backup_log", Long.class);
+        if (maxId == null) {
+            return;
+        }
+        for (long low = 0; low <= maxId; low += COMPACT_WINDOW) {
+            List<long[]> rows = readJdbcTemplate.query(SUPERSEDED_SQL,
+                    (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, low, low + COMPACT_WINDOW);
+            if (rows.isEmpty()) {
+                continue;
+            }
+            List<Long> ids = new ArrayList<>(rows.size());
+            long bytes = 0;
+            for (long[] row : rows) {
+                ids.add(row[0]);
+                bytes += row[1];
+            }
+            writer.execute(jdbc -> jdbc.batchUpdate("DELETE FROM backup_log WHERE id = ?", ids, ids.size(),
+                    (ps, id) -> ps.setLong(1, id)));
+            report.setCompactedRows(report.getCompactedRows() + ids.size());
+            report.setCompactedBytes(report.getCompactedBytes() + bytes);
+            budget.acquire(bytes);
+        }
+    }
+
+    private void archive(String cutoff, RetentionReport report, IoBudget budget) throws IOException, InterruptedException {
+        long afterId = 0;
+        while (true) {
+            // 运行中和暂停的记录可能被续传，不归档
+            List<BackupLog> logs = readJdbcTemplate.query("SELECT * FROM backup_log WHERE id > ? AND backup_time < ? "
+                            + "AND status NOT IN ('RUNNING', 'PAUSED') ORDER BY id LIMIT ?",
+                    LOG_MAPPER, afterId, cutoff, ARCHIVE_BATCH);
+            if (logs.isEmpty()) {
+                return;
+            }
+            afterId = logs.get(logs.size() - 1).getId();
+
+            Map<String, List<BackupLog>> byMonth = new TreeMap<>();
+            for (BackupLog backupLog : logs) {
+                byMonth.computeIfAbsent(monthOf(backupLog.getBackupTime()), k -> new ArrayList<>()).add(backupLog);
+            }
+            List<Partition> partitions = new ArrayList<>();
+            try {
+                for (Map.Entry<String, List<BackupLog>> entry : byMonth.entrySet()) {
+                    partitions.add(writePartition(entry.getKey(), entry.getValue()));
+                }
+                String now = LocalDateTime.now().toString();
+                writer.execute(jdbc -> {
+                    jdbc.batchUpdate("INSERT OR IGNORE INTO archived_checksum (checksum) VALUES (?)", logs, logs.size(),
+                            (ps, backupLog) -> ps.setString(1, backupLog.getChecksum()));
+                    for (Partition p : partitions) {
+                        jdbc.update("INSERT INTO log_archive_partition (month, file_path, first_id, last_id, row_count, "
+                                        + "raw_bytes, file_bytes, min_time, max_time, created_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                                p.month, p.file.toString(), p.firstId, p.lastId, p.rows, p.rawBytes, p.fileBytes,
+                                p.minTime, p.maxTime, now);
+                    }
+                    return jdbc.batchUpdate("DELETE FROM backup_log WHERE id = ?", logs, logs.size(),
+                            (ps, backupLog) -> ps.setLong(1, backupLog.getId()));
+                });
+            } catch (IOException | RuntimeException e) {
+                for (Partition p : partitions) {
+                    Files.deleteIfExists(p.file);
+                }
+                throw e;
+            }
+
+            long rawBytes = 0;
+            for (Partition p : partitions) {
+                rawBytes += p.rawBytes;
+                report.setArchiveFileBytes(report.getArchiveFileBytes() + p.fileBytes);
+            }
+            report.setArchivedRows(report.getArchivedRows() + logs.size());
+            report.setArchivedBytes(report.getArchivedBytes() + rawBytes);
+            report.setPartitionsWritten(report.getPartitionsWritten() + partitions.size());
+            budget.acquire(rawBytes);
+        }
+    }
+
+    private Partition writePartition(String month, List<BackupLog> logs) throws IOException {
+        Path dir = archiveDir.resolve(month);
+        Files.createDirectories(dir);
+        Partition partition = new Partition();
+        partition.month = month;
+        partition.firstId = logs.get(0).getId();
+        partition.lastId = logs.get(logs.size() - 1).getId();
+        partition.rows = logs.size();
+        partition.file = dir.resolve("backup_log_" + partition.firstId + "_" + partition.lastId + ".jsonl.gz");
+        Path temp = dir.resolve(partition.file.getFileName() + ".tmp");
+
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(file, 65536))) {
+            for (BackupLog backupLog : logs) {
+                byte[] line = objectMapper.writeValueAsBytes(backupLog);
+                gzip.write(line);
+                gzip.write('\n');
+                partition.rawBytes += line.length + 1;
+                String time = backupLog.getBackupTime();
+                if (partition.minTime == null || time.compareTo(partition.minTime) < 0) {
+                    partition.minTime = time;
+                }
+                if (partition.maxTime == null || time.compareTo(partition.maxTime) > 0) {
+                    partition.maxTime = time;
+                }
+            }
+            gzip.finish();
+            gzip.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, partition.file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        partition.fileBytes = Files.size(partition.file);
+        return partition;
+    }
+
+    // 写入后未能登记到清单的分区文件（以及残留的临时文件）
+    private void removeUnregisteredFiles() throws IOException {
+        if (!Files.isDirectory(archiveDir)) {
+            return;
+        }
+        Set<String> registered = new HashSet<>(readJdbcTemplate.queryForList(
+                "SELECT file_path FROM log_archive_partition", String.class));
+        try (Stream<Path> files = Files.walk(archiveDir, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (!registered.contains(file.toString())) {
+                    Files.deleteIfExists(file);
+                    log.warn("删除未登记的归档分区文件: {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 在归档分区中搜索（按需解压扫描），按备份时间范围裁剪分区，结果按ID倒序，跳过前 offset 条命中
+     */
+    public List<BackupLog> searchArchive(SearchQuery query, long offset, int limit) {
+        String keyword = query.getKeyword().trim().toLowerCase(Locale.ROOT);
+        boolean prefix = "prefix".equalsIgnoreCase(query.getMode());
+        String from = emptyToNull(query.getFrom());
+        String to = emptyToNull(query.getTo());
+        List<String> files = readJdbcTemplate.queryForList("SELECT file_path FROM log_archive_partition "
+                        + "WHERE (? IS NULL OR max_time >= ?) AND (? IS NULL OR min_time < ?) ORDER BY last_id DESC",
+                String.class, from, from, to, to);
+
+        List<BackupLog> results = new ArrayList<>();
+        long skipped = 0;
+        for (String file : files) {
+            List<BackupLog> matched = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(Paths.get(file)), 65536), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    BackupLog backupLog = objectMapper.readValue(line, BackupLog.class);
+                    if (matches(backupLog, keyword, prefix, query, from, to)) {
+                        matched.add(backupLog);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("读取归档分区失败: {}，原因: {}", file, e.getMessage());
+                continue;
+            }
+            // 分区内按ID升序写入
+            for (int i = matched.size() - 1; i >= 0 && results.size() < limit; i--) {
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+                results.add(matched.get(i));
+            }
+            if (results.size() >= limit) {
+                break;
+            }
+        }
+        return results;
+    }
+
+    private boolean matches(BackupLog backupLog, String keyword, boolean prefix, SearchQuery query, String from, String to) {
+        String filename = backupLog.getFilename() != null ? backupLog.getFilename().toLowerCase(Locale.ROOT) : "";
+        if (prefix) {
+            if (!filename.startsWith(keyword)) {
+                return false;
+            }
+        } else {
+            String targetPath = backupLog.getTargetPath() != null ? backupLog.getTargetPath().toLowerCase(Locale.ROOT) : "";
+            if (!filename.contains(keyword) && !targetPath.contains(keyword)) {
+                return false;
+            }
+        }
+        if (query.getDiskId() != null && !query.getDiskId().equals(backupLog.getDiskId())) {
+            return false;
+        }
+        if (query.getTaskId() != null && !query.getTaskId().equals(backupLog.getTaskId())) {
+            return false;
+        }
+        if (query.getStatus() != null && !query.getStatus().isEmpty() && !query.getStatus().equals(backupLog.getStatus())) {
+            return false;
+        }
+        String time = backupLog.getBackupTime();
+        return (from == null || time.compareTo(from) >= 0) && (to == null || time.compareTo(to) < 0);
+    }
+
+    private long freeBytes() {
+        try {
+            Long pages = readJdbcTemplate.queryForObject("PRAGMA freelist_count", Long.class);
+            Long pageSize = readJdbcTemplate.queryForObject("PRAGMA page_size", Long.class);
+            return pages != null && pageSize != null ? pages * pageSize : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static String monthOf(String backupTime) {
+        return backupTime != null && backupTime.length() >= 7 ? backupTime.substring(0, 7) : "unknown";
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    public long getArchiveDays() {
+        return getLong(ConfigController.LOG_ARCHIVE_DAYS, DEFAULT_ARCHIVE_DAYS);
+    }
+
+    public boolean isCompactEnabled() {
+        Config config = configRepository.findByConfigKey(ConfigController.LOG_COMPACT_ENABLED);
+        return config != null && Boolean.parseBoolean(config.getConfigValue().trim());
+    }
+
+    public long getIoBudget() {
+        return getLong(ConfigController.RETENTION_IO_BUDGET, DEFAULT_IO_BUDGET);
+    }
+
+    private long getLong(String key, long defaultValue) {
+        Config config = configRepository.findByConfigKey(key);
+        if (config == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(config.getConfigValue().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class Partition {
+        String month;
+        Path file;
+        long firstId;
+        long lastId;
+        int rows;
+        long rawBytes;
+        long fileBytes;
+        String minTime;
+        String maxTime;
+    }
+
+    /**
+     * 按字节数限速：累计处理量超过 预算 × 已用时间 时休眠补足，预算小于等于0表示不限速
+     */
+    private static class IoBudget {
+        final long bytesPerSecond;
+        final long start = System.nanoTime();
+        long consumed;
+        long throttledMillis;
+
+        IoBudget(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(long bytes) throws InterruptedException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            consumed += bytes;
+            long expectedMillis = consumed * 1000 / bytesPerSecond;
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (expectedMillis > elapsedMillis) {
+                Thread.sleep(expectedMillis - elapsedMillis);
+                throttledMillis += expectedMillis - elapsedMillis;
+            }
+        }
+    }
+}
@@ -1,29 +1,221 @@
 package com.example.demo.service;
 
 
+import com.example.demo.dto.SearchQuery;
 import com.example.demo.entity.BackupLog;
-import com.example.demo.repository.BackupLogRepository;
+import com.example.demo.model.CatalogHit;
+import com.example.demo.repository.BackupLogShardRouter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
+/**
+ * 备份记录搜索：基于 SQLite FTS5 全文索引（trigram 分词，支持任意子串），
+ * 索引表 backup_log_fts 以 backup_log 为外部内容表，由触发器在插入/更新/删除时同步。
+ * 关键词少于3个字符（trigram 无法索引）或 FTS5 不可用时退化为 LIKE 查询
+ */
+@Slf4j
 @Service
+@DependsOnDatabaseInitialization
 public class SearchService {
     @Autowired
-    private BackupLogRepository logRepository;
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    @Qualifier("readJdbcTemplate")
+    private JdbcTemplate readJdbcTemplate;
+    @Autowired
+    private DiskCatalogService diskCatalogService;
+    @Autowired
+    private BackupLogShardRouter shardRouter;
+    @Autowired
+    private RetentionService retentionService;
+
+    private static final int MAX_LIMIT = 1000;
+    private static final int TRIGRAM_MIN_LENGTH = 3;
+    private static final RowMapper<BackupLog> LOG_MAPPER = new BeanPropertyRowMapper<>(BackupLog.class);
+
+    private volatile boolean ftsAvailable = false;
+
+    // FTS5 表和触发器的DDL包含分号，无法放在 schema.sql 中由脚本执行器拆分执行，这里单独创建
+    @PostConstruct
+    public void initIndex() {
+        try {
+            Integer existing = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = 'backup_log_fts'", Integer.class);
+            jdbcTemplate.execute("CREATE VIRTUAL TABLE IF NOT EXISTS backup_log_fts USING fts5("
+                    + "filename, target_path, content='backup_log', content_rowid='id', tokenize='trigram')");
+            jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS backup_log_fts_ai AFTER INSERT ON backup_log BEGIN "
+                    + "INSERT INTO backup_log_fts(rowid, filename, target_path) VALUES (new.id, new.filename, new.target_path); "
+                    + "END");
+            jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS backup_log_fts_ad AFTER DELETE ON backup_log BEGIN "
+                    + "INSERT INTO backup_log_fts(backup_log_fts, rowid, filename, target_path) "
+                    + "VALUES ('delete', old.id, old.filename, old.target_path); "
+                    + "END");
+            jdbcTemplate.execute("CREATE TRIGGER IF NOT EXISTS backup_log_fts_au AFTER UPDATE OF filename, target_path ON backup_log BEGIN "
+                    + "INSERT INTO backup_log_fts(backup_log_fts, rowid, filename, target_path) "
+                    + "VALUES ('delete', old.id, old.filename, old.target_path); "
+                    + "INSERT INTO backup_log_fts(rowid, filename, target_path) VALUES (new.id, new.filename, new.target_path); "
+                    + "END");
+            if (existing == null || existing == 0) {
+                // 首次创建：为已有的备份记录建立索引
+                long start = System.currentTimeMillis();
+                jdbcTemplate.execute("INSERT INTO backup_log_fts(backup_log_fts) VALUES ('rebuild')");
+                log.info("全文索引 backup_log_fts 已建立，耗时 {} ms", System.currentTimeMillis() - start);
+            }
+            ftsAvailable = true;
+        } catch (Exception e) {
+            log.warn("FTS5全文索引不可用，搜索退化为LIKE查询: {}", e.getMessage());
+        }
+    }
 
     public List<BackupLog> searchFiles(String keyword) {
-        List<BackupLog> results = new ArrayList<>();
-        for (BackupLog log : logRepository.findAll()) {
-            if (log.getFilename().contains(keyword) || log.getTargetPath().contains(keyword)) {
-                results.add(log);
+        SearchQuery query = new SearchQuery();
+        query.setKeyword(keyword);
+        query.setLimit(MAX_LIMIT);
+        return search(query);
+    }
+
+    /**
+     * 直接查找目标盘上的二进制目录（不经过数据库），root 为空时并行查找所有已登记的磁盘
+     */
+    public List<CatalogHit> searchCatalogs(String prefix, String checksum, String root, int limit) {
+        return diskCatalogService.search(prefix, checksum, root, limit);
+    }
+
+    public List<BackupLog> search(SearchQuery query) {
+        String keyword = query.getKeyword() != null ? query.getKeyword().trim() : "";
+        if (keyword.isEmpty()) {
+            throw new IllegalArgumentException("搜索关键词不能为空");
+        }
+        boolean prefix = "prefix".equalsIgnoreCase(query.getMode());
+        int limit = Math.max(1, Math.min(query.getLimit(), MAX_LIMIT));
+        int offset = Math.max(0, query.getOffset());
+
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        boolean useFts = ftsAvailable && keyword.codePointCount(0, keyword.length()) >= TRIGRAM_MIN_LENGTH;
+        if (useFts) {
+            // 关键词作为FTS5短语（双引号转义），trigram分词下即为子串匹配
+            String phrase = "\"" + keyword.replace("\"", "\"\"") + "\"";
+            sql.append(" FROM backup_log_fts f JOIN backup_log l ON l.id = f.rowid WHERE backup_log_fts MATCH ?");
+            args.add(prefix ? "filename : " + phrase : phrase);
+        } else {
+            sql.append(" FROM backup_log l WHERE ");
+            if (prefix) {
+                sql.append("1 = 1");
+            } else {
+                sql.append("(l.filename LIKE ? ESCAPE '\\' OR l.target_path LIKE ? ESCAPE '\\')");
+                args.add("%" + escapeLike(keyword) + "%");
+                args.add("%" + escapeLike(keyword) + "%");
             }
         }
-        // 并行查询目标盘和云端（模拟）
-        // results.addAll(smbSearch(keyword));
-        // results.addAll(cloudSearch(keyword));
+        if (prefix) {
+            sql.append(" AND l.filename LIKE ? ESCAPE '\\'");
+            args.add(escapeLike(keyword) + "%");
+        }
+        appendFilters(sql, args, query);
+        String from = sql.toString();
+        List<Object> pageArgs = new ArrayList<>(args);
+        pageArgs.add(limit);
+        pageArgs.add(offset);
+        // 全文检索按相关度排序（文件名命中权重更高），LIKE查询按时间倒序
+        List<BackupLog> results = readJdbcTemplate.query("SELECT l.*" + from
+                        + (useFts ? " ORDER BY bm25(backup_log_fts, 2.0, 1.0)" : " ORDER BY l.id DESC") + " LIMIT ? OFFSET ?",
+                LOG_MAPPER, pageArgs.toArray());
+        if (!query.isArchived() || results.size() >= limit) {
+            return results;
+        }
+
+        // 已归档的记录依次排在主库、分片之后：offset 减去前面来源的命中数，得到在下一个来源中的偏移。
+        // 本页有主库结果时主库命中数为 offset 加本页条数，本页没有时需要单独统计
+        results = new ArrayList<>(results);
+        long mainMatched = !results.isEmpty() ? offset + results.size()
+                : offset > 0 ? readJdbcTemplate.queryForObject("SELECT COUNT(*)" + from, Long.class, args.toArray()) : 0;
+        long skip = Math.max(0, offset - mainMatched);
+        if (shardRouter.hasShards()) {
+            int remaining = limit - results.size();
+            List<BackupLog> shardResults = searchShards(keyword, prefix, query, skip, remaining);
+            results.addAll(shardResults);
+            if (results.size() >= limit) {
+                return results;
+            }
+            long shardMatched = !shardResults.isEmpty() ? skip + shardResults.size()
+                    : skip > 0 ? countShards(keyword, prefix, query) : 0;
+            skip = Math.max(0, skip - shardMatched);
+        }
+        results.addAll(retentionService.searchArchive(query, skip, limit - results.size()));
         return results;
     }
-}
\ No newline at end of file
+
+    // 已归档磁盘的分片没有全文索引，用 LIKE 查询，按时间倒序；每个分片取前 offset + limit 条，合并后再跳过 offset 条
+    private List<BackupLog> searchShards(String keyword, boolean prefix, SearchQuery query, long offset, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT l.*");
+        appendShardWhere(sql, args, keyword, prefix, query);
+        sql.append(" ORDER BY l.id DESC LIMIT ?");
+        args.add(offset + limit);
+        List<BackupLog> results = shardRouter.queryShards(sql.toString(), LOG_MAPPER, args.toArray());
+        results.sort(Comparator.comparing(BackupLog::getId).reversed());
+        int fromIndex = (int) Math.min(offset, results.size());
+        return new ArrayList<>(results.subList(fromIndex, Math.min(results.size(), fromIndex + limit)));
+    }
+
+    private long countShards(String keyword, boolean prefix, SearchQuery query) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*)");
+        appendShardWhere(sql, args, keyword, prefix, query);
+        return shardRouter.queryShards(sql.toString(), (rs, i) -> rs.getLong(1), args.toArray())
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    private void appendShardWhere(StringBuilder sql, List<Object> args, String keyword, boolean prefix, SearchQuery query) {
+        sql.append(" FROM backup_log l WHERE ");
+        if (prefix) {
+            sql.append("l.filename LIKE ? ESCAPE '\\'");
+            args.add(escapeLike(keyword) + "%");
+        } else {
+            sql.append("(l.filename LIKE ? ESCAPE '\\' OR l.target_path LIKE ? ESCAPE '\\')");
+            args.add("%" + escapeLike(keyword) + "%");
+            args.add("%" + escapeLike(keyword) + "%");
+        }
+        appendFilters(sql, args, query);
+    }
+
+    private void appendFilters(StringBuilder sql, List<Object> args, SearchQuery query) {
+        if (query.getDiskId() != null) {
+            sql.append(" AND l.disk_id = ?");
+            args.add(query.getDiskId());
+        }
+        if (query.getTaskId() != null) {
+            sql.append(" AND l.task_id = ?");
+            args.add(query.getTaskId());
+        }
+        if (query.getStatus() != null && !query.getStatus().isEmpty()) {
+            sql.append(" AND l.status = ?");
+            args.add(query.getStatus());
+        }
+        // backup_time 为 ISO 格式字符串，可直接按字典序比较
+        if (query.getFrom() != null && !query.getFrom().isEmpty()) {
+            sql.append(" AND l.backup_time >= ?");
+            args.add(query.getFrom());
+        }
+        if (query.getTo() != null && !query.getTo().isEmpty()) {
+            sql.append(" AND l.backup_time < ?");
+            args.add(query.getTo());
+        }
+    }
+
+    private String escapeLike(String keyword) {
+        return keyword.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
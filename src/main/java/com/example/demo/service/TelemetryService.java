@@ -0,0 +1,248 @@
+package com.example.demo.service;
+
+import com.example.demo.entity.HardDisk;
+import com.example.demo.model.TransferRate;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 传输速率统计：复制循环每写一块只累加 LongAdder（无锁），
+ * 采样线程每秒记录一次各计数器的值，按最近10秒的滑动窗口计算字节/秒、文件/秒和剩余时间。
+ * 按任务、源磁盘（源路径所在的文件系统）和目标磁盘分别统计，查询和推送都只读内存
+ */
+@Slf4j
+@Service
+public class TelemetryService {
+    @Autowired
+    private ProgressEventHub progressEventHub;
+
+    private static final int WINDOW_SECONDS = 10;
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+    private static final long FINISHED_RETENTION_MS = 60_000;   // 结束的任务保留统计的时间
+
+    private final Map<Long, TaskMeter> tasks = new ConcurrentHashMap<>();
+    private final Map<String, Meter> sourceDisks = new ConcurrentHashMap<>();
+    private final Map<String, Meter> targetDisks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "transfer-telemetry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void start() {
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MS, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sampler.shutdownNow();
+    }
+
+    /**
+     * 任务开始写入时登记（同一任务重新开始时重新计数）
+     */
+    public void begin(Long taskId, String sourcePath, HardDisk targetDisk, long totalBytes) {
+        Meter source = sourceDisks.computeIfAbsent(fileStoreOf(sourcePath), Meter::new);
+        Meter target = targetDisks.computeIfAbsent(targetDisk.getDiskId(), Meter::new);
+        TaskMeter meter = new TaskMeter(String.valueOf(taskId), taskId, targetDisk.getId(), source, target);
+        meter.totalBytes = totalBytes;
+        meter.sample(System.nanoTime());   // 窗口从任务开始时算起
+        tasks.put(taskId, meter);
+    }
+
+    public void updateTotal(Long taskId, long totalBytes) {
+        TaskMeter meter = tasks.get(taskId);
+        if (meter != null) {
+            meter.totalBytes = totalBytes;
+        }
+    }
+
+    /**
+     * 复制循环中调用，只做计数
+     */
+    public void addBytes(Long taskId, long bytes) {
+        TaskMeter meter = tasks.get(taskId);
+        if (meter != null) {
+            meter.bytes.add(bytes);
+            meter.source.bytes.add(bytes);
+            meter.target.bytes.add(bytes);
+        }
+    }
+
+    public void fileCompleted(Long taskId) {
+        TaskMeter meter = tasks.get(taskId);
+        if (meter != null) {
+            meter.files.increment();
+            meter.source.files.increment();
+            meter.target.files.increment();
+        }
+    }
+
+    public void end(Long taskId, String status) {
+        TaskMeter meter = tasks.get(taskId);
+        if (meter != null) {
+            meter.status = status;
+            meter.endedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 任务的当前统计，任务未运行过或已结束超过保留时间时为空
+     */
+    public TransferRate getTask(Long taskId) {
+        TaskMeter meter = tasks.get(taskId);
+        return meter != null ? meter.snapshot() : null;
+    }
+
+    public List<TransferRate> getTasks() {
+        List<TransferRate> result = new ArrayList<>();
+        tasks.values().forEach(meter -> result.add(meter.snapshot()));
+        return result;
+    }
+
+    public List<TransferRate> getSourceDisks() {
+        List<TransferRate> result = new ArrayList<>();
+        sourceDisks.values().forEach(meter -> result.add(meter.snapshot("source")));
+        return result;
+    }
+
+    public List<TransferRate> getTargetDisks() {
+        List<TransferRate> result = new ArrayList<>();
+        targetDisks.values().forEach(meter -> result.add(meter.snapshot("target")));
+        return result;
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            sourceDisks.values().forEach(meter -> meter.sample(now));
+            targetDisks.values().forEach(meter -> meter.sample(now));
+            long expired = System.currentTimeMillis() - FINISHED_RETENTION_MS;
+            for (TaskMeter meter : tasks.values()) {
+                if (meter.endedAt > 0 && meter.endedAt < expired) {
+                    tasks.remove(meter.taskId, meter);
+                    continue;
+                }
+                meter.sample(now);
+                if (meter.endedAt == 0 || !meter.finalPushed) {
+                    meter.finalPushed = meter.endedAt > 0;
+                    progressEventHub.publishTelemetry(meter.snapshot());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("传输速率采样失败: {}", e.getMessage());
+        }
+    }
+
+    // 源路径所在的文件系统，无法读取时按路径的根目录区分
+    private static String fileStoreOf(String sourcePath) {
+        Path path = Paths.get(sourcePath).toAbsolutePath();
+        try {
+            FileStore store = Files.getFileStore(path);
+            return store.name().isEmpty() ? store.toString() : store.name();
+        } catch (IOException | RuntimeException e) {
+            return String.valueOf(path.getRoot());
+        }
+    }
+
+    private static class Meter {
+        final String id;
+        final LongAdder bytes = new LongAdder();
+        final LongAdder files = new LongAdder();
+        // 采样环：只由采样线程写入，查询时加锁读取
+        private final long[] times = new long[WINDOW_SECONDS + 1];
+        private final long[] byteSamples = new long[WINDOW_SECONDS + 1];
+        private final long[] fileSamples = new long[WINDOW_SECONDS + 1];
+        private int next;
+        private int count;
+
+        Meter(String id) {
+            this.id = id;
+        }
+
+        synchronized void sample(long now) {
+            times[next] = now;
+            byteSamples[next] = bytes.sum();
+            fileSamples[next] = files.sum();
+            next = (next + 1) % times.length;
+            count = Math.min(count + 1, times.length);
+        }
+
+        TransferRate snapshot(String scope) {
+            TransferRate rate = new TransferRate();
+            rate.setScope(scope);
+            rate.setId(id);
+            long totalBytes = bytes.sum();
+            long totalFiles = files.sum();
+            rate.setTransferredBytes(totalBytes);
+            rate.setCompletedFiles(totalFiles);
+            synchronized (this) {
+                if (count > 0) {
+                    // 从窗口内最早的采样到现在
+                    int oldest = count < times.length ? 0 : next;
+                    long elapsed = System.nanoTime() - times[oldest];
+                    if (elapsed > 0) {
+                        rate.setBytesPerSecond((totalBytes - byteSamples[oldest]) * 1e9 / elapsed);
+                        rate.setFilesPerSecond((totalFiles - fileSamples[oldest]) * 1e9 / elapsed);
+                        rate.setWindowMillis(elapsed / 1_000_000);
+                    }
+                }
+            }
+            return rate;
+        }
+    }
+
+    private static class TaskMeter extends Meter {
+        final Long taskId;
+        final Long diskId;
+        final Meter source;
+        final Meter target;
+        volatile long totalBytes;
+        volatile String status = "RUNNING";
+        volatile long endedAt;
+        boolean finalPushed;
+
+        TaskMeter(String id, Long taskId, Long diskId, Meter source, Meter target) {
+            super(id);
+            this.taskId = taskId;
+            this.diskId = diskId;
+            this.source = source;
+            this.target = target;
+        }
+
+        TransferRate snapshot() {
+            TransferRate rate = snapshot("task");
+            rate.setTaskId(taskId);
+            rate.setDiskId(diskId);
+            rate.setStatus(status);
+            long total = totalBytes;
+            rate.setTotalBytes(total);
+            if (total > 0) {
+                rate.setProgress(Math.min(100.0, rate.getTransferredBytes() * 100.0 / total));
+                if (endedAt == 0 && rate.getBytesPerSecond() > 0) {
+                    long remaining = Math.max(0, total - rate.getTransferredBytes());
+                    rate.setEtaSeconds((long) Math.ceil(remaining / rate.getBytesPerSecond()));
+                }
+            }
+            return rate;
+        }
+    }
+}
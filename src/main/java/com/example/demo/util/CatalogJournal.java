@@ -0,0 +1,155 @@
+package com.example.demo.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 目录段的追加日志：文件备份成功时追加一条记录，积累到一定数量后由调用方压缩成 CatalogSegment。
+ * 每条记录为 长度(4) + CRC32(4) + 内容，进程崩溃或断电留下的不完整尾部在读取和重新打开时被丢弃，
+ * 之前的记录仍然可用
+ */
+public class CatalogJournal implements Closeable {
+
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+
+    private final Path file;
+    private final FileChannel channel;
+    private int count;
+
+    private CatalogJournal(Path file, FileChannel channel, int count) {
+        this.file = file;
+        this.channel = channel;
+        this.count = count;
+    }
+
+    /**
+     * 打开（不存在则创建）追加日志，截掉不完整的尾部
+     */
+    public static CatalogJournal open(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        List<CatalogSegment.Record> existing = new ArrayList<>();
+        long validLength = Files.exists(file) ? read(file, existing) : 0;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+            }
+            channel.position(validLength);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CatalogJournal(file, channel, existing.size());
+    }
+
+    /**
+     * 读取日志中的全部完整记录
+     */
+    public static List<CatalogSegment.Record> readAll(Path file) throws IOException {
+        List<CatalogSegment.Record> records = new ArrayList<>();
+        if (Files.exists(file)) {
+            read(file, records);
+        }
+        return records;
+    }
+
+    // 返回完整记录的总长度
+    private static long read(Path file, List<CatalogSegment.Record> records) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    break;
+                }
+                int crc = in.readInt();
+                byte[] payload = new byte[length];
+                try {
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc32 = new CRC32();
+                crc32.update(payload);
+                if ((int) crc32.getValue() != crc) {
+                    break;
+                }
+                records.add(decode(payload));
+                valid += RECORD_HEADER + length;
+            }
+        } catch (EOFException e) {
+            // 尾部不完整
+        }
+        return valid;
+    }
+
+    public synchronized void append(CatalogSegment.Record record) throws IOException {
+        byte[] payload = encode(record);
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc32.getValue()).put(payload).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        count++;
+    }
+
+    public synchronized void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * 清空日志（内容已压缩进段文件之后调用）
+     */
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        count = 0;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static byte[] encode(CatalogSegment.Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(record.getLogId());
+            out.writeLong(record.getTaskId());
+            out.writeLong(record.getSize());
+            out.writeLong(record.getBackupTime());
+            out.writeUTF(record.getPath());
+            out.writeUTF(record.getChecksum() != null ? record.getChecksum() : "");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CatalogSegment.Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        return new CatalogSegment.Record(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readUTF(), in.readUTF());
+    }
+}
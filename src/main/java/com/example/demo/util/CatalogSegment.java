@@ -0,0 +1,316 @@
+package com.example.demo.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * 目标盘上的二进制目录段文件（只读、不可修改，新的备份写入新的段文件）
+ * 格式（大端）：
+ * <pre>
+ * 文件头 64字节：magic "BCAT", version, 条目数, 保留, 创建时间, 记录表偏移, 校验和索引偏移, 字符串区偏移, 字符串区长度, 保留
+ * 记录表：每条48字节，按路径（UTF-8字节序）升序
+ *         logId(8) taskId(8) size(8) backupTime(8) pathOffset(4) pathLength(4) checksumOffset(4) checksumLength(2) 保留(2)
+ * 校验和索引：每条4字节，记录下标，按校验和升序
+ * 字符串区：路径和校验和的UTF-8字节
+ * </pre>
+ * 打开时整个文件只读映射到内存，按路径前缀或校验和二分查找，不需要把内容加载到堆中。
+ * 映射在 GC 回收之前一直占用文件（Windows 下无法替换或删除），用完后应调用 close 立即解除映射，
+ * 关闭之后不能再访问，因此同一对象只能在一个线程中使用
+ */
+public class CatalogSegment implements Closeable {
+
+    public static final int MAGIC = 0x42434154;   // "BCAT"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 48;
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long createdAt;
+    private final int recordsOffset;
+    private final int checksumIndexOffset;
+    private final int heapOffset;
+    private boolean closed;
+
+    // sun.misc.Unsafe.invokeCleaner：立即释放映射；不可用时退回到等待 GC 回收
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    public static class Record {
+        private final long logId;
+        private final long taskId;
+        private final long size;
+        private final long backupTime;      // 毫秒
+        private final String path;          // 相对挂载点的路径
+        private final String checksum;
+
+        public Record(long logId, long taskId, long size, long backupTime, String path, String checksum) {
+            this.logId = logId;
+            this.taskId = taskId;
+            this.size = size;
+            this.backupTime = backupTime;
+            this.path = path;
+            this.checksum = checksum;
+        }
+
+        public long getLogId() { return logId; }
+        public long getTaskId() { return taskId; }
+        public long getSize() { return size; }
+        public long getBackupTime() { return backupTime; }
+        public String getPath() { return path; }
+        public String getChecksum() { return checksum; }
+    }
+
+    private CatalogSegment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("不是目录段文件: " + file);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("目录段文件版本不支持: " + file + "，版本: " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        this.createdAt = buffer.getLong(16);
+        this.recordsOffset = (int) buffer.getLong(24);
+        this.checksumIndexOffset = (int) buffer.getLong(32);
+        this.heapOffset = (int) buffer.getLong(40);
+        long heapLength = buffer.getLong(48);
+        if ((long) recordsOffset + (long) count * RECORD_SIZE > buffer.capacity()
+                || (long) checksumIndexOffset + count * 4L > buffer.capacity()
+                || heapOffset + heapLength > buffer.capacity()) {
+            throw new IOException("目录段文件已损坏: " + file);
+        }
+    }
+
+    public static CatalogSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("目录段文件过大: " + file);
+            }
+            // 映射在通道关闭后仍然有效
+            return new CatalogSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 写出段文件：先写临时文件再原子替换
+     */
+    public static void write(Path file, List<Record> records) throws IOException {
+        int count = records.size();
+        byte[][] paths = new byte[count][];
+        byte[][] checksums = new byte[count][];
+        Integer[] byPath = new Integer[count];
+        long heapLength = 0;
+        for (int i = 0; i < count; i++) {
+            paths[i] = records.get(i).getPath().getBytes(StandardCharsets.UTF_8);
+            checksums[i] = records.get(i).getChecksum() != null
+                    ? records.get(i).getChecksum().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+            if (checksums[i].length > Short.MAX_VALUE) {
+                throw new IOException("校验和过长: " + records.get(i).getChecksum());
+            }
+            heapLength += paths[i].length + checksums[i].length;
+            byPath[i] = i;
+        }
+        Arrays.sort(byPath, (a, b) -> Arrays.compareUnsigned(paths[a], paths[b]));
+
+        long recordsOffset = HEADER_SIZE;
+        long checksumIndexOffset = recordsOffset + (long) count * RECORD_SIZE;
+        long heapOffset = checksumIndexOffset + count * 4L;
+        long fileSize = heapOffset + heapLength;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("目录段过大，请减少每段的条目数: " + count);
+        }
+
+        ByteBuffer out = ByteBuffer.allocate((int) fileSize);
+        out.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0)
+                .putLong(System.currentTimeMillis())
+                .putLong(recordsOffset).putLong(checksumIndexOffset).putLong(heapOffset).putLong(heapLength)
+                .putLong(0);
+
+        // 记录表（按路径排序），同时写字符串区
+        int heapPosition = 0;
+        int[] recordOf = new int[count];   // 原始下标 -> 记录表下标
+        for (int slot = 0; slot < count; slot++) {
+            int i = byPath[slot];
+            recordOf[i] = slot;
+            Record record = records.get(i);
+            out.position((int) (recordsOffset + (long) slot * RECORD_SIZE));
+            out.putLong(record.getLogId()).putLong(record.getTaskId()).putLong(record.getSize()).putLong(record.getBackupTime());
+            out.putInt(heapPosition).putInt(paths[i].length);
+            out.position((int) heapOffset + heapPosition).put(paths[i]);
+            heapPosition += paths[i].length;
+
+            out.position((int) (recordsOffset + (long) slot * RECORD_SIZE + 40));
+            out.putInt(heapPosition).putShort((short) checksums[i].length).putShort((short) 0);
+            out.position((int) heapOffset + heapPosition).put(checksums[i]);
+            heapPosition += checksums[i].length;
+        }
+
+        // 校验和索引
+        Integer[] byChecksum = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byChecksum[i] = i;
+        }
+        Arrays.sort(byChecksum, (a, b) -> Arrays.compareUnsigned(checksums[a], checksums[b]));
+        out.position((int) checksumIndexOffset);
+        for (int i = 0; i < count; i++) {
+            out.putInt(recordOf[byChecksum[i]]);
+        }
+
+        out.rewind();   // 各部分按绝对位置写入，整个缓冲区都是文件内容
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Path getFile() { return file; }
+    public int size() { return count; }
+    public long getCreatedAt() { return createdAt; }
+
+    public Record get(int slot) {
+        checkOpen();
+        int base = recordsOffset + slot * RECORD_SIZE;
+        return new Record(buffer.getLong(base), buffer.getLong(base + 8), buffer.getLong(base + 16), buffer.getLong(base + 24),
+                heapString(buffer.getInt(base + 32), buffer.getInt(base + 36), StandardCharsets.UTF_8),
+                heapString(buffer.getInt(base + 40), buffer.getShort(base + 44), StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 路径以 prefix 开头的记录，按路径顺序，最多 limit 条
+     */
+    public List<Record> findByPathPrefix(String prefix, int limit) {
+        checkOpen();
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        List<Record> result = new ArrayList<>();
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int base = recordsOffset + mid * RECORD_SIZE;
+            if (compareHeap(buffer.getInt(base + 32), buffer.getInt(base + 36), key, false) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int slot = low; slot < count && result.size() < limit; slot++) {
+            int base = recordsOffset + slot * RECORD_SIZE;
+            if (compareHeap(buffer.getInt(base + 32), buffer.getInt(base + 36), key, true) != 0) {
+                break;
+            }
+            result.add(get(slot));
+        }
+        return result;
+    }
+
+    public List<Record> findByChecksum(String checksum) {
+        checkOpen();
+        byte[] key = checksum.getBytes(StandardCharsets.US_ASCII);
+        List<Record> result = new ArrayList<>();
+        int low = 0, high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareChecksum(checksumSlot(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < count && compareChecksum(checksumSlot(i), key) == 0; i++) {
+            result.add(get(checksumSlot(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 解除映射，之后段文件可以被替换或删除
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (INVOKE_CLEANER != null) {
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // 由 GC 回收映射
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("目录段文件已关闭: " + file);
+        }
+    }
+
+    private int checksumSlot(int index) {
+        return buffer.getInt(checksumIndexOffset + index * 4);
+    }
+
+    private int compareChecksum(int slot, byte[] key) {
+        int base = recordsOffset + slot * RECORD_SIZE;
+        return compareHeap(buffer.getInt(base + 40), buffer.getShort(base + 44), key, false);
+    }
+
+    // 比较字符串区中的字节与 key（无符号字节序）；prefixOnly 时只比较 key 长度内的字节
+    private int compareHeap(int offset, int length, byte[] key, boolean prefixOnly) {
+        int n = Math.min(length, key.length);
+        int start = heapOffset + offset;
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buffer.get(start + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (prefixOnly && length >= key.length) {
+            return 0;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private String heapString(int offset, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        buffer.get(heapOffset + offset, bytes);
+        return new String(bytes, charset);
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.demo.util;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * 紧凑的文件树（按列存储在基本类型数组中），用于常驻内存复用超大目录的分析结果
+ * 节点按广度优先编号，同一目录的子节点编号连续，子节点编号一定大于父节点；
+ * 每个节点只保存名称编号（同名共享一个字符串）、父节点、大小、修改时间和标志位，完整路径按需由父链拼出。
+ * 目录额外保存子节点区间和子树统计。构建完成后只读，可被多个线程共享
+ */
+public class CompactTree {
+
+    private static final byte FLAG_DIRECTORY = 1;
+    private static final byte FLAG_SENSITIVE = 2;
+
+    private final String rootPath;
+    private final String keywords;
+    private final long builtAt;
+    private final int count;
+    private final int directoryCount;
+
+    // 每个节点一项
+    private final int[] parent;       // 根节点为 -1
+    private final int[] nameId;       // names 中的下标
+    private final long[] size;        // 文件大小；目录为子树总大小
+    private final long[] mtime;       // 修改时间（毫秒）
+    private final byte[] flags;
+    private final int[] dirSlot;      // 目录在下面几个数组中的下标，文件为 -1
+    private final String[] names;
+
+    // 每个目录一项
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final long[] fileTotal;       // 子树文件数
+    private final long[] dirTotal;        // 子树目录数（含自身）
+    private final long[] sensitiveTotal;  // 子树敏感项数（含自身）
+
+    private CompactTree(Builder b) {
+        this.rootPath = b.rootPath;
+        this.keywords = b.keywords;
+        this.builtAt = System.currentTimeMillis();
+        this.count = b.count;
+        this.directoryCount = b.dirCount;
+        this.parent = Arrays.copyOf(b.parent, count);
+        this.nameId = Arrays.copyOf(b.nameId, count);
+        this.size = Arrays.copyOf(b.size, count);
+        this.mtime = Arrays.copyOf(b.mtime, count);
+        this.flags = Arrays.copyOf(b.flags, count);
+        this.dirSlot = Arrays.copyOf(b.dirSlot, count);
+        this.names = b.names.toArray(new String[0]);
+        this.firstChild = Arrays.copyOf(b.firstChild, directoryCount);
+        this.childCount = Arrays.copyOf(b.childCount, directoryCount);
+        this.fileTotal = new long[directoryCount];
+        this.dirTotal = new long[directoryCount];
+        this.sensitiveTotal = new long[directoryCount];
+
+        // 子节点编号大于父节点，倒序遍历一次即可自底向上汇总子树统计
+        for (int i = count - 1; i >= 0; i--) {
+            int slot = dirSlot[i];
+            boolean isSensitive = (flags[i] & FLAG_SENSITIVE) != 0;
+            long files = 0, dirs = 0, sensitive = isSensitive ? 1 : 0;
+            if (slot >= 0) {
+                dirs = dirTotal[slot] + 1;
+                files = fileTotal[slot];
+                sensitive += sensitiveTotal[slot];
+                dirTotal[slot] = dirs;
+                sensitiveTotal[slot] = sensitive;
+            } else {
+                files = 1;
+            }
+            int p = parent[i];
+            if (p >= 0) {
+                int parentSlot = dirSlot[p];
+                fileTotal[parentSlot] += files;
+                dirTotal[parentSlot] += dirs;
+                sensitiveTotal[parentSlot] += sensitive;
+                size[p] += size[i];
+            }
+        }
+    }
+
+    public String getRootPath() { return rootPath; }
+    public String getKeywords() { return keywords; }
+    public long getBuiltAt() { return builtAt; }
+    public int getCount() { return count; }
+    public int getDirectoryCount() { return directoryCount; }
+
+    public String getName(int node) { return names[nameId[node]]; }
+    public int getParent(int node) { return parent[node]; }
+    public long getSize(int node) { return size[node]; }
+    public long getLastModified(int node) { return mtime[node]; }
+    public boolean isDirectory(int node) { return (flags[node] & FLAG_DIRECTORY) != 0; }
+    public boolean isSensitive(int node) { return (flags[node] & FLAG_SENSITIVE) != 0; }
+
+    // 以下方法只对目录节点有效
+    public int getFirstChild(int node) { return firstChild[dirSlot[node]]; }
+    public int getChildCount(int node) { return dirSlot[node] >= 0 ? childCount[dirSlot[node]] : 0; }
+    public long getFileTotal(int node) { return fileTotal[dirSlot[node]]; }
+    public long getDirectoryTotal(int node) { return dirTotal[dirSlot[node]]; }
+    public long getSensitiveTotal(int node) { return sensitiveTotal[dirSlot[node]]; }
+
+    /**
+     * 按相对根目录的路径分段查找节点，找不到返回 -1
+     */
+    public int find(List<String> segments) {
+        int node = 0;
+        for (String segment : segments) {
+            if (!isDirectory(node)) {
+                return -1;
+            }
+            int first = getFirstChild(node);
+            int end = first + getChildCount(node);
+            int found = -1;
+            for (int child = first; child < end; child++) {
+                if (names[nameId[child]].equals(segment)) {
+                    found = child;
+                    break;
+                }
+            }
+            if (found < 0) {
+                return -1;
+            }
+            node = found;
+        }
+        return node;
+    }
+
+    /**
+     * 估算占用的内存（字节）
+     */
+    public long estimateBytes() {
+        long bytes = (long) count * (4 + 4 + 8 + 8 + 1 + 4) + (long) directoryCount * (4 + 4 + 8 + 8 + 8);
+        for (String name : names) {
+            bytes += 40 + name.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * 构建器：先 add 根节点，之后对每个目录调用 beginChildren 再依次 add 其子节点（广度优先）
+     */
+    public static class Builder {
+        private final String rootPath;
+        private final String keywords;
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int count;
+        private int dirCount;
+        private int[] parent = new int[1024];
+        private int[] nameId = new int[1024];
+        private long[] size = new long[1024];
+        private long[] mtime = new long[1024];
+        private byte[] flags = new byte[1024];
+        private int[] dirSlot = new int[1024];
+        private int[] firstChild = new int[128];
+        private int[] childCount = new int[128];
+
+        public Builder(String rootPath, String keywords) {
+            this.rootPath = rootPath;
+            this.keywords = keywords;
+        }
+
+        public int size() { return count; }
+
+        public boolean isDirectory(int node) { return (flags[node] & FLAG_DIRECTORY) != 0; }
+
+        public int add(int parentNode, String name, BasicFileAttributes attrs, boolean sensitive) {
+            if (count == parent.length) {
+                int capacity = count * 2;
+                parent = Arrays.copyOf(parent, capacity);
+                nameId = Arrays.copyOf(nameId, capacity);
+                size = Arrays.copyOf(size, capacity);
+                mtime = Arrays.copyOf(mtime, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                dirSlot = Arrays.copyOf(dirSlot, capacity);
+            }
+            int node = count++;
+            parent[node] = parentNode;
+            nameId[node] = nameIndex.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+            mtime[node] = attrs.lastModifiedTime().toMillis();
+            flags[node] = (byte) ((attrs.isDirectory() ? FLAG_DIRECTORY : 0) | (sensitive ? FLAG_SENSITIVE : 0));
+            if (attrs.isDirectory()) {
+                if (dirCount == firstChild.length) {
+                    firstChild = Arrays.copyOf(firstChild, dirCount * 2);
+                    childCount = Arrays.copyOf(childCount, dirCount * 2);
+                }
+                dirSlot[node] = dirCount++;
+                size[node] = 0;
+            } else {
+                dirSlot[node] = -1;
+                size[node] = attrs.size();
+            }
+            return node;
+        }
+
+        // 接下来 add 的节点都是 dirNode 的子节点
+        public void beginChildren(int dirNode) {
+            firstChild[dirSlot[dirNode]] = count;
+        }
+
+        public void endChildren(int dirNode) {
+            int slot = dirSlot[dirNode];
+            childCount[slot] = count - firstChild[slot];
+        }
+
+        public CompactTree build() {
+            return new CompactTree(this);
+        }
+    }
+}
@@ -6,14 +6,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 public class DiskScanner {
 
@@ -21,6 +27,20 @@ public class DiskScanner {
     private static final AtomicInteger windowsCounter = new AtomicInteger(1);
     private static final AtomicInteger linuxCounter = new AtomicInteger(1);
 
+    private static final Path SYS_BLOCK = Paths.get("/sys/block");
+    private static final Path MOUNT_INFO = Paths.get("/proc/self/mountinfo");
+    private static final long SECTOR_SIZE = 512;          // /sys/block/*/size 固定以512字节为单位
+    private static final long LAYOUT_TTL_MS = 30_000;     // 设备布局缓存时间
+    private static final long PROBE_TIMEOUT_MS = 2000;
+    private static final ExecutorService PROBE_POOL = Executors.newFixedThreadPool(
+            Math.min(8, Runtime.getRuntime().availableProcessors() * 2), r -> {
+                Thread thread = new Thread(r, "disk-probe");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static volatile LinuxLayout linuxLayout;
+    private static volatile WindowsLayout windowsLayout;
+
     // 校验字符串是否为有效数字（允许前后空格）
     private static boolean isNumeric(String str) {
         if (str == null) return false;
@@ -52,6 +72,62 @@ public class DiskScanner {
         System.out.println("\n=== 开始扫描Windows磁盘 ===");
         List<HardDisk> disks = new ArrayList<>();
 
+        // 驱动器列表没变且未超过缓存时间时沿用上次 WMIC 查询到的序列号，不再启动子进程
+        File[] roots = File.listRoots();
+        String fingerprint = Arrays.toString(roots);
+        WindowsLayout layout = windowsLayout;
+        if (layout == null || !layout.fingerprint.equals(fingerprint)
+                || System.currentTimeMillis() - layout.probedAt > LAYOUT_TTL_MS) {
+            layout = new WindowsLayout(fingerprint, queryWindowsSerials(), System.currentTimeMillis());
+            windowsLayout = layout;
+        }
+        Map<String, String> driveSerials = layout.driveSerials;
+
+        // 扫描所有逻辑驱动器并获取真实可用空间
+        for (File root : roots) {
+            try {
+                String driveLetter = root.getAbsolutePath();
+                if (driveLetter.endsWith("\\")) {
+                    driveLetter = driveLetter.substring(0, driveLetter.length() - 1);
+                }
+
+                // 跳过不可读或容量过小的驱动器
+                if (!root.canRead() || root.getTotalSpace() < 1024 * 1024 * 100) {
+                    System.out.println("跳过无效驱动器: " + driveLetter);
+                    continue;
+                }
+
+                // 获取对应的物理磁盘序列号
+                String serialNumber = driveSerials.getOrDefault(driveLetter, "UNKNOWN_" + driveLetter);
+
+                // 创建磁盘对象 - 使用固定格式ID
+                HardDisk disk = new HardDisk();
+                disk.setDiskId(DiskIdGenerator.generateDiskId(1, windowsCounter.getAndIncrement()));
+                disk.setSerialNumber(serialNumber);
+                disk.setTotalCapacity(root.getTotalSpace());
+                disk.setAvailableCapacity(root.getUsableSpace());
+                disk.setMountPoint(driveLetter + "\\");
+                disk.setStatus("ACTIVE");
+                disk.setProtocol("LOCAL"); // 明确设置协议类型
+
+                disks.add(disk);
+                System.out.println("✔️ 添加磁盘: " + driveLetter +
+                        ", ID: " + disk.getDiskId() +
+                        ", 序列号: " + serialNumber +
+                        ", 总容量: " + formatSize(root.getTotalSpace()) +
+                        ", 可用容量: " + formatSize(root.getUsableSpace()));
+            } catch (Exception e) {
+                System.err.println("处理驱动器 " + root + " 失败: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        System.out.println("=== Windows磁盘扫描完成，共发现 " + disks.size() + " 个磁盘 ===\n");
+        return disks;
+    }
+
+    // 通过WMIC查询每个驱动器所在物理磁盘的序列号：{DriveLetter -> SerialNumber}
+    private static Map<String, String> queryWindowsSerials() throws IOException {
         // 执行WMIC命令获取物理磁盘信息
         Process process = Runtime.getRuntime().exec(new String[]{
                 "cmd", "/c", "wmic diskdrive get DeviceID,SerialNumber,Size /format:value"
@@ -135,51 +211,14 @@ public class DiskScanner {
             }
         }
 
-        // 扫描所有逻辑驱动器并获取真实可用空间
-        File[] roots = File.listRoots();
-        for (File root : roots) {
-            try {
-                String driveLetter = root.getAbsolutePath();
-                if (driveLetter.endsWith("\\")) {
-                    driveLetter = driveLetter.substring(0, driveLetter.length() - 1);
-                }
-
-                // 跳过不可读或容量过小的驱动器
-                if (!root.canRead() || root.getTotalSpace() < 1024 * 1024 * 100) {
-                    System.out.println("跳过无效驱动器: " + driveLetter);
-                    continue;
-                }
-
-                // 获取对应的物理磁盘序列号
-                String deviceId = driveToDiskMap.get(driveLetter);
-                String serialNumber = deviceId != null ?
-                        physicalDisks.getOrDefault(deviceId, "UNKNOWN_" + driveLetter) :
-                        "UNKNOWN_" + driveLetter;
-
-                // 创建磁盘对象 - 使用固定格式ID
-                HardDisk disk = new HardDisk();
-                disk.setDiskId(DiskIdGenerator.generateDiskId(1, windowsCounter.getAndIncrement()));
-                disk.setSerialNumber(serialNumber);
-                disk.setTotalCapacity(root.getTotalSpace());
-                disk.setAvailableCapacity(root.getUsableSpace());
-                disk.setMountPoint(driveLetter + "\\");
-                disk.setStatus("ACTIVE");
-                disk.setProtocol("LOCAL"); // 明确设置协议类型
-
-                disks.add(disk);
-                System.out.println("✔️ 添加磁盘: " + driveLetter +
-                        ", ID: " + disk.getDiskId() +
-                        ", 序列号: " + serialNumber +
-                        ", 总容量: " + formatSize(root.getTotalSpace()) +
-                        ", 可用容量: " + formatSize(root.getUsableSpace()));
-            } catch (Exception e) {
-                System.err.println("处理驱动器 " + root + " 失败: " + e.getMessage());
-                e.printStackTrace();
+        Map<String, String> driveSerials = new HashMap<>();
+        driveToDiskMap.forEach((driveLetter, deviceId) -> {
+            String serialNumber = physicalDisks.get(deviceId);
+            if (serialNumber != null) {
+                driveSerials.put(driveLetter, serialNumber);
             }
-        }
-
-        System.out.println("=== Windows磁盘扫描完成，共发现 " + disks.size() + " 个磁盘 ===\n");
-        return disks;
+        });
+        return driveSerials;
     }
 
     // 格式化磁盘容量为人类可读的格式
@@ -190,73 +229,50 @@ public class DiskScanner {
         return String.format("%.2f %sB", bytes / Math.pow(1024, exp), pre);
     }
 
-    // Linux磁盘扫描（保持原有逻辑，优化可用空间获取）
+    // Linux磁盘扫描：直接读取 /sys/block 和 /proc/self/mountinfo，不再启动 lsblk 子进程。
+    // 设备布局（序列号、容量、挂载点）按指纹缓存，设备或挂载变化、或超过缓存时间时重新探测；
+    // 可用空间每次扫描都重新读取，各磁盘并行查询
     private static List<HardDisk> scanLinuxDisks() throws IOException {
-        System.out.println("\n=== 开始扫描Linux磁盘 ===");
+        long start = System.nanoTime();
         List<HardDisk> disks = new ArrayList<>();
-
-        // 获取所有块设备信息
-        Process process = Runtime.getRuntime().exec(new String[]{
-                "sh", "-c", "lsblk -b -o NAME,SERIAL,SIZE,TYPE,MOUNTPOINT --json"
-        });
-
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-
-            StringBuilder jsonBuilder = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                jsonBuilder.append(line);
+        try {
+            String mountInfo = new String(Files.readAllBytes(MOUNT_INFO), StandardCharsets.UTF_8);
+            List<String> names = listBlockDevices();
+            String fingerprint = fingerprint(names, mountInfo);
+
+            LinuxLayout layout = linuxLayout;
+            if (layout == null || !layout.fingerprint.equals(fingerprint)
+                    || System.currentTimeMillis() - layout.probedAt > LAYOUT_TTL_MS) {
+                Map<String, String> mounts = parseMountInfo(mountInfo);
+                List<BlockDevice> devices = probeAll(names, name -> probeDevice(name, mounts), null);
+                devices.removeIf(Objects::isNull);
+                layout = new LinuxLayout(fingerprint, devices, System.currentTimeMillis());
+                linuxLayout = layout;
+                System.out.println("Linux磁盘布局已重新探测，共 " + devices.size() + " 个磁盘");
             }
 
-            String json = jsonBuilder.toString();
-            // 简化的JSON解析（实际项目中建议使用真正的JSON解析库）
-            // 提取磁盘信息
-            Pattern diskPattern = Pattern.compile("\\{\"name\":\"(.*?)\",\"serial\":\"(.*?)\",\"size\":(\\d+),\"type\":\"disk\",\"mountpoint\":\"(.*?)\"\\}");
-            Matcher matcher = diskPattern.matcher(json);
-
-            int diskCount = 0;
-            while (matcher.find()) {
-                diskCount++;
-                String name = matcher.group(1);
-                String serial = matcher.group(2).isEmpty() ? "UNKNOWN_" + name : matcher.group(2);
-                long size = Long.parseLong(matcher.group(3));
-                String mountPoint = matcher.group(4).isEmpty() ? "/mnt/" + name : matcher.group(4);
-
-                // 创建默认挂载点目录（如果不存在）
-                File mountDir = new File(mountPoint);
-                if (!mountDir.exists() && !mountDir.mkdirs()) {
-                    System.out.println("无法创建挂载点目录: " + mountPoint);
-                    mountPoint = "/"; // 回退到根目录
-                }
-
-                // 获取可用空间
-                long availableSpace = 0;
-                try {
-                    availableSpace = mountDir.getUsableSpace();
-                } catch (Exception e) {
-                    System.err.println("获取 " + mountPoint + " 可用空间失败: " + e.getMessage());
-                }
+            List<String> mountPoints = new ArrayList<>();
+            for (BlockDevice device : layout.devices) {
+                mountPoints.add(device.mountPoint != null ? device.mountPoint : defaultMountPoint(device.name));
+            }
+            List<Long> spaces = probeAll(mountPoints, DiskScanner::usableSpace, 0L);
 
+            for (int i = 0; i < layout.devices.size(); i++) {
+                BlockDevice device = layout.devices.get(i);
                 // 使用固定格式ID
                 HardDisk disk = new HardDisk();
                 disk.setDiskId(DiskIdGenerator.generateDiskId(2, linuxCounter.getAndIncrement()));
-                disk.setSerialNumber(serial);
-                disk.setTotalCapacity(size);
-                disk.setAvailableCapacity(availableSpace);
-                disk.setMountPoint(mountPoint);
+                disk.setSerialNumber(device.serial);
+                disk.setTotalCapacity(device.size);
+                disk.setAvailableCapacity(spaces.get(i));
+                disk.setMountPoint(mountPoints.get(i));
                 disk.setStatus("ACTIVE");
                 disk.setProtocol("LOCAL"); // 明确设置协议类型
-
                 disks.add(disk);
-                System.out.println("✔️ 添加Linux磁盘: " + name +
-                        ", ID: " + disk.getDiskId() +
-                        ", 挂载点: " + mountPoint +
-                        ", 总容量: " + formatSize(size) +
-                        ", 可用容量: " + formatSize(availableSpace));
             }
 
-            System.out.println("=== Linux磁盘扫描完成，共发现 " + diskCount + " 个磁盘 ===\n");
+            System.out.println("=== Linux磁盘扫描完成，共发现 " + disks.size() + " 个磁盘，耗时 "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms ===");
         } catch (Exception e) {
             System.err.println("Linux磁盘扫描异常: " + e.getMessage());
             e.printStackTrace();
@@ -265,4 +281,260 @@ public class DiskScanner {
 
         return disks;
     }
-}
\ No newline at end of file
+
+    // 有 device 链接的块设备才是物理磁盘（loop、zram、dm、md 等虚拟设备没有），按名称排序保证磁盘编号稳定
+    private static List<String> listBlockDevices() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(SYS_BLOCK)) {
+            for (Path dir : stream) {
+                if (Files.exists(dir.resolve("device"))) {
+                    names.add(dir.getFileName().toString());
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    // 设备名、容量和挂载表都没变时沿用缓存的布局
+    private static String fingerprint(List<String> names, String mountInfo) {
+        StringBuilder fingerprint = new StringBuilder(mountInfo.length() + names.size() * 32);
+        for (String name : names) {
+            fingerprint.append(name).append('=').append(readFirstLine(SYS_BLOCK.resolve(name).resolve("size"))).append(';');
+        }
+        return fingerprint.append('\n').append(mountInfo).toString();
+    }
+
+    /**
+     * 解析 /proc/self/mountinfo，返回 {主:次设备号 或 /dev/设备名 -> 挂载点}，同一设备多次挂载时取第一个根挂载
+     * （文件系统根目录，或 btrfs 子卷的根目录，如 Ubuntu 默认以子卷 /@ 挂载 /）；
+     * 设备只有子目录的绑定挂载时退而取其中第一个，与 lsblk 一样视为已挂载。
+     * 格式：36 35 98:0 /mnt1 /mnt/parent rw,noatime master:1 - ext3 /dev/root rw,errors=continue
+     */
+    public static Map<String, String> parseMountInfo(String mountInfo) {
+        Map<String, String> mounts = new HashMap<>();
+        Map<String, String> bindMounts = new HashMap<>();
+        for (String line : mountInfo.split("\n")) {
+            String[] fields = line.split(" ");
+            int separator = Arrays.asList(fields).indexOf("-");
+            if (fields.length < 5 || separator < 0 || separator + 2 >= fields.length) {
+                continue;
+            }
+            String root = unescape(fields[3]);
+            String superOptions = separator + 3 < fields.length ? fields[separator + 3] : "";
+            Map<String, String> target = "/".equals(root) || isSubvolumeRoot(root, superOptions) ? mounts : bindMounts;
+            String mountPoint = unescape(fields[4]);
+            target.putIfAbsent(fields[2], mountPoint);
+            String source = unescape(fields[separator + 2]);
+            if (source.startsWith("/dev/")) {
+                target.putIfAbsent(source, mountPoint);   // btrfs 等文件系统的设备号与块设备不同
+            }
+        }
+        bindMounts.forEach(mounts::putIfAbsent);
+        return mounts;
+    }
+
+    // btrfs 子卷挂载的根目录与超级块选项中的 subvol= 相同；子卷内子目录的绑定挂载根目录更长
+    private static boolean isSubvolumeRoot(String root, String superOptions) {
+        for (String option : superOptions.split(",")) {
+            if (option.startsWith("subvol=")) {
+                return root.equals(unescape(option.substring("subvol=".length())));
+            }
+        }
+        return false;
+    }
+
+    // 挂载点中的空格等字符以 \040 形式的八进制转义
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 3 < value.length() && isOctal(value, i + 1)) {
+                sb.append((char) Integer.parseInt(value.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOctal(String value, int from) {
+        for (int i = from; i < from + 3; i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '7') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 读取一个磁盘的容量、序列号和挂载点；整盘和各分区中已挂载且容量最大的作为磁盘的挂载点
+    private static BlockDevice probeDevice(String name, Map<String, String> mounts) {
+        Path dir = SYS_BLOCK.resolve(name);
+        long size = readLong(dir.resolve("size")) * SECTOR_SIZE;
+        if (size <= 0) {
+            return null;   // 没有介质的读卡器、光驱等
+        }
+        String mountPoint = mountPointOf(name, dir, mounts);
+        long mountedSize = mountPoint != null ? size : -1;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path child : stream) {
+                if (!Files.exists(child.resolve("partition"))) {
+                    continue;
+                }
+                String partitionMount = mountPointOf(child.getFileName().toString(), child, mounts);
+                long partitionSize = readLong(child.resolve("size")) * SECTOR_SIZE;
+                if (partitionMount != null && partitionSize > mountedSize) {
+                    mountPoint = partitionMount;
+                    mountedSize = partitionSize;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("读取 " + name + " 的分区失败: " + e.getMessage());
+        }
+        String serial = readSerial(dir);
+        return new BlockDevice(name, serial.isEmpty() ? "UNKNOWN_" + name : serial, size, mountPoint);
+    }
+
+    private static String mountPointOf(String name, Path dir, Map<String, String> mounts) {
+        String mountPoint = mounts.get(readFirstLine(dir.resolve("dev")));
+        return mountPoint != null ? mountPoint : mounts.get("/dev/" + name);
+    }
+
+    // 与原来 lsblk 的 SERIAL 列保持一致：优先使用 udev 数据库中的 ID_SERIAL_SHORT，
+    // 其次是 virtio 等驱动在块设备目录下提供的 serial、SATA/SAS 在 device 目录下提供的 serial 或 VPD 0x80 页，
+    // wwid 与序列号格式不同，只在以上都没有时使用，避免已登记磁盘的序列号发生变化
+    private static String readSerial(Path dir) {
+        String udevSerial = readUdevSerial(readFirstLine(dir.resolve("dev")));
+        if (!udevSerial.isEmpty()) {
+            return udevSerial;
+        }
+        for (Path file : new Path[]{dir.resolve("device/serial"), dir.resolve("serial")}) {
+            String serial = readFirstLine(file);
+            if (!serial.isEmpty()) {
+                return serial;
+            }
+        }
+        try {
+            byte[] page = Files.readAllBytes(dir.resolve("device/vpd_pg80"));
+            if (page.length > 4) {
+                int length = Math.min(page.length - 4, ((page[2] & 0xff) << 8) | (page[3] & 0xff));
+                String serial = new String(page, 4, length, StandardCharsets.US_ASCII).trim();
+                if (!serial.isEmpty()) {
+                    return serial;
+                }
+            }
+        } catch (IOException | RuntimeException ignored) {
+            // 没有 VPD 页
+        }
+        return readFirstLine(dir.resolve("device/wwid"));
+    }
+
+    // udev 数据库 /run/udev/data/b主:次 中的 E:ID_SERIAL_SHORT=...，没有 udev 的环境（容器等）返回空
+    private static String readUdevSerial(String devNumber) {
+        if (devNumber.isEmpty()) {
+            return "";
+        }
+        try (Stream<String> lines = Files.lines(Paths.get("/run/udev/data", "b" + devNumber), StandardCharsets.UTF_8)) {
+            return lines.filter(line -> line.startsWith("E:ID_SERIAL_SHORT="))
+                    .map(line -> line.substring("E:ID_SERIAL_SHORT=".length()).trim())
+                    .findFirst().orElse("");
+        } catch (IOException | RuntimeException e) {
+            return "";
+        }
+    }
+
+    // 未挂载的磁盘使用 /mnt/设备名，目录不存在时创建，创建失败时回退到根目录
+    private static String defaultMountPoint(String name) {
+        String mountPoint = "/mnt/" + name;
+        File mountDir = new File(mountPoint);
+        if (!mountDir.exists() && !mountDir.mkdirs()) {
+            System.out.println("无法创建挂载点目录: " + mountPoint);
+            mountPoint = "/";
+        }
+        return mountPoint;
+    }
+
+    private static long usableSpace(String mountPoint) {
+        try {
+            return Files.getFileStore(Paths.get(mountPoint)).getUsableSpace();
+        } catch (IOException e) {
+            System.err.println("获取 " + mountPoint + " 可用空间失败: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // 并行执行，单个设备超时或失败时使用默认值（挂起的设备不影响其他磁盘）
+    private static <T, R> List<R> probeAll(List<T> items, Function<T, R> probe, R fallback) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(items.size());
+        for (T item : items) {
+            futures.add(CompletableFuture.supplyAsync(() -> probe.apply(item), PROBE_POOL));
+        }
+        List<R> results = new ArrayList<>(items.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_TIMEOUT_MS);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (Exception e) {
+                System.err.println("探测 " + items.get(i) + " 超时或失败: " + e);
+                results.add(fallback);
+            }
+        }
+        return results;
+    }
+
+    private static String readFirstLine(Path file) {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            return line != null ? line.trim() : "";
+        } catch (IOException | RuntimeException e) {
+            return "";
+        }
+    }
+
+    private static long readLong(Path file) {
+        String value = readFirstLine(file);
+        return isNumeric(value) ? Long.parseLong(value) : 0;
+    }
+
+    private static class BlockDevice {
+        final String name;
+        final String serial;
+        final long size;
+        final String mountPoint;   // 未挂载时为 null
+
+        BlockDevice(String name, String serial, long size, String mountPoint) {
+            this.name = name;
+            this.serial = serial;
+            this.size = size;
+            this.mountPoint = mountPoint;
+        }
+    }
+
+    private static class WindowsLayout {
+        final String fingerprint;
+        final Map<String, String> driveSerials;
+        final long probedAt;
+
+        WindowsLayout(String fingerprint, Map<String, String> driveSerials, long probedAt) {
+            this.fingerprint = fingerprint;
+            this.driveSerials = driveSerials;
+            this.probedAt = probedAt;
+        }
+    }
+
+    private static class LinuxLayout {
+        final String fingerprint;
+        final List<BlockDevice> devices;
+        final long probedAt;
+
+        LinuxLayout(String fingerprint, List<BlockDevice> devices, long probedAt) {
+            this.fingerprint = fingerprint;
+            this.devices = devices;
+            this.probedAt = probedAt;
+        }
+    }
+}
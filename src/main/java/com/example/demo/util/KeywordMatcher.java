@@ -0,0 +1,211 @@
+package com.example.demo.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 多关键词字节流匹配器（Aho-Corasick 自动机，预计算为完整的状态转移表）
+ * 纯 ASCII 的关键词不区分大小写，输入按 ASCII 折叠后匹配；其他关键词同时按 UTF-8 和 GBK 编码加入另一个自动机，
+ * 输入原样匹配（GBK 的第二个字节可能落在 ASCII 字母范围内，折叠后会误命中其他汉字）。
+ * 两个自动机的状态合并成一个 int（高16位、低16位），由调用方通过 state 参数传递，支持分块输入。
+ * 实例构建后只读，可被多个线程共享
+ */
+public class KeywordMatcher {
+
+    private static final Charset GBK = Charset.forName("GBK");
+    private static final byte[] FOLD = new byte[256];
+    private static final int MAX_STATES = 1 << 15;   // 每个自动机的状态数上限，合并后的状态保持为非负数
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    private final Automaton folded;    // 纯 ASCII 关键词，输入折叠大小写
+    private final Automaton exact;     // 其他关键词的 UTF-8 / GBK 编码，输入原样
+    private final List<String> keywords;
+    private final long scanLimit;      // 每个文件最多扫描的字节数
+
+    private KeywordMatcher(Automaton folded, Automaton exact, List<String> keywords, long scanLimit) {
+        this.folded = folded;
+        this.exact = exact;
+        this.keywords = keywords;
+        this.scanLimit = scanLimit;
+    }
+
+    /**
+     * 由敏感词配置（用|分隔，如 "强奸|抢劫|杀人"）构建匹配器，没有有效关键词时返回null
+     */
+    public static KeywordMatcher fromPattern(String sensitivePattern) {
+        if (sensitivePattern == null) {
+            return null;
+        }
+        List<String> keywords = new ArrayList<>();
+        for (String part : sensitivePattern.split("\\|")) {
+            // 配置是正则表达式，这里只取字面量：去掉转义符和首尾空白
+            String keyword = part.replace("\\", "").trim();
+            if (!keyword.isEmpty()) {
+                keywords.add(keyword);
+            }
+        }
+        return keywords.isEmpty() ? null : build(keywords);
+    }
+
+    public static KeywordMatcher build(List<String> keywords) {
+        Set<String> encodedKeys = new HashSet<>();
+        List<byte[]> asciiKeywords = new ArrayList<>();
+        List<byte[]> otherKeywords = new ArrayList<>();
+        for (String keyword : keywords) {
+            if (isAscii(keyword)) {
+                byte[] bytes = keyword.getBytes(StandardCharsets.US_ASCII);
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = FOLD[bytes[i] & 0xff];
+                }
+                if (encodedKeys.add("A" + Arrays.toString(bytes))) {
+                    asciiKeywords.add(bytes);
+                }
+                continue;
+            }
+            for (Charset charset : new Charset[]{StandardCharsets.UTF_8, GBK}) {
+                byte[] bytes = keyword.getBytes(charset);
+                if (encodedKeys.add("X" + Arrays.toString(bytes))) {
+                    otherKeywords.add(bytes);
+                }
+            }
+        }
+        return new KeywordMatcher(Automaton.build(asciiKeywords), Automaton.build(otherKeywords),
+                Collections.unmodifiableList(keywords), Long.MAX_VALUE);
+    }
+
+    /**
+     * 相同关键词、每个文件最多扫描 maxBytes 字节的匹配器（共用状态转移表）
+     */
+    public KeywordMatcher withScanLimit(long maxBytes) {
+        return new KeywordMatcher(folded, exact, keywords, maxBytes);
+    }
+
+    /**
+     * 从 state 状态开始匹配缓冲区中剩余的字节
+     *
+     * @return 命中时返回 -1，否则返回匹配结束时的状态，用于继续匹配下一块数据
+     */
+    public int feed(ByteBuffer buffer, int state) {
+        int[] foldedTable = folded.transitions;
+        boolean[] foldedAccept = folded.accepting;
+        int[] exactTable = exact.transitions;
+        boolean[] exactAccept = exact.accepting;
+        int f = state >>> 16;
+        int e = state & 0xffff;
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int end = buffer.arrayOffset() + buffer.limit();
+            for (int i = buffer.arrayOffset() + buffer.position(); i < end; i++) {
+                int b = array[i] & 0xff;
+                f = foldedTable[(f << 8) | (FOLD[b] & 0xff)];
+                e = exactTable[(e << 8) | b];
+                if (foldedAccept[f] || exactAccept[e]) {
+                    return -1;
+                }
+            }
+        } else {
+            for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+                int b = buffer.get(i) & 0xff;
+                f = foldedTable[(f << 8) | (FOLD[b] & 0xff)];
+                e = exactTable[(e << 8) | b];
+                if (foldedAccept[f] || exactAccept[e]) {
+                    return -1;
+                }
+            }
+        }
+        return (f << 16) | e;
+    }
+
+    public boolean matches(String text) {
+        return feed(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), 0) < 0;
+    }
+
+    public List<String> getKeywords() {
+        return keywords;
+    }
+
+    public long getScanLimit() {
+        return scanLimit;
+    }
+
+    private static boolean isAscii(String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (keyword.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Automaton {
+        final int[] transitions;   // 状态 * 256 + 输入字节 -> 下一状态
+        final boolean[] accepting; // 到达该状态即命中某个关键词
+
+        Automaton(int[] transitions, boolean[] accepting) {
+            this.transitions = transitions;
+            this.accepting = accepting;
+        }
+
+        static Automaton build(List<byte[]> encoded) {
+            // 1. 构建字典树
+            int maxStates = 1;
+            for (byte[] bytes : encoded) {
+                maxStates += bytes.length;
+            }
+            if (maxStates > MAX_STATES) {
+                throw new IllegalArgumentException("敏感词总长度过长: " + maxStates);
+            }
+            int[] trie = new int[maxStates * 256];
+            Arrays.fill(trie, -1);
+            boolean[] accepting = new boolean[maxStates];
+            int stateCount = 1;
+            for (byte[] bytes : encoded) {
+                int state = 0;
+                for (byte b : bytes) {
+                    int index = state * 256 + (b & 0xff);
+                    if (trie[index] < 0) {
+                        trie[index] = stateCount++;
+                    }
+                    state = trie[index];
+                }
+                accepting[state] = true;
+            }
+
+            // 2. 按层次计算失败指针，同时把缺失的转移补全为完整的状态转移表
+            int[] transitions = Arrays.copyOf(trie, stateCount * 256);
+            int[] fail = new int[stateCount];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int c = 0; c < 256; c++) {
+                int next = transitions[c];
+                if (next < 0) {
+                    transitions[c] = 0;
+                } else {
+                    fail[next] = 0;
+                    queue.add(next);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                accepting[state] |= accepting[fail[state]];
+                for (int c = 0; c < 256; c++) {
+                    int index = state * 256 + c;
+                    int next = transitions[index];
+                    if (next < 0) {
+                        transitions[index] = transitions[fail[state] * 256 + c];
+                    } else {
+                        fail[next] = transitions[fail[state] * 256 + c];
+                        queue.add(next);
+                    }
+                }
+            }
+            return new Automaton(transitions, Arrays.copyOf(accepting, stateCount));
+        }
+    }
+}
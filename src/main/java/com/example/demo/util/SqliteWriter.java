@@ -0,0 +1,187 @@
+package com.example.demo.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+
+/**
+ * SQLite 单写线程：独占一个写连接，把队列中的写操作合并到同一个事务里提交（组提交）。
+ * SQLite 同一时间只允许一个写事务，多个线程各自提交会互相等待写锁（SQLITE_BUSY），
+ * 由一个线程串行执行并批量提交，每次提交的 fsync 由一批写操作分摊。
+ * 每个写操作在自己的保存点中执行，单个操作失败只回滚它自己，不影响同批的其他操作
+ */
+@Slf4j
+public class SqliteWriter implements AutoCloseable {
+
+    public static final int MAX_BATCH = 512;          // 每个事务最多合并的写操作数
+    private static final int QUEUE_CAPACITY = 65536;  // 队列满时提交方阻塞（背压）
+
+    /**
+     * 在写连接上执行的写操作
+     */
+    @FunctionalInterface
+    public interface Mutation<T> {
+        T apply(JdbcTemplate jdbc);
+    }
+
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Connection connection;
+    private final JdbcTemplate jdbc;
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long committedBatches;
+    private long committedMutations;
+
+    public SqliteWriter(String url, Properties pragmas) throws SQLException {
+        // 保持自动提交模式，事务由写线程显式开始和提交（关闭自动提交时驱动会立即开启下一个事务并一直持有）
+        this.connection = new SQLiteConfig(pragmas).createConnection(url);
+        this.jdbc = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+        this.thread = new Thread(this::run, "sqlite-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * 异步提交写操作，事务提交后完成
+     */
+    public <T> CompletableFuture<T> submit(Mutation<T> mutation) {
+        if (!running) {
+            throw new IllegalStateException("SQLite写线程已关闭");
+        }
+        Task<T> task = new Task<>(mutation);
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("提交写操作被中断", e);
+        }
+        return task.future;
+    }
+
+    /**
+     * 提交写操作并等待提交完成，写操作抛出的运行时异常原样抛出
+     */
+    public <T> T execute(Mutation<T> mutation) {
+        try {
+            return submit(mutation).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public synchronized long getCommittedBatches() { return committedBatches; }
+    public synchronized long getCommittedMutations() { return committedMutations; }
+
+    private void run() {
+        List<Task<?>> batch = new ArrayList<>(MAX_BATCH);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 执行当前批次期间到达的写操作会进入下一批，不额外等待
+                queue.drainTo(batch, MAX_BATCH - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    continue;
+                }
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Task<?>> batch) {
+        List<Object> results = new ArrayList<>(batch.size());
+        List<Throwable> errors = new ArrayList<>(batch.size());
+        boolean began = false;
+        try {
+            // 一开始就拿写锁，避免读事务升级为写事务时与其他写连接冲突
+            jdbc.execute("BEGIN IMMEDIATE");
+            began = true;
+            for (Task<?> task : batch) {
+                jdbc.execute("SAVEPOINT mutation");
+                try {
+                    results.add(task.mutation.apply(jdbc));
+                    errors.add(null);
+                    jdbc.execute("RELEASE mutation");
+                } catch (RuntimeException e) {
+                    jdbc.execute("ROLLBACK TO mutation");
+                    jdbc.execute("RELEASE mutation");
+                    results.add(null);
+                    errors.add(e);
+                }
+            }
+            jdbc.execute("COMMIT");
+        } catch (Exception e) {
+            log.error("SQLite写事务提交失败，本批 {} 个写操作全部失败", batch.size(), e);
+            try {
+                if (began) {
+                    jdbc.execute("ROLLBACK");
+                }
+            } catch (Exception rollbackError) {
+                log.error("SQLite写事务回滚失败", rollbackError);
+            }
+            for (Task<?> task : batch) {
+                task.future.completeExceptionally(e);
+            }
+            return;
+        }
+        synchronized (this) {
+            committedBatches++;
+            committedMutations += batch.size();
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).complete(results.get(i), errors.get(i));
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("关闭SQLite写连接失败", e);
+        }
+    }
+
+    private static class Task<T> {
+        final Mutation<T> mutation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Task(Mutation<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Object result, Throwable error) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete((T) result);
+            }
+        }
+    }
+}
@@ -20,6 +20,34 @@ CREATE TABLE IF NOT EXISTS backup_log (
                                           index_path TEXT
 );
 
+CREATE INDEX IF NOT EXISTS idx_backup_log_task_id ON backup_log (task_id);
+CREATE INDEX IF NOT EXISTS idx_backup_log_task_status ON backup_log (task_id, status);
+CREATE INDEX IF NOT EXISTS idx_backup_log_disk_id ON backup_log (disk_id);
+CREATE INDEX IF NOT EXISTS idx_backup_log_checksum ON backup_log (checksum);
+CREATE INDEX IF NOT EXISTS idx_backup_log_backup_time ON backup_log (backup_time);
+CREATE INDEX IF NOT EXISTS idx_backup_log_target_path ON backup_log (target_path, disk_id);
+
+-- 已移出 backup_log 的记录（归档分区、已归档磁盘的分片）的校验和，备份时的去重判断同时查询这张表
+CREATE TABLE IF NOT EXISTS archived_checksum (
+                                                 checksum TEXT PRIMARY KEY
+) WITHOUT ROWID;
+
+CREATE TABLE IF NOT EXISTS log_archive_partition (
+                                                     id INTEGER PRIMARY KEY AUTOINCREMENT,
+                                                     month TEXT NOT NULL,
+                                                     file_path TEXT NOT NULL,
+                                                     first_id INTEGER NOT NULL,
+                                                     last_id INTEGER NOT NULL,
+                                                     row_count INTEGER NOT NULL,
+                                                     raw_bytes INTEGER NOT NULL,
+                                                     file_bytes INTEGER NOT NULL,
+                                                     min_time TEXT NOT NULL,
+                                                     max_time TEXT NOT NULL,
+                                                     created_time TEXT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_log_archive_partition_time ON log_archive_partition (min_time, max_time);
+
 CREATE TABLE IF NOT EXISTS hard_disk (
                                          id INTEGER PRIMARY KEY AUTOINCREMENT,
                                          disk_id TEXT NOT NULL UNIQUE,
@@ -32,6 +60,21 @@ CREATE TABLE IF NOT EXISTS hard_disk (
                                          migration_target INTEGER
 );
 
+-- 磁盘容量预留：任务开始写入前按计划大小预留，完成时提交实际用量（从 hard_disk.available_capacity 扣减）或释放
+CREATE TABLE IF NOT EXISTS disk_reservation (
+                                                id INTEGER PRIMARY KEY AUTOINCREMENT,
+                                                disk_id INTEGER NOT NULL,
+                                                task_id INTEGER NOT NULL,
+                                                reserved_bytes INTEGER NOT NULL,
+                                                used_bytes INTEGER NOT NULL DEFAULT 0,
+                                                status TEXT NOT NULL, -- ACTIVE, COMMITTED, RELEASED
+                                                created_at INTEGER NOT NULL,
+                                                updated_at INTEGER NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_disk_reservation_active ON disk_reservation (disk_id, status);
+CREATE INDEX IF NOT EXISTS idx_disk_reservation_task ON disk_reservation (task_id, status);
+
 CREATE TABLE IF NOT EXISTS config (
                                       id INTEGER PRIMARY KEY AUTOINCREMENT,
                                       config_key TEXT NOT NULL UNIQUE,
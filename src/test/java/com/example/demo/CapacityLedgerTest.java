@@ -0,0 +1,178 @@
+package com.example.demo;
+
+import com.example.demo.config.SqliteJdbcConfig;
+import com.example.demo.entity.HardDisk;
+import com.example.demo.model.DiskCapacity;
+import com.example.demo.service.CapacityLedger;
+import com.example.demo.util.SqliteWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 容量台账：同一磁盘上并发预留时，通过检查的预留总量不超过可用容量；提交按实际用量扣减，释放不扣减
+ */
+class CapacityLedgerTest {
+
+    private static final long CAPACITY = 1000;
+    private static final int THREADS = 16;
+
+    @TempDir
+    Path tempDir;
+
+    private HikariDataSource dataSource;
+    private SqliteWriter writer;
+    private JdbcTemplate jdbc;
+    private CapacityLedger ledger;
+    private HardDisk disk;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("ledger.db");
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setMaximumPoolSize(THREADS);
+        SqliteJdbcConfig.pragmas().forEach((key, value) -> dataSource.addDataSourceProperty((String) key, value));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        writer = new SqliteWriter(url, SqliteJdbcConfig.pragmas());
+
+        ledger = new CapacityLedger();
+        ReflectionTestUtils.setField(ledger, "readJdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(ledger, "writer", writer);
+
+        // 挂载点不存在，只按数据库记录检查
+        String mountPoint = tempDir.resolve("missing").toString();
+        jdbc.update("INSERT INTO hard_disk (disk_id, serial_number, total_capacity, available_capacity, status, mount_point) "
+                + "VALUES ('S1', 'SN1', ?, ?, 'ONLINE', ?)", CAPACITY, CAPACITY, mountPoint);
+        disk = new HardDisk();
+        disk.setId(jdbc.queryForObject("SELECT id FROM hard_disk WHERE disk_id = 'S1'", Long.class));
+        disk.setDiskId("S1");
+        disk.setMountPoint(mountPoint);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentReservationsDoNotOvercommit() throws Exception {
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        run(task -> {
+            try {
+                ledger.reserve(disk, task, 100, 0);
+                reserved.incrementAndGet();
+            } catch (IllegalStateException e) {
+                rejected.incrementAndGet();
+            }
+        });
+        assertEquals(CAPACITY / 100, reserved.get());
+        assertEquals(THREADS - CAPACITY / 100, rejected.get());
+        DiskCapacity capacity = ledger.getCapacity(disk);
+        assertEquals(CAPACITY, capacity.getReservedBytes());
+        assertEquals(0, capacity.getFreeCapacity());
+        assertEquals(reserved.get(), capacity.getActiveReservations());
+    }
+
+    @Test
+    void commitAndReleaseUnderConcurrency() throws Exception {
+        // 奇数任务写入 60 字节后提交，偶数任务失败后释放；每个任务结束后腾出的预留可被后来的任务使用
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger overcommitted = new AtomicInteger();
+        run(task -> {
+            for (int attempt = 0; attempt < 50; attempt++) {
+                try {
+                    ledger.reserve(disk, task, 100, 0);
+                } catch (IllegalStateException e) {
+                    Thread.yield();
+                    continue;
+                }
+                // 任何时刻运行中的预留总量都不超过可用容量
+                Boolean fits = jdbc.queryForObject("SELECT (SELECT COALESCE(SUM(reserved_bytes), 0) FROM disk_reservation "
+                        + "WHERE disk_id = h.id AND status = 'ACTIVE') <= h.available_capacity FROM hard_disk h WHERE h.id = ?",
+                        Boolean.class, disk.getId());
+                if (!Boolean.TRUE.equals(fits)) {
+                    overcommitted.incrementAndGet();
+                }
+                if (task % 2 == 1) {
+                    ledger.commit(task, 60);
+                    committed.incrementAndGet();
+                } else {
+                    ledger.release(task);
+                }
+                return;
+            }
+        });
+        long available = jdbc.queryForObject("SELECT available_capacity FROM hard_disk WHERE id = ?", Long.class, disk.getId());
+        assertEquals(CAPACITY - 60L * committed.get(), available);
+        assertEquals(0, ledger.getCapacity(disk).getActiveReservations());
+        Long used = jdbc.queryForObject("SELECT COALESCE(SUM(used_bytes), 0) FROM disk_reservation WHERE status = 'COMMITTED'",
+                Long.class);
+        assertEquals(60L * committed.get(), used);
+        assertEquals(0, overcommitted.get());
+        assertTrue(committed.get() > 0);
+    }
+
+    @Test
+    void reserveAgainReplacesAndThresholdApplies() {
+        ledger.reserve(disk, 1L, 600, 0);
+        ledger.reserve(disk, 1L, 700, 0);   // 同一任务重新执行，之前的预留先释放
+        assertEquals(700, ledger.getCapacity(disk).getReservedBytes());
+        assertThrows(IllegalStateException.class, () -> ledger.reserve(disk, 2L, 400, 0));
+        // 可用容量低于迁移阈值时拒绝，即使需要的字节数很少
+        assertThrows(IllegalStateException.class, () -> ledger.reserve(disk, 3L, 10, 500));
+        ledger.reserve(disk, CapacityLedger.migrationKey(disk.getId()), 300, 0);
+        assertEquals(CAPACITY, ledger.getCapacity(disk).getReservedBytes());
+
+        ledger.release(1L);
+        ledger.commit(1L, 700);   // 已释放，不再扣减
+        assertEquals(CAPACITY, jdbc.queryForObject("SELECT available_capacity FROM hard_disk WHERE id = ?", Long.class, disk.getId()));
+        assertEquals(300, ledger.getCapacity(disk).getReservedBytes());
+    }
+
+    @Test
+    void staleReservationsReleasedOnFirstReserve() {
+        jdbc.update("INSERT INTO disk_reservation (disk_id, task_id, reserved_bytes, used_bytes, status, created_at, updated_at) "
+                + "VALUES (?, 99, 900, 0, 'ACTIVE', 0, 0)", disk.getId());
+        ledger.reserve(disk, 1L, 500, 0);
+        assertEquals("RELEASED", jdbc.queryForObject("SELECT status FROM disk_reservation WHERE task_id = 99", String.class));
+        assertEquals(500, ledger.getCapacity(disk).getReservedBytes());
+    }
+
+    private void run(LongConsumer task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (long t = 1; t <= THREADS; t++) {
+            long taskId = t;
+            futures.add(executor.submit(() -> {
+                ready.await();
+                task.accept(taskId);
+                return null;
+            }));
+        }
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+}
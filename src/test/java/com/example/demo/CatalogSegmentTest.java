@@ -0,0 +1,196 @@
+package com.example.demo;
+
+import com.example.demo.util.CatalogJournal;
+import com.example.demo.util.CatalogSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 目录段文件和追加日志：写出后重新打开内容不变，按路径前缀和校验和查找，
+ * 日志中断电留下的不完整尾部被丢弃，之前的记录仍然可用
+ */
+class CatalogSegmentTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final List<CatalogSegment.Record> RECORDS = List.of(
+            new CatalogSegment.Record(3, 1, 300, 1_700_000_003L, "/data/b/报告.docx", "ccc"),
+            new CatalogSegment.Record(1, 1, 100, 1_700_000_001L, "/data/a/1.txt", "aaa"),
+            new CatalogSegment.Record(4, 2, 400, 1_700_000_004L, "/data/ab.txt", "aaa"),
+            new CatalogSegment.Record(2, 1, 200, 1_700_000_002L, "/data/a/2.txt", "bbb"),
+            new CatalogSegment.Record(5, 2, 0, 1_700_000_005L, "/data/b/空文件", null));
+
+    @Test
+    void writeAndOpen() throws Exception {
+        Path file = tempDir.resolve("catalog/seg_1.bcat");
+        CatalogSegment.write(file, RECORDS);
+        try (CatalogSegment segment = CatalogSegment.open(file)) {
+            assertEquals(RECORDS.size(), segment.size());
+            // 按路径的 UTF-8 字节序排列
+            assertEquals(List.of("/data/a/1.txt", "/data/a/2.txt", "/data/ab.txt", "/data/b/报告.docx", "/data/b/空文件"),
+                    paths(List.of(segment.get(0), segment.get(1), segment.get(2), segment.get(3), segment.get(4))));
+            CatalogSegment.Record record = segment.get(3);
+            assertEquals(3, record.getLogId());
+            assertEquals(1, record.getTaskId());
+            assertEquals(300, record.getSize());
+            assertEquals(1_700_000_003L, record.getBackupTime());
+            assertEquals("ccc", record.getChecksum());
+            assertEquals("", segment.get(4).getChecksum());
+        }
+        assertFalse(Files.exists(file.resolveSibling("seg_1.bcat.tmp")));
+    }
+
+    @Test
+    void findByPathPrefix() throws Exception {
+        Path file = tempDir.resolve("seg.bcat");
+        CatalogSegment.write(file, RECORDS);
+        try (CatalogSegment segment = CatalogSegment.open(file)) {
+            assertEquals(List.of("/data/a/1.txt", "/data/a/2.txt"), paths(segment.findByPathPrefix("/data/a/", 10)));
+            assertEquals(List.of("/data/a/1.txt", "/data/a/2.txt", "/data/ab.txt"), paths(segment.findByPathPrefix("/data/a", 10)));
+            assertEquals(List.of("/data/a/1.txt"), paths(segment.findByPathPrefix("/data/", 1)));
+            assertEquals(List.of("/data/b/报告.docx"), paths(segment.findByPathPrefix("/data/b/报", 10)));
+            assertEquals(RECORDS.size(), segment.findByPathPrefix("", 100).size());
+            assertTrue(segment.findByPathPrefix("/other", 10).isEmpty());
+            assertTrue(segment.findByPathPrefix("/data/b/报告.docx.bak", 10).isEmpty());
+        }
+    }
+
+    @Test
+    void findByChecksum() throws Exception {
+        Path file = tempDir.resolve("seg.bcat");
+        CatalogSegment.write(file, RECORDS);
+        try (CatalogSegment segment = CatalogSegment.open(file)) {
+            List<Long> ids = segment.findByChecksum("aaa").stream()
+                    .map(CatalogSegment.Record::getLogId).sorted().collect(Collectors.toList());
+            assertEquals(List.of(1L, 4L), ids);
+            assertEquals(List.of("/data/a/2.txt"), paths(segment.findByChecksum("bbb")));
+            assertTrue(segment.findByChecksum("aa").isEmpty());
+            assertTrue(segment.findByChecksum("zzz").isEmpty());
+        }
+    }
+
+    @Test
+    void emptySegment() throws Exception {
+        Path file = tempDir.resolve("empty.bcat");
+        CatalogSegment.write(file, List.of());
+        try (CatalogSegment segment = CatalogSegment.open(file)) {
+            assertEquals(0, segment.size());
+            assertTrue(segment.findByPathPrefix("/", 10).isEmpty());
+            assertTrue(segment.findByChecksum("aaa").isEmpty());
+        }
+    }
+
+    @Test
+    void closedSegmentCanBeReplaced() throws Exception {
+        Path file = tempDir.resolve("seg.bcat");
+        CatalogSegment.write(file, RECORDS);
+        CatalogSegment segment = CatalogSegment.open(file);
+        segment.close();
+        segment.close();
+        assertThrows(IllegalStateException.class, () -> segment.findByChecksum("aaa"));
+
+        CatalogSegment.write(file, RECORDS.subList(0, 2));
+        try (CatalogSegment replaced = CatalogSegment.open(file)) {
+            assertEquals(2, replaced.size());
+        }
+        Files.delete(file);
+    }
+
+    @Test
+    void rejectsOtherFiles() throws Exception {
+        Path file = tempDir.resolve("not-a-segment.bcat");
+        Files.write(file, new byte[100]);
+        assertThrows(IOException.class, () -> CatalogSegment.open(file));
+    }
+
+    @Test
+    void journalRoundTrip() throws Exception {
+        Path file = tempDir.resolve("catalog/journal.log");
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            for (CatalogSegment.Record record : RECORDS) {
+                journal.append(record);
+            }
+            journal.force();
+            assertEquals(RECORDS.size(), journal.size());
+        }
+        List<CatalogSegment.Record> read = CatalogJournal.readAll(file);
+        assertEquals(paths(RECORDS), paths(read));
+        assertEquals(300, read.get(0).getSize());
+        assertEquals("", read.get(4).getChecksum());
+
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            assertEquals(RECORDS.size(), journal.size());
+            journal.truncate();
+            assertEquals(0, journal.size());
+        }
+        assertTrue(CatalogJournal.readAll(file).isEmpty());
+        assertTrue(CatalogJournal.readAll(tempDir.resolve("missing.log")).isEmpty());
+    }
+
+    @Test
+    void journalDropsTornTail() throws Exception {
+        Path file = tempDir.resolve("journal.log");
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            for (CatalogSegment.Record record : RECORDS.subList(0, 3)) {
+                journal.append(record);
+            }
+        }
+        long complete = Files.size(file);
+
+        // 最后一条只写了一部分
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            journal.append(RECORDS.get(3));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(complete + 10);
+        }
+        assertEquals(3, CatalogJournal.readAll(file).size());
+
+        // 重新打开时截掉不完整的尾部，继续追加
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            assertEquals(3, journal.size());
+            assertEquals(complete, Files.size(file));
+            journal.append(RECORDS.get(4));
+        }
+        List<CatalogSegment.Record> read = CatalogJournal.readAll(file);
+        assertEquals(4, read.size());
+        assertEquals("/data/b/空文件", read.get(3).getPath());
+    }
+
+    @Test
+    void journalStopsAtCorruptRecord() throws Exception {
+        Path file = tempDir.resolve("journal.log");
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            for (CatalogSegment.Record record : RECORDS) {
+                journal.append(record);
+            }
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 3] ^= 0x55;   // 最后一条的内容与 CRC 不符
+        Files.write(file, bytes);
+        assertEquals(RECORDS.size() - 1, CatalogJournal.readAll(file).size());
+
+        // 长度字段被写坏
+        bytes = new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0, 0, 0, 0};
+        Files.write(file, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+        try (CatalogJournal journal = CatalogJournal.open(file)) {
+            assertEquals(0, journal.size());
+        }
+        assertEquals(0, Files.size(file));
+    }
+
+    private static List<String> paths(List<CatalogSegment.Record> records) {
+        return records.stream().map(CatalogSegment.Record::getPath).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo;
+
+import com.example.demo.config.SqliteJdbcConfig;
+import com.example.demo.repository.BackupLogShardRouter;
+import com.example.demo.service.DedupService;
+import com.example.demo.util.SqliteWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 重复内容统计：每次改动 backup_log 后，触发器维护的 checksum_stats 和 dedup_disk
+ * 都应与直接对 backup_log 做 GROUP BY 的结果一致
+ */
+class DedupServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private HikariDataSource dataSource;
+    private SqliteWriter writer;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String url = "jdbc:sqlite:" + tempDir.resolve("dedup.db");
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setMaximumPoolSize(2);
+        SqliteJdbcConfig.pragmas().forEach((key, value) -> dataSource.addDataSourceProperty((String) key, value));
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        writer = new SqliteWriter(url, SqliteJdbcConfig.pragmas());
+
+        DedupService dedupService = new DedupService();
+        ReflectionTestUtils.setField(dedupService, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(dedupService, "readJdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(dedupService, "transactionTemplate",
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)));
+        dedupService.initAggregates();
+    }
+
+    @AfterEach
+    void tearDown() {
+        writer.close();
+        dataSource.close();
+    }
+
+    @Test
+    void insertsAndStatusChanges() {
+        insert(1, "aaa", "SUCCESS", 100);
+        insert(1, "aaa", "SUCCESS", 100);
+        insert(2, "aaa", "SUCCESS", 100);
+        insert(1, "bbb", "RUNNING", 0);
+        insert(2, "", "SUCCESS", 50);
+        assertConsistent();
+
+        // 传输完成：RUNNING -> SUCCESS，同时写入大小
+        update("UPDATE backup_log SET status = 'SUCCESS', transfer_offset = 70 WHERE checksum = 'bbb'");
+        assertConsistent();
+        // 成功记录被标记为失败、校验和被修改、移动到另一块磁盘
+        update("UPDATE backup_log SET status = 'FAILED' WHERE id = 1");
+        assertConsistent();
+        update("UPDATE backup_log SET checksum = 'bbb', transfer_offset = 70 WHERE id = 2");
+        assertConsistent();
+        update("UPDATE backup_log SET disk_id = 3 WHERE id = 3");
+        assertConsistent();
+        // 所有列原样写回（保存实体）不改变统计
+        update("UPDATE backup_log SET status = status, checksum = checksum, disk_id = disk_id, transfer_offset = transfer_offset");
+        assertConsistent();
+    }
+
+    @Test
+    void deletes() {
+        for (int i = 0; i < 20; i++) {
+            insert(1 + i % 3, "c" + i % 4, i % 5 == 0 ? "FAILED" : "SUCCESS", 10 * (i % 4 + 1));
+        }
+        assertConsistent();
+        update("DELETE FROM backup_log WHERE id % 3 = 0");
+        assertConsistent();
+        update("DELETE FROM backup_log WHERE checksum = 'c1'");
+        assertConsistent();
+        update("DELETE FROM backup_log");
+        assertConsistent();
+        assertEquals(0, count("SELECT COUNT(*) FROM checksum_stats"));
+        assertEquals(0, count("SELECT COUNT(*) FROM checksum_disk"));
+    }
+
+    @Test
+    void diskArchive() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            insert(1 + i % 2, "c" + i % 6, "SUCCESS", 10 * (i % 6 + 1));
+        }
+        assertConsistent();
+
+        // 分片目录在用户目录下，指向临时目录
+        String home = System.getProperty("user.home");
+        System.setProperty("user.home", tempDir.toString());
+        BackupLogShardRouter router;
+        try {
+            router = new BackupLogShardRouter();
+        } finally {
+            System.setProperty("user.home", home);
+        }
+        ReflectionTestUtils.setField(router, "jdbcTemplate", jdbc);
+        ReflectionTestUtils.setField(router, "writer", writer);
+        try {
+            assertEquals(15, router.archiveDisk(1));
+            assertConsistent();
+            assertEquals(0, count("SELECT COUNT(*) FROM dedup_disk WHERE disk_id = 1 AND copies > 0"));
+            // 归档后主库剩余记录继续删除
+            update("DELETE FROM backup_log WHERE checksum IN ('c1', 'c3')");
+            assertConsistent();
+        } finally {
+            router.shutdown();
+        }
+    }
+
+    private void insert(long diskId, String checksum, String status, long size) {
+        update("INSERT INTO backup_log (task_id, filename, disk_id, target_path, checksum, status, transfer_offset, backup_time) "
+                + "VALUES (1, 'f', ?, '/t/f', ?, ?, ?, '2020-01-01T00:00:00')", diskId, checksum, status, size);
+    }
+
+    private void update(String sql, Object... args) {
+        writer.execute(jdbc -> jdbc.update(sql, args));
+    }
+
+    private long count(String sql) {
+        return jdbc.queryForObject(sql, Long.class);
+    }
+
+    private void assertConsistent() {
+        String counted = "FROM backup_log WHERE status = 'SUCCESS' AND checksum <> ''";
+        List<Map<String, Object>> expectedStats = jdbc.queryForList("SELECT checksum, MAX(transfer_offset) AS size, "
+                + "COUNT(*) AS copies, COUNT(DISTINCT disk_id) AS disks " + counted + " GROUP BY checksum ORDER BY checksum");
+        List<Map<String, Object>> stats = jdbc.queryForList(
+                "SELECT checksum, size, copies, disks FROM checksum_stats ORDER BY checksum");
+        assertEquals(expectedStats, stats);
+
+        List<Map<String, Object>> expectedDisks = jdbc.queryForList("SELECT disk_id, SUM(c) AS copies, SUM(c * s) AS bytes, "
+                + "SUM(c - 1) AS duplicate_copies, SUM((c - 1) * s) AS duplicate_bytes FROM "
+                + "(SELECT disk_id, checksum, COUNT(*) AS c, MAX(transfer_offset) AS s " + counted + " GROUP BY disk_id, checksum) "
+                + "GROUP BY disk_id ORDER BY disk_id");
+        List<Map<String, Object>> disks = jdbc.queryForList("SELECT disk_id, copies, bytes, duplicate_copies, duplicate_bytes "
+                + "FROM dedup_disk WHERE copies > 0 ORDER BY disk_id");
+        assertEquals(expectedDisks, disks);
+        // 记录全部删除的磁盘各项归零
+        assertEquals(0, count("SELECT COUNT(*) FROM dedup_disk WHERE copies = 0 "
+                + "AND (bytes <> 0 OR duplicate_copies <> 0 OR duplicate_bytes <> 0)"));
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.demo;
+
+import com.example.demo.util.DiskScanner;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 挂载表解析：按设备号和 /dev 设备名找到挂载点，优先文件系统或 btrfs 子卷的根挂载，其次才是子目录的绑定挂载，还原八进制转义
+ */
+class DiskScannerTest {
+
+    private static final String MOUNT_INFO = String.join("\n",
+            "22 1 8:2 / / rw,relatime shared:1 - ext4 /dev/sda2 rw,errors=remount-ro",
+            "25 22 0:21 / /proc rw,nosuid,nodev,noexec,relatime shared:12 - proc proc rw",
+            "40 22 8:17 / /mnt/备份\\040盘 rw,relatime shared:20 - ext4 /dev/sdb1 rw",
+            "41 22 8:17 /sub /srv/bind rw,relatime shared:20 - ext4 /dev/sdb1 rw",
+            "42 22 8:17 / /mnt/second rw,relatime shared:21 - ext4 /dev/sdb1 rw",
+            "43 22 0:45 / /data rw,relatime shared:22 - btrfs /dev/nvme0n1p3 rw,space_cache",
+            "44 22 8:33 / /mnt/tab\\011and\\134slash rw - xfs /dev/sdc1 rw",
+            "45 22 0:50 / /mnt/opt rw shared:30 master:2 - ext4 /dev/sdd1 rw",
+            "malformed line",
+            "");
+
+    @Test
+    void mapsDeviceNumbersAndNames() {
+        Map<String, String> mounts = DiskScanner.parseMountInfo(MOUNT_INFO);
+        assertEquals("/", mounts.get("8:2"));
+        assertEquals("/", mounts.get("/dev/sda2"));
+        assertEquals("/proc", mounts.get("0:21"));
+        assertFalse(mounts.containsKey("proc"));
+        // 可选字段个数不固定，按分隔符 - 定位设备名
+        assertEquals("/mnt/opt", mounts.get("/dev/sdd1"));
+    }
+
+    @Test
+    void keepsFirstRootMount() {
+        Map<String, String> mounts = DiskScanner.parseMountInfo(MOUNT_INFO);
+        assertEquals("/mnt/备份 盘", mounts.get("8:17"));
+        assertEquals("/mnt/备份 盘", mounts.get("/dev/sdb1"));
+        assertFalse(mounts.containsValue("/srv/bind"));
+    }
+
+    @Test
+    void btrfsMatchedByDeviceName() {
+        Map<String, String> mounts = DiskScanner.parseMountInfo(MOUNT_INFO);
+        assertEquals("/data", mounts.get("0:45"));
+        assertEquals("/data", mounts.get("/dev/nvme0n1p3"));
+    }
+
+    @Test
+    void btrfsSubvolumeRoots() {
+        // Ubuntu 默认安装：根目录是子卷 /@，各子卷的设备号不同，来源都是同一个分区
+        String mountInfo = String.join("\n",
+                "60 1 0:31 /@/srv/data /srv/bind rw,relatime shared:2 - btrfs /dev/sda2 rw,ssd,space_cache=v2,subvolid=256,subvol=/@",
+                "61 1 0:31 /@ / rw,relatime shared:1 - btrfs /dev/sda2 rw,ssd,space_cache=v2,subvolid=256,subvol=/@",
+                "62 61 0:33 /@home /home rw,relatime shared:3 - btrfs /dev/sda2 rw,ssd,space_cache=v2,subvolid=257,subvol=/@home");
+        Map<String, String> mounts = DiskScanner.parseMountInfo(mountInfo);
+        assertEquals("/", mounts.get("0:31"));
+        assertEquals("/", mounts.get("/dev/sda2"));
+        assertEquals("/home", mounts.get("0:33"));
+    }
+
+    @Test
+    void bindMountUsedWhenNoRootMount() {
+        Map<String, String> mounts = DiskScanner.parseMountInfo(
+                "70 22 8:65 /exports/share /srv/share rw,relatime shared:40 - ext4 /dev/sde1 rw");
+        assertEquals("/srv/share", mounts.get("8:65"));
+        assertEquals("/srv/share", mounts.get("/dev/sde1"));
+    }
+
+    @Test
+    void unescapesOctal() {
+        Map<String, String> mounts = DiskScanner.parseMountInfo(MOUNT_INFO);
+        assertEquals("/mnt/tab\tand\\slash", mounts.get("8:33"));
+        Map<String, String> partial = DiskScanner.parseMountInfo("50 22 8:48 / /mnt/x\\04 rw - ext4 /dev/sde1 rw");
+        assertEquals("/mnt/x\\04", partial.get("8:48"));
+    }
+
+    @Test
+    void emptyInput() {
+        assertTrue(DiskScanner.parseMountInfo("").isEmpty());
+    }
+}
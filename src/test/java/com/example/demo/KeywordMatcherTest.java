@@ -0,0 +1,82 @@
+package com.example.demo;
+
+import com.example.demo.util.KeywordMatcher;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 关键词匹配器：ASCII 关键词不区分大小写，中文关键词按 UTF-8 和 GBK 两种编码原样匹配，支持分块输入
+ */
+class KeywordMatcherTest {
+
+    private static final Charset GBK = Charset.forName("GBK");
+
+    @Test
+    void asciiKeywordsIgnoreCase() {
+        KeywordMatcher matcher = KeywordMatcher.fromPattern("Secret|password");
+        assertTrue(matcher.matches("this is TOP SECRET"));
+        assertTrue(matcher.matches("PassWord: 123"));
+        assertFalse(matcher.matches("nothing to see"));
+    }
+
+    @Test
+    void chineseKeywordsMatchUtf8AndGbk() {
+        KeywordMatcher matcher = KeywordMatcher.fromPattern("抢劫|杀人");
+        assertTrue(matcher.matches("新闻：银行抢劫案"));
+        assertTrue(feed(matcher, "新闻：银行抢劫案".getBytes(GBK)));
+        assertFalse(feed(matcher, "今天天气很好".getBytes(GBK)));
+    }
+
+    @Test
+    void gbkTrailBytesAreNotCaseFolded() {
+        // 「癆」的 GBK 编码为 B0 41，「癮」为 B0 61，第二个字节只差 ASCII 大小写
+        KeywordMatcher matcher = KeywordMatcher.fromPattern("癮");
+        assertTrue(feed(matcher, "癮".getBytes(GBK)));
+        assertFalse(feed(matcher, "癆".getBytes(GBK)));
+    }
+
+    @Test
+    void keywordSplitAcrossChunks() {
+        KeywordMatcher matcher = KeywordMatcher.build(List.of("secret", "杀人"));
+        byte[] bytes = "xx SeC".getBytes(StandardCharsets.UTF_8);
+        byte[] rest = "ReT yy".getBytes(StandardCharsets.UTF_8);
+        int state = matcher.feed(ByteBuffer.wrap(bytes), 0);
+        assertTrue(state >= 0);
+        assertEquals(-1, matcher.feed(ByteBuffer.wrap(rest), state));
+
+        byte[] chinese = "他杀人".getBytes(StandardCharsets.UTF_8);
+        state = matcher.feed(ByteBuffer.wrap(chinese, 0, 5), 0);
+        assertTrue(state >= 0);
+        assertEquals(-1, matcher.feed(ByteBuffer.wrap(chinese, 5, chinese.length - 5), state));
+    }
+
+    @Test
+    void directBuffersAndScanLimit() {
+        KeywordMatcher matcher = KeywordMatcher.fromPattern("强奸|\\bAlert");
+        assertEquals(List.of("强奸", "bAlert"), matcher.getKeywords());
+        byte[] bytes = "...BALERT...".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        assertEquals(-1, matcher.feed(direct, 0));
+
+        KeywordMatcher limited = matcher.withScanLimit(1024);
+        assertEquals(1024, limited.getScanLimit());
+        assertEquals(Long.MAX_VALUE, matcher.getScanLimit());
+        assertTrue(limited.matches("强奸"));
+    }
+
+    @Test
+    void emptyPatternHasNoMatcher() {
+        assertNull(KeywordMatcher.fromPattern(null));
+        assertNull(KeywordMatcher.fromPattern(" | "));
+    }
+
+    private static boolean feed(KeywordMatcher matcher, byte[] bytes) {
+        return matcher.feed(ByteBuffer.wrap(bytes), 0) < 0;
+    }
+}
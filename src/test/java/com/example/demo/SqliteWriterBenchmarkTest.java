@@ -0,0 +1,133 @@
+package com.example.demo;
+
+import com.example.demo.config.SqliteJdbcConfig;
+import com.example.demo.util.SqliteWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 写入争用基准：多个线程同时逐条写入，对比「连接池各自提交」和「单写线程组提交」的吞吐和延迟。
+ * 默认跳过，运行方式：mvn test -Dtest=SqliteWriterBenchmarkTest -Dbenchmark=true
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SqliteWriterBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int WRITES_PER_THREAD = 500;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void pooledVersusSingleWriter() throws Exception {
+        String pooledUrl = "jdbc:sqlite:" + tempDir.resolve("pooled.db");
+        try (HikariDataSource pool = pool(pooledUrl)) {
+            JdbcTemplate jdbc = new JdbcTemplate(pool);
+            jdbc.execute("CREATE TABLE bench (id INTEGER PRIMARY KEY, thread INTEGER, seq INTEGER)");
+            AtomicInteger failures = new AtomicInteger();
+            Result result = run(thread -> {
+                for (int seq = 0; seq < WRITES_PER_THREAD; seq++) {
+                    long start = System.nanoTime();
+                    try {
+                        jdbc.update("INSERT INTO bench (thread, seq) VALUES (?, ?)", thread, seq);
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                    }
+                    record(thread, seq, start);
+                }
+            });
+            Integer rows = jdbc.queryForObject("SELECT COUNT(*) FROM bench", Integer.class);
+            print("连接池各自提交", result, "失败 " + failures.get());
+            assertEquals(THREADS * WRITES_PER_THREAD - failures.get(), rows);
+        }
+
+        String writerUrl = "jdbc:sqlite:" + tempDir.resolve("writer.db");
+        try (SqliteWriter writer = new SqliteWriter(writerUrl, SqliteJdbcConfig.pragmas())) {
+            writer.execute(jdbc -> {
+                jdbc.execute("CREATE TABLE bench (id INTEGER PRIMARY KEY, thread INTEGER, seq INTEGER)");
+                return null;
+            });
+            Result result = run(thread -> {
+                for (int seq = 0; seq < WRITES_PER_THREAD; seq++) {
+                    long start = System.nanoTime();
+                    int t = thread, s = seq;
+                    writer.execute(jdbc -> jdbc.update("INSERT INTO bench (thread, seq) VALUES (?, ?)", t, s));
+                    record(thread, seq, start);
+                }
+            });
+            Integer rows = writer.execute(jdbc -> jdbc.queryForObject("SELECT COUNT(*) FROM bench", Integer.class));
+            print("单写线程组提交", result, "事务数 " + writer.getCommittedBatches());
+            assertEquals(THREADS * WRITES_PER_THREAD, rows);
+        }
+    }
+
+    private long[][] latencies;
+
+    private void record(int thread, int seq, long start) {
+        latencies[thread][seq] = System.nanoTime() - start;
+    }
+
+    private Result run(Consumer<Integer> worker) throws Exception {
+        latencies = new long[THREADS][WRITES_PER_THREAD];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch ready = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Future<?>[] futures = new Future<?>[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures[t] = executor.submit(() -> {
+                ready.await();
+                worker.accept(thread);
+                return null;
+            });
+        }
+        ready.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(elapsed, all[all.length / 2], all[(int) (all.length * 0.99)], all[all.length - 1]);
+    }
+
+    private HikariDataSource pool(String url) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setMaximumPoolSize(THREADS);
+        SqliteJdbcConfig.pragmas().forEach((key, value) -> dataSource.addDataSourceProperty((String) key, value));
+        return dataSource;
+    }
+
+    private void print(String name, Result result, String extra) {
+        int writes = THREADS * WRITES_PER_THREAD;
+        System.out.printf("%s: %d 次写入 %.0f ms，%.0f 次/秒，延迟 p50 %.2f ms / p99 %.2f ms / max %.2f ms，%s%n",
+                name, writes, result.elapsedNanos / 1e6, writes / (result.elapsedNanos / 1e9),
+                result.p50 / 1e6, result.p99 / 1e6, result.max / 1e6, extra);
+    }
+
+    private static class Result {
+        final long elapsedNanos;
+        final long p50;
+        final long p99;
+        final long max;
+
+        Result(long elapsedNanos, long p50, long p99, long max) {
+            this.elapsedNanos = elapsedNanos;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+    }
+}